@@ -0,0 +1,95 @@
+package org.coffeebag.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import org.coffeebag.processor.CheckVisibility;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures compilation of a generated code base with and without {@link CheckVisibility}
+ *
+ * Each benchmark method runs the compiler up to a later phase than the previous one, so the cost of a phase is the
+ * difference between two benchmarks:
+ * <ul>
+ * <li>{@link #parse()}: parsing</li>
+ * <li>{@link #analyze()}: parsing, entering, attribution and flow analysis, without annotation processing</li>
+ * <li>{@link #analyzeWithCheckVisibility()}: the same, with CheckVisibility as the only processor</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class CheckVisibilityBenchmark {
+
+	@Param({ "100", "1000" })
+	public int classCount;
+
+	@Param({ "2" })
+	public int packageDepth;
+
+	@Param({ "false", "true" })
+	public boolean globImports;
+
+	@Param({ "0.1" })
+	public double annotationDensity;
+
+	@Param({ "5" })
+	public int fanOut;
+
+	/**
+	 * The generated sources
+	 */
+	private List<JavaFileObject> sources;
+
+	/**
+	 * The compiler
+	 */
+	private SourceCompiler compiler;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		sources = new SourceTreeGenerator(classCount, packageDepth, globImports, annotationDensity, fanOut)
+				.generateFileObjects();
+		compiler = new SourceCompiler();
+
+		// The generated code must compile, or the benchmarks would measure error handling
+		final List<Diagnostic<? extends JavaFileObject>> errors = compiler.analyze(sources, new CheckVisibility());
+		if (!errors.isEmpty()) {
+			throw new IllegalStateException("Generated code does not compile: " + errors.get(0));
+		}
+	}
+
+	@Benchmark
+	public int parse() throws IOException {
+		return compiler.parse(sources);
+	}
+
+	@Benchmark
+	public Object analyze() throws IOException {
+		return compiler.analyze(sources, null);
+	}
+
+	@Benchmark
+	public Object analyzeWithCheckVisibility() throws IOException {
+		return compiler.analyze(sources, new CheckVisibility());
+	}
+}
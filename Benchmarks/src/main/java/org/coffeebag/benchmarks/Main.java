@@ -0,0 +1,39 @@
+package org.coffeebag.benchmarks;
+
+import java.io.File;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the standard JMH command line options, always reporting allocation
+ *
+ * On Java 8, the forked benchmark JVMs get tools.jar on their boot classpath so that they can run the compiler.
+ */
+public class Main {
+
+	public static void main(String[] args) throws Exception {
+		final CommandLineOptions commandLine = new CommandLineOptions(args);
+		if (commandLine.shouldHelp()) {
+			commandLine.showHelp();
+			return;
+		}
+		final ChainedOptionsBuilder options = new OptionsBuilder()
+				.parent(commandLine)
+				.addProfiler(GCProfiler.class);
+		// Before Java 9, the compiler API is in tools.jar, which is not on the classpath by default
+		final File toolsJar = new File(System.getProperty("java.home"), "../lib/tools.jar");
+		if (toolsJar.isFile()) {
+			options.jvmArgsAppend("-Xbootclasspath/a:" + toolsJar.getCanonicalPath());
+		}
+		final Runner runner = new Runner(options.build());
+		if (commandLine.shouldList()) {
+			runner.list();
+		} else {
+			runner.run();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package org.coffeebag.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import com.sun.source.util.JavacTask;
+
+/**
+ * Runs the phases of the system Java compiler on in-memory sources, without generating class files
+ *
+ * The classpath of the current JVM is used as the compilation classpath, so it must contain the CoffeeBag
+ * annotations.
+ */
+public class SourceCompiler {
+
+	/**
+	 * The compiler
+	 */
+	private final JavaCompiler compiler;
+	/**
+	 * The file manager, reused by all tasks
+	 */
+	private final StandardJavaFileManager fileManager;
+
+	public SourceCompiler() {
+		compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new IllegalStateException("No system Java compiler is available. A JDK is required.");
+		}
+		fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Parses sources
+	 * @param sources the sources
+	 * @return the number of compilation units parsed
+	 * @throws IOException if a source could not be read
+	 */
+	public int parse(List<JavaFileObject> sources) throws IOException {
+		int count = 0;
+		for (Object unit : createTask(sources, null, Collections.emptyList(), new ArrayList<>()).parse()) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Parses and analyzes sources, running annotation processing if a processor is provided
+	 * @param sources the sources
+	 * @param processor the processor to run, or null to disable annotation processing
+	 * @return the errors reported by the compiler or the processor
+	 * @throws IOException if a source could not be read
+	 */
+	public List<Diagnostic<? extends JavaFileObject>> analyze(List<JavaFileObject> sources, Processor processor)
+			throws IOException {
+		final List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<>();
+		final JavacTask task = createTask(sources, processor, Collections.emptyList(), errors);
+		task.analyze();
+		return errors;
+	}
+
+	/**
+	 * Creates a task that parses and analyzes sources when {@link JavacTask#analyze()} is called
+	 *
+	 * The task keeps the compiler state, including the processor, reachable until the task is discarded.
+	 *
+	 * @param sources the sources
+	 * @param processor the processor to run, or null to disable annotation processing
+	 * @param extraOptions other compiler options, such as -A options for the processor
+	 * @param errors the list to add the errors reported by the compiler or the processor to
+	 * @return the task
+	 */
+	public JavacTask createTask(List<JavaFileObject> sources, Processor processor, List<String> extraOptions,
+			List<Diagnostic<? extends JavaFileObject>> errors) {
+		final List<String> options = new ArrayList<>(Arrays.asList(
+				"-classpath", System.getProperty("java.class.path")));
+		options.addAll(extraOptions);
+		if (processor == null) {
+			options.add("-proc:none");
+		}
+		final JavacTask task = (JavacTask) compiler.getTask(null, fileManager, diagnostic -> {
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+				errors.add(diagnostic);
+			}
+		}, options, null, sources);
+		if (processor != null) {
+			task.setProcessors(Collections.singletonList(processor));
+		}
+		return task;
+	}
+}
@@ -0,0 +1,229 @@
+package org.coffeebag.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * Generates a synthetic code base that uses CoffeeBag annotations
+ *
+ * Every class is named C[index] and has a public int field named value. Each class declares fields of other classes,
+ * creates instances of them, and accesses their value fields. Annotated classes and fields are visible everywhere
+ * in the generated code, so the code compiles without visibility errors.
+ *
+ * The same parameters always generate the same code.
+ */
+public class SourceTreeGenerator {
+
+	/**
+	 * The package that contains all generated packages
+	 */
+	public static final String ROOT_PACKAGE = "bench";
+
+	/**
+	 * The maximum number of classes in one package
+	 */
+	private static final int CLASSES_PER_PACKAGE = 20;
+
+	/**
+	 * The number of classes to generate
+	 */
+	private final int classCount;
+	/**
+	 * The number of package name segments below the root package
+	 */
+	private final int packageDepth;
+	/**
+	 * If classes in other packages should be imported with glob imports instead of single-type imports
+	 */
+	private final boolean globImports;
+	/**
+	 * The fraction of classes (and their value fields) that are annotated with @Access
+	 */
+	private final double annotationDensity;
+	/**
+	 * The number of other classes that each class refers to
+	 */
+	private final int fanOut;
+	/**
+	 * The names of the generated packages, by index
+	 */
+	private final String[] packageNames;
+
+	/**
+	 * Creates a generator
+	 * @param classCount the number of classes to generate
+	 * @param packageDepth the number of package name segments below the root package, at least 1
+	 * @param globImports if classes in other packages should be imported with glob imports
+	 * @param annotationDensity the fraction of classes that are annotated, from 0 to 1
+	 * @param fanOut the number of other classes that each class refers to
+	 */
+	public SourceTreeGenerator(int classCount, int packageDepth, boolean globImports, double annotationDensity,
+			int fanOut) {
+		if (classCount < 1 || packageDepth < 1 || fanOut < 0 || annotationDensity < 0 || annotationDensity > 1) {
+			throw new IllegalArgumentException("Invalid generator parameters");
+		}
+		this.classCount = classCount;
+		this.packageDepth = packageDepth;
+		this.globImports = globImports;
+		this.annotationDensity = annotationDensity;
+		this.fanOut = fanOut;
+
+		final int packageCount = (classCount + CLASSES_PER_PACKAGE - 1) / CLASSES_PER_PACKAGE;
+		// Spread the packages over a tree with the requested depth
+		final int branching = Math.max(2, (int) Math.ceil(Math.pow(packageCount, 1.0 / packageDepth)));
+		packageNames = new String[packageCount];
+		for (int i = 0; i < packageCount; i++) {
+			final StringBuilder name = new StringBuilder(ROOT_PACKAGE);
+			int remaining = i;
+			for (int level = 0; level < packageDepth; level++) {
+				name.append(".p").append(remaining % branching);
+				remaining /= branching;
+			}
+			packageNames[i] = name.toString();
+		}
+	}
+
+	/**
+	 * A generated source file
+	 */
+	public static class Source {
+		/**
+		 * The canonical name of the class in the file
+		 */
+		private final String className;
+		/**
+		 * The file contents
+		 */
+		private final String content;
+
+		Source(String className, String content) {
+			this.className = className;
+			this.content = content;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public String getContent() {
+			return content;
+		}
+
+		/**
+		 * @return the path of this file relative to a source root
+		 */
+		public String getPath() {
+			return className.replace('.', '/') + ".java";
+		}
+	}
+
+	/**
+	 * Generates the sources
+	 * @return one source file for each class
+	 */
+	public List<Source> generate() {
+		final Random random = new Random(classCount * 31L + fanOut);
+		final List<Source> sources = new ArrayList<>(classCount);
+		for (int i = 0; i < classCount; i++) {
+			sources.add(generateClass(i, random));
+		}
+		return sources;
+	}
+
+	/**
+	 * Generates the sources as in-memory file objects that can be passed to a compiler
+	 * @return the file objects
+	 */
+	public List<JavaFileObject> generateFileObjects() {
+		final List<JavaFileObject> files = new ArrayList<>(classCount);
+		for (Source source : generate()) {
+			files.add(new SimpleJavaFileObject(URI.create("string:///" + source.getPath()), JavaFileObject.Kind.SOURCE) {
+				@Override
+				public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+					return source.getContent();
+				}
+			});
+		}
+		return Collections.unmodifiableList(files);
+	}
+
+	/**
+	 * Writes the sources to a directory
+	 * @param root the source root to write to
+	 * @throws IOException if a file could not be written
+	 */
+	public void writeTo(Path root) throws IOException {
+		for (Source source : generate()) {
+			final Path file = root.resolve(source.getPath());
+			Files.createDirectories(file.getParent());
+			Files.write(file, source.getContent().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private String packageOf(int classIndex) {
+		return packageNames[classIndex / CLASSES_PER_PACKAGE];
+	}
+
+	private Source generateClass(int index, Random random) {
+		final String packageName = packageOf(index);
+		final boolean annotated = random.nextDouble() < annotationDensity;
+
+		final int[] targets = new int[fanOut];
+		for (int i = 0; i < fanOut; i++) {
+			targets[i] = random.nextInt(classCount);
+		}
+
+		final Set<String> imports = new TreeSet<>();
+		if (annotated) {
+			imports.add("org.coffeebag.annotations.Access");
+			imports.add("org.coffeebag.annotations.Visibility");
+		}
+		for (int target : targets) {
+			final String targetPackage = packageOf(target);
+			if (!targetPackage.equals(packageName)) {
+				imports.add(globImports ? targetPackage + ".*" : targetPackage + ".C" + target);
+			}
+		}
+
+		final StringBuilder code = new StringBuilder();
+		code.append("package ").append(packageName).append(";\n\n");
+		for (String anImport : imports) {
+			code.append("import ").append(anImport).append(";\n");
+		}
+		code.append('\n');
+		if (annotated) {
+			code.append("@Access(level = Visibility.SCOPED, scope = \"").append(ROOT_PACKAGE).append("\")\n");
+		}
+		code.append("public class C").append(index).append(" {\n");
+		if (annotated) {
+			code.append("\t@Access(level = Visibility.PUBLIC)\n");
+		}
+		code.append("\tpublic int value;\n");
+		for (int i = 0; i < targets.length; i++) {
+			code.append("\tprivate C").append(targets[i]).append(" ref").append(i).append(";\n");
+		}
+		code.append("\n\tpublic void init() {\n");
+		for (int i = 0; i < targets.length; i++) {
+			code.append("\t\tref").append(i).append(" = new C").append(targets[i]).append("();\n");
+		}
+		code.append("\t}\n\n\tpublic int sum() {\n\t\tint total = 0;\n");
+		for (int i = 0; i < targets.length; i++) {
+			code.append("\t\tfinal C").append(targets[i]).append(" local").append(i).append(" = ref").append(i)
+					.append(";\n\t\ttotal += local").append(i).append(".value;\n");
+		}
+		code.append("\t\treturn total;\n\t}\n}\n");
+		return new Source(packageName + ".C" + index, code.toString());
+	}
+}
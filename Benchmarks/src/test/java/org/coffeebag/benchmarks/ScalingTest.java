@@ -0,0 +1,265 @@
+package org.coffeebag.benchmarks;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import org.coffeebag.processor.CheckVisibility;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.source.util.JavacTask;
+
+/**
+ * Checks that the time and retained heap of {@link CheckVisibility} grow roughly linearly with the size of the code
+ *
+ * Generated code bases of increasing size are compiled. For each size, the cost per class is measured:
+ * <ul>
+ * <li>Time: the CPU time of the compiler thread in the processor phases, from the coffeebag.stats report. Unlike
+ * the wall time, it does not include the garbage collector and the JIT compiler, which make the wall time of small
+ * sizes too noisy to compare.</li>
+ * <li>Retained heap: the heap that is still in use after the compilation when the compiler and the processor are
+ * reachable, minus the same without the processor</li>
+ * </ul>
+ *
+ * The test fails if the cost per class of any size is over its budget in scaling-budgets.properties, or if it grows
+ * from the smallest size to a larger one by more than the allowed factor. A quadratic step multiplies the cost per
+ * class by the ratio of the sizes, so it fails the growth check even if the budgets are generous.
+ *
+ * The default build compiles the small sizes in defaultBuildSizes, and the scaling profile (-Dscaling.full=true)
+ * compiles all sizes. The sizes can also be set with -Dscaling.sizes=1000,10000. The measured costs are written to
+ * target/scaling-measurements.properties. With -Dscaling.record=true, the measured costs with a margin are written
+ * to target/scaling-budgets.properties, to be copied into the test resources.
+ */
+public class ScalingTest {
+
+	/**
+	 * The budgets file, on the test classpath
+	 */
+	private static final String BUDGETS = "/scaling-budgets.properties";
+	private static final Path MEASUREMENTS = Paths.get("target", "scaling-measurements.properties");
+
+	private static final Pattern CPU_NANOS = Pattern.compile("\"cpuNanos\": (\\d+)");
+
+	private static final int PACKAGE_DEPTH = 2;
+	private static final double ANNOTATION_DENSITY = 0.1;
+	private static final int FAN_OUT = 5;
+	/**
+	 * The number of classes to compile before measuring
+	 */
+	private static final int WARM_UP_CLASSES = 3000;
+
+	/**
+	 * The costs measured for one size
+	 */
+	private static class Measurement {
+		private final int classCount;
+		private final double nanosPerClass;
+		private final double bytesPerClass;
+
+		Measurement(int classCount, long nanos, long bytes) {
+			this.classCount = classCount;
+			this.nanosPerClass = (double) nanos / classCount;
+			this.bytesPerClass = (double) Math.max(bytes, 0) / classCount;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%d classes: %.0f ns/class, %.0f bytes/class", classCount, nanosPerClass,
+					bytesPerClass);
+		}
+	}
+
+	private static Properties budgets;
+	private static List<Measurement> measurements;
+	/**
+	 * The compilation task whose retained heap is being measured
+	 */
+	private static volatile JavacTask measuredTask;
+
+	@BeforeClass
+	public static void measure() throws IOException {
+		budgets = new Properties();
+		try (InputStream in = ScalingTest.class.getResourceAsStream(BUDGETS)) {
+			budgets.load(in);
+		}
+		final String defaultSizes = budgets.getProperty(Boolean.getBoolean("scaling.full") ? "sizes"
+				: "defaultBuildSizes");
+		final List<Integer> sizes = Arrays.stream(System.getProperty("scaling.sizes", defaultSizes).split(","))
+				.map(String::trim).map(Integer::valueOf).sorted().collect(Collectors.toList());
+
+		// Warm up the compiler and the processor so that the smallest size is not measured with interpreted code
+		for (int classes = 0; classes < WARM_UP_CLASSES; classes += sizes.get(0)) {
+			measure(sizes.get(0));
+		}
+		measurements = new ArrayList<>();
+		for (int size : sizes) {
+			measurements.add(measure(size));
+		}
+		store(1, MEASUREMENTS, "Measured by ScalingTest");
+		if (Boolean.getBoolean("scaling.record")) {
+			store(Double.parseDouble(budgets.getProperty("recordMargin")),
+					Paths.get("target", "scaling-budgets.properties"), "Recorded by ScalingTest");
+		}
+	}
+
+	@Test
+	public void timeWithinBudget() {
+		checkBudget("nanosPerClass", m -> m.nanosPerClass);
+	}
+
+	@Test
+	public void retainedHeapWithinBudget() {
+		checkBudget("bytesPerClass", m -> m.bytesPerClass);
+	}
+
+	@Test
+	public void timeGrowsLinearly() {
+		checkGrowth("nanosGrowth", m -> m.nanosPerClass);
+	}
+
+	@Test
+	public void retainedHeapGrowsLinearly() {
+		checkGrowth("bytesGrowth", m -> m.bytesPerClass);
+	}
+
+	private interface Cost {
+		double of(Measurement measurement);
+	}
+
+	private static void checkBudget(String name, Cost cost) {
+		for (Measurement measurement : measurements) {
+			final String budget = budgets.getProperty(measurement.classCount + "." + name);
+			if (budget == null) {
+				continue;
+			}
+			assertTrue(name + " over budget " + budget + " at " + measurement,
+					cost.of(measurement) <= Double.parseDouble(budget));
+		}
+	}
+
+	private static void checkGrowth(String name, Cost cost) {
+		final double limit = Double.parseDouble(budgets.getProperty(name));
+		final Measurement smallest = measurements.get(0);
+		for (Measurement measurement : measurements.subList(1, measurements.size())) {
+			// Costs that are too small to measure reliably at the smallest size are compared with a floor
+			final double base = Math.max(cost.of(smallest), Double.parseDouble(budgets.getProperty(name + ".floor")));
+			final double growth = cost.of(measurement) / base;
+			if (growth > limit) {
+				fail(String.format(Locale.ROOT, "%s: cost per class grew %.2f times (limit %.2f) from %s to %s", name,
+						growth, limit, smallest, measurement));
+			}
+		}
+	}
+
+	private static Measurement measure(int classCount) throws IOException {
+		final List<JavaFileObject> sources = new SourceTreeGenerator(classCount, PACKAGE_DEPTH, false,
+				ANNOTATION_DENSITY, FAN_OUT).generateFileObjects();
+
+		final long baseline = retainedHeap(sources, false, null);
+		final Path output = Files.createTempDirectory("scaling");
+		try {
+			final long retained = retainedHeap(sources, true, output);
+			long nanos = 0;
+			final Matcher matcher = CPU_NANOS.matcher(new String(
+					Files.readAllBytes(output.resolve("coffeebag-stats.json")), StandardCharsets.UTF_8));
+			while (matcher.find()) {
+				nanos += Long.parseLong(matcher.group(1));
+			}
+			return new Measurement(classCount, nanos, retained - baseline);
+		} finally {
+			try (Stream<Path> files = Files.walk(output)) {
+				for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compiles sources and measures the heap in use while the compilation task is still reachable
+	 *
+	 * Each compilation gets its own compiler, because a file manager keeps the source output directory of the first
+	 * task that uses it.
+	 *
+	 * @param withProcessor if CheckVisibility should run, with statistics written to the output directory
+	 */
+	private static long retainedHeap(List<JavaFileObject> sources, boolean withProcessor, Path output)
+			throws IOException {
+		final SourceCompiler compiler = new SourceCompiler();
+		final List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<>();
+		final JavacTask task = withProcessor
+				? compiler.createTask(sources, new CheckVisibility(),
+						Arrays.asList("-Acoffeebag.stats", "-s", output.toString(), "-d", output.toString()), errors)
+				: compiler.createTask(sources, null, Collections.emptyList(), errors);
+		task.analyze();
+		if (!errors.isEmpty()) {
+			throw new IllegalStateException("Generated code does not compile: " + errors.get(0));
+		}
+		// Keep the task reachable until the heap has been measured
+		measuredTask = task;
+		try {
+			return usedHeap();
+		} finally {
+			measuredTask = null;
+		}
+	}
+
+	private static long usedHeap() {
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 3; i++) {
+			memory.gc();
+			used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+		}
+		return used;
+	}
+
+	/**
+	 * Writes the measured costs in the format of the budgets file, with the settings of the current budgets
+	 * @param margin the factor to multiply the costs by
+	 * @param file the file to write
+	 * @param comment the comment at the start of the file
+	 */
+	private static void store(double margin, Path file, String comment) throws IOException {
+		final Properties recorded = new Properties();
+		for (String name : budgets.stringPropertyNames()) {
+			if (!name.matches("\\d+\\..*")) {
+				recorded.setProperty(name, budgets.getProperty(name));
+			}
+		}
+		for (Measurement measurement : measurements) {
+			recorded.setProperty(measurement.classCount + ".nanosPerClass",
+					Long.toString(Math.round(measurement.nanosPerClass * margin)));
+			recorded.setProperty(measurement.classCount + ".bytesPerClass",
+					Long.toString(Math.round(measurement.bytesPerClass * margin)));
+		}
+		Files.createDirectories(file.getParent());
+		try (OutputStream out = Files.newOutputStream(file)) {
+			recorded.store(out, comment);
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package org.coffeebag.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.coffeebag.domain.AccessElement;
+import org.coffeebag.domain.SymbolTable;
+import org.coffeebag.domain.TypeHierarchy;
+import org.coffeebag.domain.UsageIndex;
+import org.coffeebag.domain.UsingClass;
+import org.coffeebag.domain.invariant.VisibilityInvariant;
+import org.coffeebag.log.Log;
+import org.coffeebag.processor.invariants.LibraryInvariants;
+
+/**
+ * Checks visibility in source trees without compiling them to class files
+ *
+ * The source files are split into partitions that are parsed and analyzed by separate compiler tasks in parallel.
+ * The references and invariants found in the partitions are then merged and checked.
+ *
+ * Usage: BatchChecker [-classpath path] [-partitions count] [--who-uses element] source-root...
+ *
+ * With --who-uses, the checker lists the classes that use a type (package.Type) or field (package.Type.field)
+ * instead of checking usages.
+ *
+ * The exit code is 0 if all usages are allowed, 1 if some usages are not allowed, and 2 if the sources could not be
+ * compiled or the arguments are not valid.
+ */
+public class BatchChecker {
+	private static final String TAG = BatchChecker.class.getSimpleName();
+
+	private static final String USAGE =
+			"Usage: BatchChecker [-classpath path] [-partitions count] [--who-uses element] source-root...";
+
+	/**
+	 * The source roots
+	 */
+	private final List<Path> sourceRoots;
+	/**
+	 * The class path, in the format of the -classpath compiler option, or an empty string to use the class path of
+	 * this program
+	 */
+	private final String classpath;
+	/**
+	 * The maximum number of partitions to split the source files into
+	 */
+	private final int partitions;
+
+	/**
+	 * Creates a checker
+	 * @param sourceRoots the source roots
+	 * @param classpath the class path, in the format of the -classpath compiler option
+	 * @param partitions the maximum number of partitions to split the source files into
+	 */
+	public BatchChecker(List<Path> sourceRoots, String classpath, int partitions) {
+		if (sourceRoots.isEmpty() || partitions < 1) {
+			throw new IllegalArgumentException("At least one source root and one partition are required");
+		}
+		this.sourceRoots = sourceRoots;
+		this.classpath = classpath;
+		this.partitions = partitions;
+	}
+
+	public static void main(String[] args) {
+		System.exit(run(args, System.out, System.err));
+	}
+
+	/**
+	 * Parses arguments and runs a checker
+	 * @param args the command line arguments
+	 * @param out the stream to report errors to
+	 * @param err the stream to report invalid arguments to
+	 * @return the exit code
+	 */
+	public static int run(String[] args, PrintStream out, PrintStream err) {
+		final List<Path> sourceRoots = new ArrayList<>();
+		String classpath = "";
+		int partitions = Runtime.getRuntime().availableProcessors();
+		String whoUses = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				// Intentional fallthrough
+				case "-classpath":
+				case "-cp":
+					classpath = args[++i];
+					break;
+				case "-partitions":
+					partitions = Integer.parseInt(args[++i]);
+					break;
+				case "--who-uses":
+					whoUses = args[++i];
+					break;
+				default:
+					sourceRoots.add(Paths.get(args[i]));
+					break;
+				}
+			}
+			final BatchChecker checker = new BatchChecker(sourceRoots, classpath, partitions);
+			if (whoUses != null) {
+				return checker.whoUses(whoUses, out);
+			}
+			return checker.check(out);
+		} catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+			err.println(USAGE);
+			return 2;
+		} catch (IOException | InterruptedException | ExecutionException e) {
+			err.println("Check failed: " + e);
+			return 2;
+		}
+	}
+
+	/**
+	 * Checks the sources
+	 * @param out the stream to report errors to
+	 * @return the exit code
+	 * @throws IOException if the source roots could not be read
+	 * @throws InterruptedException if the thread was interrupted
+	 * @throws ExecutionException if analyzing a partition failed
+	 */
+	public int check(PrintStream out) throws IOException, InterruptedException, ExecutionException {
+		final PartitionResult result = analyze(findSources());
+		for (String error : result.getErrors()) {
+			out.println(error);
+		}
+		final int violations = checkUsages(result, out);
+		if (!result.getErrors().isEmpty()) {
+			return 2;
+		}
+		return violations == 0 ? 0 : 1;
+	}
+
+	/**
+	 * Lists the classes that use an element, with the location of the first use in each class
+	 * @param element the canonical name of a type, or of a type followed by a period and a field name
+	 * @param out the stream to write the list to
+	 * @return the exit code
+	 * @throws IOException if the source roots could not be read
+	 * @throws InterruptedException if the thread was interrupted
+	 * @throws ExecutionException if analyzing a partition failed
+	 */
+	public int whoUses(String element, PrintStream out) throws IOException, InterruptedException, ExecutionException {
+		final PartitionResult result = analyze(findSources());
+		final SymbolTable symbols = new SymbolTable();
+		final Map<String, int[]> references = new HashMap<>();
+		for (Map.Entry<String, Map<AccessElement, String>> reference : result.getReferences().entrySet()) {
+			references.put(reference.getKey(), symbols.intern(reference.getValue().keySet()));
+		}
+		final UsageIndex index = UsageIndex.build(references, symbols.size());
+
+		int target = symbols.find(AccessElement.type(element));
+		// The parameter types of a method contain dots too
+		final int parenthesis = element.indexOf('(');
+		final int split = element.lastIndexOf('.', parenthesis == -1 ? element.length() : parenthesis);
+		if (target == SymbolTable.NONE && split > 0) {
+			target = symbols.find(AccessElement.member(element.substring(0, split), element.substring(split + 1)));
+		}
+		if (target == SymbolTable.NONE) {
+			out.println("No uses of " + element);
+			return 0;
+		}
+		final AccessElement used = symbols.get(target);
+		final List<String> users = new ArrayList<>(index.getUsers(target));
+		users.sort(null);
+		for (String user : users) {
+			out.println(result.getReferences().get(user).get(used) + ": " + user);
+		}
+		return 0;
+	}
+
+	private List<File> findSources() throws IOException {
+		final List<File> sources = new ArrayList<>();
+		for (Path root : sourceRoots) {
+			try (Stream<Path> files = Files.walk(root)) {
+				files.filter(file -> file.toString().endsWith(".java")).map(Path::toFile).forEach(sources::add);
+			}
+		}
+		// Keep the files of a package together, since they often refer to each other
+		sources.sort(null);
+		return sources;
+	}
+
+	/**
+	 * Analyzes the sources in parallel partitions and merges the results
+	 * @param sources the source files
+	 * @return the merged result
+	 */
+	private PartitionResult analyze(List<File> sources) throws InterruptedException, ExecutionException {
+		final List<String> options = new ArrayList<>(Arrays.asList("-proc:none", "-implicit:none",
+				"-sourcepath", sourceRoots.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator))));
+		// Without a class path option, the compiler uses the class path of this program
+		if (!classpath.isEmpty()) {
+			options.add("-classpath");
+			options.add(classpath);
+		}
+
+		final int partitionCount = Math.max(1, Math.min(partitions, sources.size()));
+		final int partitionSize = (sources.size() + partitionCount - 1) / partitionCount;
+		final ExecutorService executor = Executors.newFixedThreadPool(partitionCount);
+		try {
+			final List<Future<PartitionResult>> futures = new ArrayList<>();
+			for (int start = 0; start < sources.size(); start += partitionSize) {
+				final List<File> partition = sources.subList(start, Math.min(sources.size(), start + partitionSize));
+				futures.add(executor.submit(new PartitionAnalyzer(partition, options)));
+			}
+			final PartitionResult merged = new PartitionResult();
+			for (Future<PartitionResult> future : futures) {
+				merged.merge(future.get());
+			}
+			Log.d(TAG, () -> "Merged " + futures.size() + " partitions");
+			return merged;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Checks the usages in a result and reports the ones that are not allowed, in order of class and element name
+	 * @param result the result
+	 * @param out the stream to report errors to
+	 * @return the number of usages that are not allowed
+	 */
+	private int checkUsages(PartitionResult result, PrintStream out) throws MalformedURLException {
+		final SymbolTable symbols = new SymbolTable();
+		final TypeHierarchy hierarchy = new TypeHierarchy();
+		final LibraryInvariants libraryInvariants = new LibraryInvariants(null, createClassLoader(), symbols);
+
+		int violations = 0;
+		for (Map.Entry<String, Map<AccessElement, String>> reference : new TreeMap<>(result.getReferences()).entrySet()) {
+			final String className = reference.getKey();
+			final UsingClass usingClass = new UsingClass(className, result.getPackage(className), hierarchy,
+					hierarchy.getAncestors(className, result.getSuperclasses(className)));
+			final Map<String, Map.Entry<AccessElement, String>> sorted = new TreeMap<>();
+			for (Map.Entry<AccessElement, String> usage : reference.getValue().entrySet()) {
+				sorted.put(usage.getKey().toString(), usage);
+			}
+			for (Map.Entry<AccessElement, String> usage : sorted.values()) {
+				VisibilityInvariant invariant = result.getInvariants().get(usage.getKey());
+				if (invariant == null) {
+					invariant = libraryInvariants.get(symbols.intern(usage.getKey()));
+				}
+				if (invariant != null && !invariant.isUsageAllowedIn(usingClass)) {
+					out.println(usage.getValue() + ": error: " + usage.getKey().getKindName() + " "
+							+ usage.getKey().getDisplayName() + " is not visible to " + className);
+					violations++;
+				}
+			}
+		}
+		return violations;
+	}
+
+	/**
+	 * @return a class loader that finds the resources on the class path
+	 */
+	private ClassLoader createClassLoader() throws MalformedURLException {
+		if (classpath.isEmpty()) {
+			return BatchChecker.class.getClassLoader();
+		}
+		final List<URL> urls = new ArrayList<>();
+		for (String entry : classpath.split(File.pathSeparator)) {
+			if (!entry.isEmpty()) {
+				urls.add(new File(entry).toURI().toURL());
+			}
+		}
+		return new URLClassLoader(urls.toArray(new URL[0]), null);
+	}
+}
@@ -0,0 +1,151 @@
+package org.coffeebag.cli;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.coffeebag.annotations.Access;
+import org.coffeebag.domain.AccessElement;
+import org.coffeebag.domain.invariant.VisibilityInvariant;
+import org.coffeebag.domain.invariant.VisibilityInvariantFactory;
+import org.coffeebag.log.Log;
+import org.coffeebag.plugin.AttributedReferenceScanner;
+import org.coffeebag.plugin.TreesMessager;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+
+/**
+ * Parses and analyzes some source files with a compiler task of their own, and collects their references and
+ * invariants
+ *
+ * Types in other partitions are read from the source path, but only the files in this partition are scanned.
+ */
+class PartitionAnalyzer implements Callable<PartitionResult> {
+	private static final String TAG = PartitionAnalyzer.class.getSimpleName();
+
+	/**
+	 * The source files to analyze
+	 */
+	private final List<File> sources;
+	/**
+	 * The compiler options
+	 */
+	private final List<String> options;
+
+	/**
+	 * Creates an analyzer
+	 * @param sources the source files to analyze
+	 * @param options the compiler options, including the class path and source path
+	 */
+	PartitionAnalyzer(List<File> sources, List<String> options) {
+		this.sources = sources;
+		this.options = options;
+	}
+
+	@Override
+	public PartitionResult call() throws Exception {
+		final PartitionResult result = new PartitionResult();
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+			final JavacTask task = (JavacTask) compiler.getTask(null, fileManager, diagnostic -> {
+				if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+					result.addError(diagnostic.toString());
+				}
+			}, options, null, fileManager.getJavaFileObjectsFromFiles(sources));
+			final Iterable<? extends CompilationUnitTree> compilationUnits = task.parse();
+			task.analyze();
+
+			final Trees trees = Trees.instance(task);
+			final TreesMessager messager = new TreesMessager(trees);
+			for (CompilationUnitTree compilationUnit : compilationUnits) {
+				messager.setCompilationUnit(compilationUnit);
+				for (Tree declaration : compilationUnit.getTypeDecls()) {
+					final TreePath path = TreePath.getPath(compilationUnit, declaration);
+					final Element element = trees.getElement(path);
+					if (element == null || !(element.getKind().isClass() || element.getKind().isInterface())) {
+						continue;
+					}
+					scanClass((TypeElement) element, path, trees, task.getElements(), messager, result);
+				}
+			}
+		}
+		Log.d(TAG, () -> "Analyzed " + sources.size() + " files");
+		return result;
+	}
+
+	private static void scanClass(TypeElement type, TreePath path, Trees trees, Elements elements,
+			TreesMessager messager, PartitionResult result) {
+		final String className = type.getQualifiedName().toString();
+		final List<String> superclasses = new ArrayList<>();
+		TypeMirror superclass = type.getSuperclass();
+		while (superclass.getKind() == TypeKind.DECLARED) {
+			final TypeElement superclassElement = (TypeElement) ((DeclaredType) superclass).asElement();
+			superclasses.add(superclassElement.getQualifiedName().toString());
+			superclass = superclassElement.getSuperclass();
+		}
+		result.addClass(className, elements.getPackageOf(type).getQualifiedName().toString(), superclasses);
+
+		addInvariants(type, elements, messager, result);
+
+		final CompilationUnitTree compilationUnit = path.getCompilationUnit();
+		new AttributedReferenceScanner(trees) {
+			@Override
+			protected void onReference(Tree node, Element element, AccessElement accessElement) {
+				final long position = trees.getSourcePositions().getStartPosition(compilationUnit, node);
+				result.addReference(className, accessElement, compilationUnit.getSourceFile().getName() + ":"
+						+ compilationUnit.getLineMap().getLineNumber(position));
+			}
+		}.scan(path, null);
+	}
+
+	/**
+	 * Adds the invariants of a type and the fields and types that it contains
+	 */
+	private static void addInvariants(TypeElement type, Elements elements, TreesMessager messager,
+			PartitionResult result) {
+		if (type.getAnnotation(Access.class) != null) {
+			final VisibilityInvariant invariant = VisibilityInvariantFactory.getInvariant(type, elements, messager);
+			if (invariant != null) {
+				result.addInvariant(AccessElement.type(type), invariant);
+			}
+		}
+		for (Element member : type.getEnclosedElements()) {
+			if (member.getKind().isClass() || member.getKind().isInterface()) {
+				addInvariants((TypeElement) member, elements, messager, result);
+			} else if (member.getKind() == ElementKind.FIELD && member.getAnnotation(Access.class) != null) {
+				final VisibilityInvariant invariant = VisibilityInvariantFactory.getInvariant(member, elements,
+						messager);
+				if (invariant != null) {
+					result.addInvariant(AccessElement.field((VariableElement) member),
+							invariant);
+				}
+			} else if ((member.getKind() == ElementKind.METHOD || member.getKind() == ElementKind.CONSTRUCTOR)
+					&& member.getAnnotation(Access.class) != null) {
+				final VisibilityInvariant invariant = VisibilityInvariantFactory.getInvariant(member, elements,
+						messager);
+				if (invariant != null) {
+					result.addInvariant(AccessElement.method((ExecutableElement) member), invariant);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package org.coffeebag.cli;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.coffeebag.domain.AccessElement;
+import org.coffeebag.domain.invariant.VisibilityInvariant;
+
+/**
+ * The references, invariants, and classes found in some source files
+ *
+ * The results of several partitions can be merged, because they only contain names.
+ */
+class PartitionResult {
+
+	/**
+	 * For each using class, the elements that it refers to, with the location of the first reference to each
+	 */
+	private final Map<String, Map<AccessElement, String>> references;
+	/**
+	 * The invariants of the annotated elements
+	 */
+	private final Map<AccessElement, VisibilityInvariant> invariants;
+	/**
+	 * The package of each using class
+	 */
+	private final Map<String, String> packages;
+	/**
+	 * The canonical names of the superclasses of each using class, starting with its direct superclass
+	 */
+	private final Map<String, List<String>> superclasses;
+	/**
+	 * The errors that the compiler reported
+	 */
+	private final List<String> errors;
+
+	PartitionResult() {
+		references = new HashMap<>();
+		invariants = new HashMap<>();
+		packages = new HashMap<>();
+		superclasses = new HashMap<>();
+		errors = new ArrayList<>();
+	}
+
+	void addClass(String className, String packageName, List<String> classSuperclasses) {
+		packages.put(className, packageName);
+		superclasses.put(className, classSuperclasses);
+		references.computeIfAbsent(className, name -> new LinkedHashMap<>());
+	}
+
+	void addReference(String className, AccessElement element, String location) {
+		references.computeIfAbsent(className, name -> new LinkedHashMap<>()).putIfAbsent(element, location);
+	}
+
+	void addInvariant(AccessElement element, VisibilityInvariant invariant) {
+		invariants.put(element, invariant);
+	}
+
+	void addError(String error) {
+		errors.add(error);
+	}
+
+	/**
+	 * Adds the contents of another result to this result
+	 * @param other the other result
+	 */
+	void merge(PartitionResult other) {
+		for (Map.Entry<String, Map<AccessElement, String>> entry : other.references.entrySet()) {
+			final Map<AccessElement, String> classReferences = references.computeIfAbsent(entry.getKey(),
+					name -> new LinkedHashMap<>());
+			for (Map.Entry<AccessElement, String> reference : entry.getValue().entrySet()) {
+				classReferences.putIfAbsent(reference.getKey(), reference.getValue());
+			}
+		}
+		invariants.putAll(other.invariants);
+		packages.putAll(other.packages);
+		superclasses.putAll(other.superclasses);
+		errors.addAll(other.errors);
+	}
+
+	Map<String, Map<AccessElement, String>> getReferences() {
+		return Collections.unmodifiableMap(references);
+	}
+
+	Map<AccessElement, VisibilityInvariant> getInvariants() {
+		return Collections.unmodifiableMap(invariants);
+	}
+
+	String getPackage(String className) {
+		return packages.get(className);
+	}
+
+	List<String> getSuperclasses(String className) {
+		return superclasses.get(className);
+	}
+
+	List<String> getErrors() {
+		return Collections.unmodifiableList(errors);
+	}
+}
@@ -1,17 +1,53 @@
 package org.coffeebag.domain;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
 import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.IntersectionType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
 
 import org.coffeebag.annotations.Access;
 
 /**
- * An element that has an {@link Access} annotation. This may be a class or a field.
+ * An element that has an {@link Access} annotation. This may be a class, a field, or a method or constructor.
+ *
+ * Members are identified by a member key. The key of a field is its name. The key of a method or constructor
+ * includes its erased parameter types, such as {@code add(int,java.lang.String)},
+ * {@code format(java.lang.Object[]...)} for a variable-arity method, or {@code <init>()} for a constructor. The key
+ * of a call site includes the number of arguments passed, such as {@code add#2}, or {@code add#*} if it is a method
+ * reference whose arity is not known. If the types of some arguments are known, they follow the arity, with
+ * {@value #UNKNOWN_ARGUMENT} for the others, such as {@code add#2:int,?}. Keys are internal, and messages use
+ * {@link #getDisplayName()}.
  */
 public class AccessElement {
 	@SuppressWarnings("unused")
 	private static final String TAG = AccessElement.class.getSimpleName();
+
+	/**
+	 * The name of constructors
+	 */
+	public static final String CONSTRUCTOR_NAME = "<init>";
+	/**
+	 * The arity of a call site whose number of arguments is not known
+	 */
+	public static final int ANY_ARITY = -1;
+	/**
+	 * The type of a call site argument whose type is not known
+	 */
+	public static final String UNKNOWN_ARGUMENT = "?";
+	/**
+	 * The type of a null argument
+	 */
+	public static final String NULL_ARGUMENT = "null";
 	
 	/**
 	 * The canonical name of the type of this element, or the class that encloses this element if this is a field
@@ -19,11 +55,10 @@ public class AccessElement {
 	private final String typeName;
 	
 	/**
-	 * The field name if this is a field, or null if this is a type
-	 * 
-	 * This is not used in {@link #equals(Object)} and {@link #hashCode()}
+	 * The member key: the field name if this is a field, the name and parameters if this is a method, the name and
+	 * arity if this is a call site, or null if this is a type
 	 */
-	private final String fieldName;
+	private final String memberKey;
 	/**
 	 * A TypeElement that represents this element or its enclosing type, or null if none is available
 	 */
@@ -35,9 +70,9 @@ public class AccessElement {
 	 */
 	private final VariableElement fieldElement;
 	
-	private AccessElement(String typeName, TypeElement typeElement, String fieldName, VariableElement fieldElement) {
+	private AccessElement(String typeName, TypeElement typeElement, String memberKey, VariableElement fieldElement) {
 		this.typeName = typeName;
-		this.fieldName = fieldName;
+		this.memberKey = memberKey;
 		this.typeElement = typeElement;
 		this.fieldElement = fieldElement;
 	}
@@ -72,12 +107,262 @@ public class AccessElement {
 		return new AccessElement(enclosingCanonicalName, null, fieldName, null);
 	}
 
+	/**
+	 * Creates a member from its member key
+	 * @param enclosingCanonicalName the canonical name of the class that declares the member
+	 * @param memberKey the member key of a field, method, constructor, or call site
+	 * @return an AccessElement representing the member
+	 */
+	public static AccessElement member(String enclosingCanonicalName, String memberKey) {
+		return new AccessElement(enclosingCanonicalName, null, memberKey, null);
+	}
+
+	/**
+	 * Creates an element from a method or constructor
+	 * @param method the method or constructor
+	 * @return an AccessElement representing the method or constructor
+	 */
+	public static AccessElement method(ExecutableElement method) {
+		final TypeElement enclosing = (TypeElement) method.getEnclosingElement();
+		final StringBuilder name = new StringBuilder(method.getKind() == ElementKind.CONSTRUCTOR ? CONSTRUCTOR_NAME
+				: method.getSimpleName().toString());
+		name.append('(');
+		final List<? extends VariableElement> parameters = method.getParameters();
+		for (int i = 0; i < parameters.size(); i++) {
+			if (i != 0) {
+				name.append(',');
+			}
+			appendErasure(name, parameters.get(i).asType());
+		}
+		if (method.isVarArgs()) {
+			name.append("...");
+		}
+		name.append(')');
+		return new AccessElement(enclosing.getQualifiedName().toString(), enclosing, name.toString(), null);
+	}
+
+	/**
+	 * Creates a call site of a method or constructor
+	 * @param enclosingCanonicalName the canonical name of the class whose method is called
+	 * @param name the name of the method, or {@link #CONSTRUCTOR_NAME}
+	 * @param arity the number of arguments, or {@link #ANY_ARITY}
+	 * @return an AccessElement representing the call site
+	 */
+	public static AccessElement method(String enclosingCanonicalName, String name, int arity) {
+		return new AccessElement(enclosingCanonicalName, null,
+				name + '#' + (arity == ANY_ARITY ? "*" : Integer.toString(arity)), null);
+	}
+
+	/**
+	 * Creates a call site of a method or constructor whose argument types may be known
+	 * @param enclosingCanonicalName the canonical name of the class whose method is called
+	 * @param name the name of the method, or {@link #CONSTRUCTOR_NAME}
+	 * @param argumentTypes the erased type of each argument: a canonical class name, a primitive type name, or
+	 * {@link #NULL_ARGUMENT}, or null if the type is not known
+	 * @return an AccessElement representing the call site
+	 */
+	public static AccessElement method(String enclosingCanonicalName, String name, List<String> argumentTypes) {
+		final StringBuilder key = new StringBuilder(name).append('#').append(argumentTypes.size());
+		if (argumentTypes.stream().anyMatch(type -> type != null)) {
+			key.append(':');
+			for (int i = 0; i < argumentTypes.size(); i++) {
+				if (i != 0) {
+					key.append(',');
+				}
+				final String type = argumentTypes.get(i);
+				key.append(type == null ? UNKNOWN_ARGUMENT : type);
+			}
+		}
+		return new AccessElement(enclosingCanonicalName, null, key.toString(), null);
+	}
+
+	/**
+	 * Appends the name of the erasure of a type, without using the type utilities of a processing environment
+	 */
+	private static void appendErasure(StringBuilder name, TypeMirror type) {
+		switch (type.getKind()) {
+		case ARRAY:
+			appendErasure(name, ((ArrayType) type).getComponentType());
+			name.append("[]");
+			break;
+		case DECLARED:
+			name.append(((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName());
+			break;
+		case TYPEVAR:
+			appendErasure(name, ((TypeVariable) type).getUpperBound());
+			break;
+		case INTERSECTION:
+			appendErasure(name, ((IntersectionType) type).getBounds().get(0));
+			break;
+		default:
+			name.append(type.getKind().name().toLowerCase(Locale.ROOT));
+			break;
+		}
+	}
+
+	/**
+	 * @return true if this is a method, constructor, or call site
+	 */
+	public boolean isMethod() {
+		return memberKey != null && (memberKey.indexOf('(') != -1 || isCallSite());
+	}
+
+	/**
+	 * @return true if this is a call site of a method or constructor
+	 */
+	public boolean isCallSite() {
+		return isCallSite(memberKey);
+	}
+
+	/**
+	 * @param memberKey a member key, or null for a type
+	 * @return true if the key is the key of a call site
+	 */
+	public static boolean isCallSite(String memberKey) {
+		return memberKey != null && memberKey.indexOf('#') != -1;
+	}
+
+	/**
+	 * @return the name of the field or method, without the parameters of a method or the arity of a call site
+	 */
+	public String getMemberName() {
+		if (memberKey == null) {
+			return null;
+		}
+		final int parenthesis = memberKey.indexOf('(');
+		final int end = parenthesis != -1 ? parenthesis : memberKey.indexOf('#');
+		return end == -1 ? memberKey : memberKey.substring(0, end);
+	}
+
+	/**
+	 * @return the number of arguments of a call site, or {@link #ANY_ARITY} if it is not known
+	 * @throws IllegalStateException if this is not a call site
+	 */
+	public int getArity() {
+		if (!isCallSite()) {
+			throw new IllegalStateException(this + " is not a call site");
+		}
+		final String arity = getArityString(memberKey);
+		return arity.equals("*") ? ANY_ARITY : Integer.parseInt(arity);
+	}
+
+	/**
+	 * @return the types of the arguments of a call site, with null for the arguments whose types are not known, or
+	 * null if no argument type is known
+	 * @throws IllegalStateException if this is not a call site
+	 */
+	public List<String> getArgumentTypes() {
+		if (!isCallSite()) {
+			throw new IllegalStateException(this + " is not a call site");
+		}
+		final int colon = memberKey.indexOf(':');
+		if (colon == -1) {
+			return null;
+		}
+		final List<String> types = new ArrayList<>(Arrays.asList(memberKey.substring(colon + 1).split(",")));
+		types.replaceAll(type -> type.equals(UNKNOWN_ARGUMENT) ? null : type);
+		return types;
+	}
+
+	/**
+	 * @param memberKey the key of a call site
+	 * @return the number of arguments in the key, or "*"
+	 */
+	private static String getArityString(String memberKey) {
+		final int colon = memberKey.indexOf(':');
+		return memberKey.substring(memberKey.indexOf('#') + 1, colon == -1 ? memberKey.length() : colon);
+	}
+
+	/**
+	 * @return the kind of this element for messages: Class, Field, Method, or Constructor
+	 */
+	public String getKindName() {
+		return getKindName(memberKey);
+	}
+
+	/**
+	 * @param memberKey a member key, or null for a type
+	 * @return the kind of the element with the key for messages: Class, Field, Method, or Constructor
+	 */
+	public static String getKindName(String memberKey) {
+		if (memberKey == null) {
+			return "Class";
+		} else if (memberKey.startsWith(CONSTRUCTOR_NAME)) {
+			return "Constructor";
+		} else if (memberKey.indexOf('(') != -1 || isCallSite(memberKey)) {
+			return "Method";
+		} else {
+			return "Field";
+		}
+	}
+
+	/**
+	 * @return the name of this element for messages, such as {@code com.foo.A.make(int)} for a method or
+	 * {@code com.foo.A.make()} for a call site without arguments
+	 */
+	public String getDisplayName() {
+		return getDisplayName(typeName, memberKey);
+	}
+
+	/**
+	 * Returns the name of an element for messages
+	 *
+	 * A constructor is named like its class, as in {@code com.foo.A(int)}. A call site has the types of its
+	 * arguments if they are all known, and otherwise the number of arguments, as in
+	 * {@code com.foo.A.make(2 arguments)}. A method reference is named like {@code com.foo.A::make} or
+	 * {@code com.foo.A::new}.
+	 *
+	 * @param typeName the canonical name of the type, or of the type that declares the member
+	 * @param memberKey the member key, or null for a type
+	 * @return the name
+	 */
+	public static String getDisplayName(String typeName, String memberKey) {
+		if (memberKey == null) {
+			return typeName;
+		}
+		final StringBuilder name = new StringBuilder(typeName);
+		final int hash = memberKey.indexOf('#');
+		if (hash != -1) {
+			final String member = memberKey.substring(0, hash);
+			final String arity = getArityString(memberKey);
+			if (arity.equals("*")) {
+				return name.append("::").append(member.equals(CONSTRUCTOR_NAME) ? "new" : member).toString();
+			}
+			if (!member.equals(CONSTRUCTOR_NAME)) {
+				name.append('.').append(member);
+			}
+			name.append('(');
+			final int colon = memberKey.indexOf(':');
+			final String types = colon == -1 ? null : memberKey.substring(colon + 1);
+			if (types != null && !Arrays.asList(types.split(",")).contains(UNKNOWN_ARGUMENT)) {
+				name.append(types);
+			} else if (!arity.equals("0")) {
+				name.append(arity).append(arity.equals("1") ? " argument" : " arguments");
+			}
+			return name.append(')').toString();
+		}
+		if (memberKey.startsWith(CONSTRUCTOR_NAME + '(')) {
+			name.append(memberKey, CONSTRUCTOR_NAME.length(), memberKey.length());
+		} else {
+			name.append('.').append(memberKey);
+		}
+		// The last parameter of a variable-arity method is written as in its declaration
+		final int varargs = name.lastIndexOf("[]...)");
+		if (varargs != -1 && varargs == name.length() - "[]...)".length()) {
+			name.delete(varargs, varargs + 2);
+		}
+		return name.toString();
+	}
+
 	public String getTypeName() {
 		return typeName;
 	}
 
-	public String getFieldName() {
-		return fieldName;
+	/**
+	 * @return the member key, or null if this is a type
+	 */
+	public String getMemberKey() {
+		return memberKey;
 	}
 
 	public TypeElement getTypeElement() {
@@ -91,8 +376,8 @@ public class AccessElement {
 	
 	@Override
 	public String toString() {
-		if (fieldName != null) {
-			return typeName + '.' + fieldName;
+		if (memberKey != null) {
+			return typeName + '.' + memberKey;
 		} else {
 			return typeName;
 		}
@@ -102,7 +387,7 @@ public class AccessElement {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((fieldName == null) ? 0 : fieldName.hashCode());
+		result = prime * result + ((memberKey == null) ? 0 : memberKey.hashCode());
 		result = prime * result + ((typeName == null) ? 0 : typeName.hashCode());
 		return result;
 	}
@@ -119,11 +404,11 @@ public class AccessElement {
 			return false;
 		}
 		AccessElement other = (AccessElement) obj;
-		if (fieldName == null) {
-			if (other.fieldName != null) {
+		if (memberKey == null) {
+			if (other.memberKey != null) {
 				return false;
 			}
-		} else if (!fieldName.equals(other.fieldName)) {
+		} else if (!memberKey.equals(other.memberKey)) {
 			return false;
 		}
 		if (typeName == null) {
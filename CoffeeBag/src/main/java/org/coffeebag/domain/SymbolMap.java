@@ -0,0 +1,100 @@
+package org.coffeebag.domain;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A map from symbol IDs to values
+ *
+ * Symbol IDs are small and dense, so the values are stored in an array indexed by ID and lookups do not box the ID.
+ * A key may map to null, which is different from the key not being present.
+ *
+ * @param <V> the type of the values
+ */
+public class SymbolMap<V> {
+
+	/**
+	 * The value of each ID, or null if the ID maps to null or is not present
+	 */
+	private Object[] values;
+	/**
+	 * The IDs that are present
+	 */
+	private final BitSet keys;
+	/**
+	 * The number of IDs that are present
+	 */
+	private int size;
+
+	public SymbolMap() {
+		values = new Object[16];
+		keys = new BitSet();
+	}
+
+	/**
+	 * @param id a symbol ID
+	 * @return true if the ID is present, even if it maps to null
+	 */
+	public boolean containsKey(int id) {
+		return keys.get(id);
+	}
+
+	/**
+	 * @param id a symbol ID
+	 * @return the value of the ID, or null if it is not present
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int id) {
+		return id < values.length ? (V) values[id] : null;
+	}
+
+	/**
+	 * Sets the value of an ID
+	 * @param id the symbol ID
+	 * @param value the value, which may be null
+	 */
+	public void put(int id, V value) {
+		if (id >= values.length) {
+			values = Arrays.copyOf(values, Math.max(id + 1, values.length * 2));
+		}
+		values[id] = value;
+		if (!keys.get(id)) {
+			keys.set(id);
+			size++;
+		}
+	}
+
+	/**
+	 * Sets the value of an ID if it is not present
+	 * @param id the symbol ID
+	 * @param value the value, which may be null
+	 */
+	public void putIfAbsent(int id, V value) {
+		if (!keys.get(id)) {
+			put(id, value);
+		}
+	}
+
+	/**
+	 * Finds the next ID that is present, in increasing order, as {@link BitSet#nextSetBit(int)} does
+	 * @param from the ID to start at
+	 * @return the first present ID that is at least {@code from}, or -1 if there is none
+	 */
+	public int nextKey(int from) {
+		return keys.nextSetBit(from);
+	}
+
+	/**
+	 * @return the number of IDs that are present
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if no IDs are present
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+}
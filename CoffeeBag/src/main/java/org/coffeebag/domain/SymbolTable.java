@@ -0,0 +1,208 @@
+package org.coffeebag.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives each type and member an integer ID
+ *
+ * Types and fields share one ID space. A field is identified by the ID of the type that declares it and its name.
+ * The table keeps only names, so storing IDs instead of {@link AccessElement}s does not keep compiler symbols alive.
+ *
+ * Adding symbols is not thread-safe. Lookups may be made from several threads once no more symbols are added.
+ */
+public class SymbolTable {
+
+	/**
+	 * A value that is not a symbol ID
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * The ID of each type, by canonical name
+	 */
+	private final Map<String, Integer> types;
+	/**
+	 * The IDs of the fields of each type by name, or null if the symbol is not a type or declares no fields, by ID
+	 */
+	private final List<Map<String, Integer>> fields;
+	/**
+	 * The canonical name of the type of each symbol, or the type that declares it if it is a field, by ID
+	 */
+	private final List<String> typeNames;
+	/**
+	 * The member key of each field, method, or call site, or null for types, by ID
+	 */
+	private final List<String> memberKeys;
+
+	public SymbolTable() {
+		types = new HashMap<>();
+		fields = new ArrayList<>();
+		typeNames = new ArrayList<>();
+		memberKeys = new ArrayList<>();
+	}
+
+	/**
+	 * Returns the ID of an element, adding it if it is not in the table
+	 * @param element the element
+	 * @return the ID
+	 */
+	public int intern(AccessElement element) {
+		final int typeId = internType(element.getTypeName());
+		if (element.getMemberKey() == null) {
+			return typeId;
+		}
+		Map<String, Integer> typeFields = fields.get(typeId);
+		if (typeFields == null) {
+			typeFields = new HashMap<>();
+			fields.set(typeId, typeFields);
+		}
+		final Integer fieldId = typeFields.get(element.getMemberKey());
+		if (fieldId != null) {
+			return fieldId;
+		}
+		final int added = add(typeNames.get(typeId), element.getMemberKey());
+		typeFields.put(element.getMemberKey(), added);
+		return added;
+	}
+
+	/**
+	 * Returns the IDs of some elements, adding them if they are not in the table
+	 * @param elements the elements
+	 * @return the IDs, sorted and without duplicates
+	 */
+	public int[] intern(Collection<AccessElement> elements) {
+		final int[] ids = new int[elements.size()];
+		int count = 0;
+		for (AccessElement element : elements) {
+			ids[count++] = intern(element);
+		}
+		Arrays.sort(ids);
+		// Remove duplicates
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			if (unique == 0 || ids[unique - 1] != ids[i]) {
+				ids[unique++] = ids[i];
+			}
+		}
+		return unique == ids.length ? ids : Arrays.copyOf(ids, unique);
+	}
+
+	/**
+	 * Returns the ID of an element without adding it
+	 * @param element the element
+	 * @return the ID, or {@link #NONE} if the element is not in the table
+	 */
+	public int find(AccessElement element) {
+		final Integer typeId = types.get(element.getTypeName());
+		if (typeId == null) {
+			return NONE;
+		}
+		if (element.getMemberKey() == null) {
+			return typeId;
+		}
+		final Map<String, Integer> typeFields = fields.get(typeId);
+		final Integer fieldId = typeFields == null ? null : typeFields.get(element.getMemberKey());
+		return fieldId == null ? NONE : fieldId;
+	}
+
+	private int internType(String typeName) {
+		final Integer id = types.get(typeName);
+		if (id != null) {
+			return id;
+		}
+		final int added = add(typeName, null);
+		types.put(typeName, added);
+		return added;
+	}
+
+	private int add(String typeName, String memberKey) {
+		typeNames.add(typeName);
+		memberKeys.add(memberKey);
+		fields.add(null);
+		return typeNames.size() - 1;
+	}
+
+	/**
+	 * Returns the element with an ID
+	 * @param id the ID
+	 * @return an element that has the names of the symbol, but no compiler symbols
+	 */
+	public AccessElement get(int id) {
+		final String memberKey = memberKeys.get(id);
+		if (memberKey == null) {
+			return AccessElement.type(typeNames.get(id));
+		}
+		return AccessElement.member(typeNames.get(id), memberKey);
+	}
+
+	/**
+	 * @param id a symbol ID
+	 * @return the canonical name of the type, or of the type that declares the field
+	 */
+	public String getTypeName(int id) {
+		return typeNames.get(id);
+	}
+
+	/**
+	 * @param id a symbol ID
+	 * @return the member key, or null if the symbol is a type
+	 */
+	public String getMemberKey(int id) {
+		return memberKeys.get(id);
+	}
+
+	/**
+	 * @param id a symbol ID
+	 * @return true if the symbol is a call site, as returned by {@link AccessElement#isCallSite()}
+	 */
+	public boolean isCallSite(int id) {
+		return AccessElement.isCallSite(memberKeys.get(id));
+	}
+
+	/**
+	 * @param id a symbol ID
+	 * @return true if the symbol is a method, constructor, or call site, as returned by
+	 * {@link AccessElement#isMethod()}
+	 */
+	public boolean isMethod(int id) {
+		final String memberKey = memberKeys.get(id);
+		return memberKey != null && (memberKey.indexOf('(') != -1 || AccessElement.isCallSite(memberKey));
+	}
+
+	/**
+	 * @param id a symbol ID
+	 * @return the name of the symbol for messages, as returned by {@link AccessElement#getDisplayName()}
+	 */
+	public String getDisplayName(int id) {
+		return AccessElement.getDisplayName(typeNames.get(id), memberKeys.get(id));
+	}
+
+	/**
+	 * @param id a symbol ID
+	 * @return the kind of the symbol for messages, as returned by {@link AccessElement#getKindName()}
+	 */
+	public String getKindName(int id) {
+		return AccessElement.getKindName(memberKeys.get(id));
+	}
+
+	/**
+	 * @param id a symbol ID
+	 * @return the internal name of the symbol, as returned by {@link AccessElement#toString()}
+	 */
+	public String toString(int id) {
+		final String memberKey = memberKeys.get(id);
+		return memberKey == null ? typeNames.get(id) : typeNames.get(id) + '.' + memberKey;
+	}
+
+	/**
+	 * @return the number of symbols in the table
+	 */
+	public int size() {
+		return typeNames.size();
+	}
+}
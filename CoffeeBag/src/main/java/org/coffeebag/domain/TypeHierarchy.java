@@ -0,0 +1,95 @@
+package org.coffeebag.domain;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Indexes the superclasses of classes
+ *
+ * Each class is given an integer ID. The ancestors of a class (the class and its superclasses) are found once and
+ * stored as a set of IDs, so checking if a class is a subclass of another is a set membership test. Superclasses are
+ * identified by their erased names, so generic superclasses are found regardless of their type arguments.
+ *
+ * Adding classes is not thread-safe. Lookups may be made from several threads once no more classes are added.
+ */
+public class TypeHierarchy {
+
+	/**
+	 * The ID of each class, by canonical name
+	 */
+	private final Map<String, Integer> ids;
+	/**
+	 * The ancestors of each class whose superclasses have been found, by canonical name
+	 */
+	private final Map<String, BitSet> ancestors;
+
+	public TypeHierarchy() {
+		ids = new HashMap<>();
+		ancestors = new HashMap<>();
+	}
+
+	/**
+	 * Returns the ancestors of a class, finding them the first time that the class is used
+	 *
+	 * @param type the class
+	 * @return the IDs of the class and its superclasses. This must not be modified.
+	 */
+	public BitSet getAncestors(TypeElement type) {
+		final String name = type.getQualifiedName().toString();
+		final BitSet known = ancestors.get(name);
+		if (known != null) {
+			return known;
+		}
+		final BitSet found;
+		final TypeMirror superclass = type.getSuperclass();
+		if (superclass.getKind() == TypeKind.DECLARED) {
+			// The element of a parameterized type is its generic declaration
+			found = (BitSet) getAncestors((TypeElement) ((DeclaredType) superclass).asElement()).clone();
+		} else {
+			found = new BitSet();
+		}
+		found.set(intern(name));
+		ancestors.put(name, found);
+		return found;
+	}
+
+	/**
+	 * Returns the ancestors of a class with known superclasses
+	 *
+	 * @param name the canonical name of the class
+	 * @param superclasses the canonical names of the superclasses of the class
+	 * @return the IDs of the class and its superclasses
+	 */
+	public BitSet getAncestors(String name, List<String> superclasses) {
+		final BitSet found = new BitSet();
+		found.set(intern(name));
+		for (String superclass : superclasses) {
+			found.set(intern(superclass));
+		}
+		return found;
+	}
+
+	/**
+	 * Checks if a set of ancestors contains a class
+	 *
+	 * @param ancestors a set returned by {@link #getAncestors(TypeElement)}
+	 * @param className the canonical name of the class
+	 * @return true if the set contains the class
+	 */
+	public boolean contains(BitSet ancestors, String className) {
+		final Integer id = ids.get(className);
+		// A class that was never added is not an ancestor of any class
+		return id != null && ancestors.get(id);
+	}
+
+	private int intern(String name) {
+		return ids.computeIfAbsent(name, key -> ids.size());
+	}
+}
@@ -0,0 +1,120 @@
+package org.coffeebag.domain;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index from elements to the classes that use them
+ *
+ * The index is built from the references of each class, as symbol IDs. The users of all elements are stored in one
+ * array, with the users of each element in a contiguous range, so an index takes little more memory than the
+ * references themselves.
+ */
+public class UsageIndex {
+
+	/**
+	 * The canonical names of the using classes
+	 */
+	private final String[] classNames;
+	/**
+	 * For each symbol ID, the start of the range of its users in {@link #users}. The range ends at the start of the
+	 * next ID.
+	 */
+	private final int[] offsets;
+	/**
+	 * The indexes in {@link #classNames} of the users of each element, grouped by element
+	 */
+	private final int[] users;
+	/**
+	 * The IDs of the elements that have at least one user, sorted
+	 */
+	private final int[] targets;
+
+	private UsageIndex(String[] classNames, int[] offsets, int[] users, int[] targets) {
+		this.classNames = classNames;
+		this.offsets = offsets;
+		this.users = users;
+		this.targets = targets;
+	}
+
+	/**
+	 * Builds an index
+	 *
+	 * @param references maps from the canonical names of classes to the IDs of the elements that they use
+	 * @param symbolCount the number of symbols in the table that the IDs are from
+	 * @return an index
+	 */
+	public static UsageIndex build(Map<String, int[]> references, int symbolCount) {
+		final String[] classNames = new String[references.size()];
+		final int[] offsets = new int[symbolCount + 1];
+		// Count the users of each element
+		for (int[] classReferences : references.values()) {
+			for (int target : classReferences) {
+				offsets[target + 1]++;
+			}
+		}
+		int targetCount = 0;
+		for (int i = 0; i < symbolCount; i++) {
+			if (offsets[i + 1] != 0) {
+				targetCount++;
+			}
+			offsets[i + 1] += offsets[i];
+		}
+		final int[] targets = new int[targetCount];
+		targetCount = 0;
+		for (int i = 0; i < symbolCount; i++) {
+			if (offsets[i + 1] != offsets[i]) {
+				targets[targetCount++] = i;
+			}
+		}
+		// Fill each element's range
+		final int[] users = new int[offsets[symbolCount]];
+		final int[] next = Arrays.copyOf(offsets, symbolCount);
+		int classIndex = 0;
+		for (Map.Entry<String, int[]> entry : references.entrySet()) {
+			classNames[classIndex] = entry.getKey();
+			for (int target : entry.getValue()) {
+				users[next[target]++] = classIndex;
+			}
+			classIndex++;
+		}
+		return new UsageIndex(classNames, offsets, users, targets);
+	}
+
+	/**
+	 * @return the IDs of the elements that have at least one user, sorted
+	 */
+	public int[] getTargets() {
+		return targets.clone();
+	}
+
+	/**
+	 * Returns the classes that use an element
+	 *
+	 * @param target the ID of the element
+	 * @return the canonical names of the classes
+	 */
+	public List<String> getUsers(int target) {
+		if (target < 0 || target >= offsets.length - 1) {
+			return Arrays.asList();
+		}
+		final int start = offsets[target];
+		final int end = offsets[target + 1];
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				if (index < 0 || index >= end - start) {
+					throw new IndexOutOfBoundsException(Integer.toString(index));
+				}
+				return classNames[users[start + index]];
+			}
+
+			@Override
+			public int size() {
+				return end - start;
+			}
+		};
+	}
+}
@@ -0,0 +1,98 @@
+package org.coffeebag.domain;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+
+/**
+ * An immutable snapshot of the information about a class that uses annotated elements
+ *
+ * Visibility invariants are checked against snapshots instead of {@link TypeElement}s, so that the checks do not
+ * use the compiler and can run on any thread.
+ */
+public class UsingClass {
+
+	/**
+	 * The canonical name of the class
+	 */
+	private final String qualifiedName;
+	/**
+	 * The name of the package that contains the class, or an empty string for the default package
+	 */
+	private final String packageName;
+	/**
+	 * The hierarchy that the ancestors of the class are in
+	 */
+	private final TypeHierarchy hierarchy;
+	/**
+	 * The IDs of the class and its superclasses in the hierarchy
+	 */
+	private final BitSet ancestors;
+
+	/**
+	 * Creates a snapshot
+	 * @param qualifiedName the canonical name of the class
+	 * @param packageName the name of the package that contains the class
+	 * @param hierarchy the hierarchy that the ancestors are in
+	 * @param ancestors the IDs of the class and its superclasses in the hierarchy
+	 */
+	public UsingClass(String qualifiedName, String packageName, TypeHierarchy hierarchy, BitSet ancestors) {
+		Objects.requireNonNull(qualifiedName);
+		Objects.requireNonNull(packageName);
+		this.qualifiedName = qualifiedName;
+		this.packageName = packageName;
+		this.hierarchy = hierarchy;
+		this.ancestors = ancestors;
+	}
+
+	/**
+	 * Creates a snapshot of a class with known superclasses, in a new hierarchy
+	 * @param qualifiedName the canonical name of the class
+	 * @param packageName the name of the package that contains the class
+	 * @param superclasses the canonical names of the superclasses
+	 */
+	public UsingClass(String qualifiedName, String packageName, List<String> superclasses) {
+		Objects.requireNonNull(qualifiedName);
+		Objects.requireNonNull(packageName);
+		this.qualifiedName = qualifiedName;
+		this.packageName = packageName;
+		this.hierarchy = new TypeHierarchy();
+		this.ancestors = hierarchy.getAncestors(qualifiedName, superclasses);
+	}
+
+	/**
+	 * Creates a snapshot of a class
+	 * @param element the class
+	 * @param elements the element utilities
+	 * @param hierarchy the hierarchy to find the superclasses of the class with
+	 * @return a snapshot
+	 */
+	public static UsingClass of(TypeElement element, Elements elements, TypeHierarchy hierarchy) {
+		return new UsingClass(element.getQualifiedName().toString(),
+				elements.getPackageOf(element).getQualifiedName().toString(), hierarchy, hierarchy.getAncestors(element));
+	}
+
+	public String getQualifiedName() {
+		return qualifiedName;
+	}
+
+	public String getPackageName() {
+		return packageName;
+	}
+
+	/**
+	 * @param className the canonical name of a class
+	 * @return true if this class is the class or one of its subclasses
+	 */
+	public boolean isSubclassOf(String className) {
+		return hierarchy.contains(ancestors, className);
+	}
+
+	@Override
+	public String toString() {
+		return qualifiedName;
+	}
+}
@@ -1,6 +1,6 @@
 package org.coffeebag.domain.invariant;
 
-import javax.lang.model.element.TypeElement;
+import org.coffeebag.domain.UsingClass;
 
 /**
  * Restricts an element to use in one class
@@ -10,7 +10,7 @@ class ClassPrivateVisibilityInvariant implements VisibilityInvariant {
 	/**
 	 * The canonical name where this element may be used
 	 */
-	private String qualifiedClassName;
+	private final String qualifiedClassName;
 
 	public ClassPrivateVisibilityInvariant(String qualifiedClassName) {
 		this.qualifiedClassName = qualifiedClassName;
@@ -21,8 +21,18 @@ class ClassPrivateVisibilityInvariant implements VisibilityInvariant {
 	 * @inheritdoc
 	 */
 	@Override
-	public boolean isUsageAllowedIn(TypeElement element) {
-		return element.getQualifiedName().toString().equals(qualifiedClassName);
+	public boolean isUsageAllowedIn(UsingClass usingClass) {
+		return usingClass.getQualifiedName().equals(qualifiedClassName);
+	}
+
+	@Override
+	public Kind getKind() {
+		return Kind.CLASS_PRIVATE;
+	}
+
+	@Override
+	public String getScope() {
+		return qualifiedClassName;
 	}
 
 	@Override
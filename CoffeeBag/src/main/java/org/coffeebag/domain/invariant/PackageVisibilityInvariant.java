@@ -2,9 +2,7 @@ package org.coffeebag.domain.invariant;
 
 import java.util.Objects;
 
-import javax.lang.model.element.PackageElement;
-import javax.lang.model.element.TypeElement;
-import javax.lang.model.util.Elements;
+import org.coffeebag.domain.UsingClass;
 
 /**
  * A visibility invariant that allows access from one package (not including its subpackages)
@@ -16,28 +14,30 @@ class PackageVisibilityInvariant implements VisibilityInvariant {
 	 */
 	protected final String packageName;
 	
-	/**
-	 * The element utility
-	 */
-	protected final Elements elements;
-	
 	/**
 	 * Creates a new package visibility invariant
 	 * @param packageName the package in which the element should be accessible
 	 */
-	public PackageVisibilityInvariant(String packageName, Elements elements) {
+	public PackageVisibilityInvariant(String packageName) {
 		Objects.requireNonNull(packageName);
-		Objects.requireNonNull(elements);
 		this.packageName = packageName;
-		this.elements = elements;
 	}
 
 	@Override
-	public boolean isUsageAllowedIn(TypeElement element) {
-		final PackageElement elementPackage = elements.getPackageOf(element);
-		return packageName.equals(elementPackage.getQualifiedName().toString());
+	public boolean isUsageAllowedIn(UsingClass usingClass) {
+		return packageName.equals(usingClass.getPackageName());
 	}
 	
+	@Override
+	public Kind getKind() {
+		return Kind.PACKAGE;
+	}
+
+	@Override
+	public String getScope() {
+		return packageName;
+	}
+
 	@Override
 	public String toString() {
 		return "Allowed in package " + packageName + " (not subpackages)";
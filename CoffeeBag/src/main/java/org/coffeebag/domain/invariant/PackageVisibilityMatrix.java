@@ -0,0 +1,126 @@
+package org.coffeebag.domain.invariant;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Precomputes which package-scoped invariants allow usage from each using package
+ *
+ * Package and subpackage invariants depend only on the package of the using class. Their scopes are compiled into a
+ * trie of package name segments, and the verdicts for a using package are computed once, by walking the trie along
+ * its name, into a bit set that has a bit for each invariant. Checking a usage is then a bit test.
+ *
+ * Invariants are added first. The verdicts are computed when they are first requested, after which no invariants
+ * may be added. Verdict bit sets must not be modified, and can be read from any thread.
+ */
+public class PackageVisibilityMatrix {
+
+	/**
+	 * A package name segment in the trie
+	 */
+	private static class Node {
+		/**
+		 * The child nodes, by package name segment
+		 */
+		private final Map<String, Node> children = new HashMap<>();
+		/**
+		 * The indexes of the invariants that allow this package only
+		 */
+		private final BitSet exact = new BitSet();
+		/**
+		 * The indexes of the invariants that allow this package and its subpackages
+		 */
+		private final BitSet subtree = new BitSet();
+	}
+
+	/**
+	 * The root of the trie, which is the default package
+	 */
+	private final Node root;
+	/**
+	 * The indexes of the added invariants
+	 */
+	private final Map<VisibilityInvariant, Integer> indexes;
+	/**
+	 * The verdicts of each using package
+	 */
+	private final Map<String, BitSet> verdicts;
+
+	/**
+	 * Creates an empty matrix
+	 */
+	public PackageVisibilityMatrix() {
+		root = new Node();
+		// The invariants do not implement equals, and the same objects are used for all usages of an element
+		indexes = new IdentityHashMap<>();
+		verdicts = new HashMap<>();
+	}
+
+	/**
+	 * Adds an invariant if it is scoped to a package
+	 * @param invariant the invariant
+	 * @return the index of the invariant in verdict bit sets, or -1 if it is not scoped to a package
+	 * @throws IllegalStateException if verdicts have already been computed
+	 */
+	public int add(VisibilityInvariant invariant) {
+		if (!(invariant instanceof PackageVisibilityInvariant)) {
+			return -1;
+		}
+		final Integer existing = indexes.get(invariant);
+		if (existing != null) {
+			return existing;
+		}
+		if (!verdicts.isEmpty()) {
+			throw new IllegalStateException("Invariants cannot be added after verdicts are computed");
+		}
+		final int index = indexes.size();
+		indexes.put(invariant, index);
+		Node node = root;
+		final String scope = ((PackageVisibilityInvariant) invariant).packageName;
+		if (!scope.isEmpty()) {
+			for (String segment : scope.split("\\.")) {
+				node = node.children.computeIfAbsent(segment, name -> new Node());
+			}
+		}
+		if (invariant.getKind() == VisibilityInvariant.Kind.SUBPACKAGE) {
+			node.subtree.set(index);
+		} else {
+			node.exact.set(index);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the verdicts for a using package, computing them the first time
+	 * @param packageName the name of the using package, or an empty string for the default package
+	 * @return a bit set with the indexes of the invariants that allow usage from the package
+	 */
+	public BitSet getVerdicts(String packageName) {
+		BitSet allowed = verdicts.get(packageName);
+		if (allowed == null) {
+			allowed = computeVerdicts(packageName);
+			verdicts.put(packageName, allowed);
+		}
+		return allowed;
+	}
+
+	private BitSet computeVerdicts(String packageName) {
+		final BitSet allowed = new BitSet();
+		Node node = root;
+		allowed.or(node.subtree);
+		if (!packageName.isEmpty()) {
+			for (String segment : packageName.split("\\.")) {
+				node = node.children.get(segment);
+				if (node == null) {
+					// No invariant is scoped to this package or a package inside it
+					return allowed;
+				}
+				allowed.or(node.subtree);
+			}
+		}
+		allowed.or(node.exact);
+		return allowed;
+	}
+}
@@ -1,6 +1,6 @@
 package org.coffeebag.domain.invariant;
 
-import javax.lang.model.element.TypeElement;
+import org.coffeebag.domain.UsingClass;
 
 /**
  * Allows an element to be accessed from everywhere
@@ -12,10 +12,20 @@ class PublicVisibilityInvariant implements VisibilityInvariant {
 	 * @inheritdoc
 	 */
 	@Override
-	public boolean isUsageAllowedIn(TypeElement element) {
+	public boolean isUsageAllowedIn(UsingClass usingClass) {
 		return true;
 	}
 	
+	@Override
+	public Kind getKind() {
+		return Kind.PUBLIC;
+	}
+
+	@Override
+	public String getScope() {
+		return "";
+	}
+
 	@Override
 	public String toString() {
 		return "Allowed everywhere";
@@ -1,12 +1,8 @@
 package org.coffeebag.domain.invariant;
 
-import java.util.List;
+import java.util.Objects;
 
-import javax.annotation.processing.ProcessingEnvironment;
-import javax.lang.model.element.TypeElement;
-import javax.lang.model.type.DeclaredType;
-import javax.lang.model.type.TypeKind;
-import javax.lang.model.type.TypeMirror;
+import org.coffeebag.domain.UsingClass;
 
 /**
  * Represents the packages/classes a member is allowed to be accessed from
@@ -15,17 +11,16 @@ public class SubclassVisibilityInvariant implements VisibilityInvariant {
 	@SuppressWarnings("unused")
 	private static final String TAG = SubclassVisibilityInvariant.class.getSimpleName();
 
-	private ProcessingEnvironment env;
 	/**
-	 * The class whose subclasses may access this element
+	 * The canonical name of the class whose subclasses may access this element
 	 * 
-	 * Access allowed if element is a subtype of classElement
+	 * Access allowed if element is a subtype of this class
 	 */
-	private TypeElement classElement;
+	private final String className;
 
-	public SubclassVisibilityInvariant(ProcessingEnvironment env, TypeElement classElement) {
-		this.env = env;
-		this.classElement = classElement;
+	public SubclassVisibilityInvariant(String className) {
+		Objects.requireNonNull(className);
+		this.className = className;
 	}
 
 	/**
@@ -33,30 +28,22 @@ public class SubclassVisibilityInvariant implements VisibilityInvariant {
 	 * @inheritdoc
 	 */
 	@Override
-	public boolean isUsageAllowedIn(TypeElement element) {
-		// Check subclassing manually
-		if (env.getTypeUtils().isSameType(element.asType(), classElement.asType())) {
-			return true;
-		}
-		TypeMirror superclass = (DeclaredType) element.getSuperclass();
-		while (superclass.getKind() == TypeKind.DECLARED) {
-			if (superclass.toString().equals(classElement.getQualifiedName().toString())) {
-				return true;
-			}
-			final List<? extends TypeMirror> supertypes = env.getTypeUtils().directSupertypes(superclass);
-			if (!supertypes.isEmpty()) {
-				// Interfaces are last, so first should be a class
-				superclass = supertypes.get(0);
-			} else {
-				break;
-			}
-		}
-		// Nothing found
-		return false;
+	public boolean isUsageAllowedIn(UsingClass usingClass) {
+		return usingClass.isSubclassOf(className);
 	}
 	
+	@Override
+	public Kind getKind() {
+		return Kind.SUBCLASS;
+	}
+
+	@Override
+	public String getScope() {
+		return className;
+	}
+
 	@Override
 	public String toString() {
-		return "Allowed in class " + classElement + " and subclasses";
+		return "Allowed in class " + className + " and subclasses";
 	}
 }
@@ -1,24 +1,29 @@
 package org.coffeebag.domain.invariant;
 
-import javax.lang.model.element.PackageElement;
-import javax.lang.model.element.TypeElement;
-import javax.lang.model.util.Elements;
+import org.coffeebag.domain.UsingClass;
 
 /**
  * Allows access from a package and its subpackages
  */
 class SubpackageVisibilityInvariant extends PackageVisibilityInvariant {
 
-	public SubpackageVisibilityInvariant(String packageName, Elements elements) {
-		super(packageName, elements);
+	public SubpackageVisibilityInvariant(String packageName) {
+		super(packageName);
 	}
 
 	@Override
-	public boolean isUsageAllowedIn(TypeElement element) {
-		final PackageElement elementPackage = elements.getPackageOf(element);
-		return elementPackage.getQualifiedName().toString().startsWith(packageName);
+	public boolean isUsageAllowedIn(UsingClass usingClass) {
+		final String usingPackage = usingClass.getPackageName();
+		// A subpackage name continues with a dot, so that scope com.foo does not allow com.foobar
+		return usingPackage.startsWith(packageName) && (usingPackage.length() == packageName.length()
+				|| usingPackage.charAt(packageName.length()) == '.');
 	}
 	
+	@Override
+	public Kind getKind() {
+		return Kind.SUBPACKAGE;
+	}
+
 	@Override
 	public String toString() {
 		return "Allowed in package " + packageName + " and subpackages";
@@ -1,6 +1,6 @@
 package org.coffeebag.domain.invariant;
 
-import javax.lang.model.element.TypeElement;
+import org.coffeebag.domain.UsingClass;
 
 /**
  * Represents the packages/classes a member is allowed to be accessed from
@@ -8,10 +8,52 @@ import javax.lang.model.element.TypeElement;
 public interface VisibilityInvariant {
 
 	/**
-	 * @param element the TypeElement representing the class that is using
+	 * The kinds of invariants
+	 */
+	enum Kind {
+		/**
+		 * Allowed everywhere
+		 */
+		PUBLIC,
+		/**
+		 * Allowed in one package, not including its subpackages
+		 */
+		PACKAGE,
+		/**
+		 * Allowed in a package and its subpackages
+		 */
+		SUBPACKAGE,
+		/**
+		 * Allowed in one class
+		 */
+		CLASS_PRIVATE,
+		/**
+		 * Allowed in a class and its subclasses
+		 */
+		SUBCLASS,
+	}
+
+	/**
+	 * Implementations must be immutable, because this may be called from several threads at the same time.
+	 *
+	 * @param usingClass a snapshot of the class that is using
 	 *                the member with this invariant
 	 * @return true iff the given class is allowed usage of the member associated
 	 * with this invariant
 	 */
-	boolean isUsageAllowedIn(TypeElement element);
+	boolean isUsageAllowedIn(UsingClass usingClass);
+
+	/**
+	 * @return the kind of this invariant
+	 */
+	Kind getKind();
+
+	/**
+	 * Returns the scope of this invariant. An invariant can be created again from its kind and scope with
+	 * {@link VisibilityInvariantFactory#create(Kind, String)}.
+	 *
+	 * @return the canonical name of the package or class that this invariant refers to, or an empty string if
+	 * it does not refer to one
+	 */
+	String getScope();
 }
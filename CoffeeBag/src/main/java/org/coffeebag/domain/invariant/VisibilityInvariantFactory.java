@@ -6,6 +6,7 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
 import javax.tools.Diagnostic.Kind;
 
 import org.coffeebag.annotations.Access;
@@ -13,12 +14,24 @@ import org.coffeebag.log.Log;
 
 public class VisibilityInvariantFactory {
 
-	private static String TAG = VisibilityInvariantFactory.class.getSimpleName();
+	private static final String TAG = VisibilityInvariantFactory.class.getSimpleName();
 
 	/**
-	 * Creates a visibility invariant for an annotated type or field
+	 * Creates a visibility invariant for an annotated type, field, method, or constructor
 	 */
 	public static VisibilityInvariant getInvariant(Element element, ProcessingEnvironment env) {
+		return getInvariant(element, env.getElementUtils(), env.getMessager());
+	}
+
+	/**
+	 * Creates a visibility invariant for an annotated type, field, method, or constructor
+	 *
+	 * @param element the annotated element
+	 * @param elements the element utilities
+	 * @param messager the messager to report invalid annotations to
+	 * @return an invariant, or null if the annotation is not valid
+	 */
+	public static VisibilityInvariant getInvariant(Element element, Elements elements, Messager messager) {
 		
 		final Access annotation = element.getAnnotation(Access.class);
 		if (annotation == null) {
@@ -32,36 +45,73 @@ public class VisibilityInvariantFactory {
 				final ElementKind kind = element.getKind();
 				if (kind.isClass() || kind.isInterface()) {
 					// Classes are only visible in the package where they are declared
-					final PackageElement elementPackage = env.getElementUtils().getPackageOf(element);
-					return new PackageVisibilityInvariant(elementPackage.getQualifiedName().toString(), env.getElementUtils());
+					final PackageElement elementPackage = elements.getPackageOf(element);
+					return new PackageVisibilityInvariant(elementPackage.getQualifiedName().toString());
 				} else {
 					// Non-class elements are only visible from the classes where they are declared
 					return new ClassPrivateVisibilityInvariant(enclosing.getQualifiedName().toString());
 				}
 			case SCOPED:
 				final String scope = annotation.scope();
-				final Messager messager = env.getMessager();
 				// Check not empty
 				if (scope.isEmpty()) {
 					messager.printMessage(Kind.ERROR, "An element with SCOPED visibility must specify a non-empty scope", element);
 					return null;
 				}
 				// Check that scope is a valid package
-				final PackageElement scopePackage = env.getElementUtils().getPackageElement(scope);
+				final PackageElement scopePackage = elements.getPackageElement(scope);
 				if (scopePackage == null) {
 					messager.printMessage(Kind.ERROR, "The package \"" + scope + "\" could not be resolved", element);
 					return null;
 				}
 				
-				return new SubpackageVisibilityInvariant(scopePackage.getQualifiedName().toString(), env.getElementUtils());
+				return new SubpackageVisibilityInvariant(scopePackage.getQualifiedName().toString());
 			case SUBCLASS:
-				return new SubclassVisibilityInvariant(env, enclosing);
+				return new SubclassVisibilityInvariant(enclosing.getQualifiedName().toString());
 			default:
-				Log.d(TAG, "Unsupported visibility " + annotation.level());
+				Log.d(TAG, () -> "Unsupported visibility " + annotation.level());
 				return null;
 		}
 	}
 	
+	/**
+	 * Creates a visibility invariant from its kind and scope
+	 *
+	 * @param kind the kind of invariant
+	 * @param scope the scope, as returned by {@link VisibilityInvariant#getScope()}
+	 * @return an invariant
+	 */
+	public static VisibilityInvariant create(VisibilityInvariant.Kind kind, String scope) {
+		switch (kind) {
+			case PUBLIC:
+				return new PublicVisibilityInvariant();
+			case PACKAGE:
+				return new PackageVisibilityInvariant(scope);
+			case SUBPACKAGE:
+				return new SubpackageVisibilityInvariant(scope);
+			case CLASS_PRIVATE:
+				return new ClassPrivateVisibilityInvariant(scope);
+			case SUBCLASS:
+				return new SubclassVisibilityInvariant(scope);
+			default:
+				throw new IllegalArgumentException("Unknown invariant kind " + kind);
+		}
+	}
+
+	/**
+	 * Checks if two invariants have the same kind and scope
+	 *
+	 * @param a an invariant, or null
+	 * @param b an invariant, or null
+	 * @return true if both invariants are null, or both have the same kind and scope
+	 */
+	public static boolean isSame(VisibilityInvariant a, VisibilityInvariant b) {
+		if (a == null || b == null) {
+			return a == b;
+		}
+		return a.getKind() == b.getKind() && a.getScope().equals(b.getScope());
+	}
+
 	private static TypeElement getEnclosingType(Element element) {
 		if (element.getKind().isClass() || element.getKind().isInterface()) {
 			return (TypeElement) element;
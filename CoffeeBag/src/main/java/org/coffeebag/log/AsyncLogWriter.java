@@ -0,0 +1,159 @@
+package org.coffeebag.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes log lines on a background thread
+ *
+ * Threads that log only add a line to a queue. A daemon thread takes lines from the queue in batches and writes
+ * them to a buffered output, which is flushed whenever the queue becomes empty. If the output fails, the thread
+ * stops and later lines are dropped, so that the queue does not grow for the rest of the compilation.
+ */
+class AsyncLogWriter implements Closeable {
+
+	/**
+	 * Queue entry that makes the writer thread stop
+	 */
+	private static final Object STOP = new Object();
+
+	/**
+	 * Lines to write, flush requests ({@link CountDownLatch}es to count down after flushing), and {@link #STOP}
+	 */
+	private final BlockingQueue<Object> queue;
+
+	/**
+	 * The output
+	 */
+	private final Writer out;
+
+	/**
+	 * If the output should be closed when this writer is closed
+	 */
+	private final boolean closeOutput;
+
+	/**
+	 * The thread that writes to the output
+	 */
+	private final Thread thread;
+
+	/**
+	 * If the writer thread stopped because the output failed
+	 */
+	private volatile boolean failed;
+
+	/**
+	 * Creates a writer and starts its thread
+	 * @param out the output, which should be buffered
+	 * @param closeOutput if the output should be closed when this writer is closed
+	 */
+	AsyncLogWriter(Writer out, boolean closeOutput) {
+		this.queue = new LinkedBlockingQueue<>();
+		this.out = out;
+		this.closeOutput = closeOutput;
+		this.thread = new Thread(this::run, "CoffeeBag log writer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Queues a line to be written
+	 * @param line the line, without a line separator
+	 */
+	void write(String line) {
+		if (!failed) {
+			queue.add(line);
+		}
+	}
+
+	/**
+	 * Blocks until all lines queued before this call have been written and flushed
+	 */
+	void flush() {
+		if (failed) {
+			return;
+		}
+		final CountDownLatch flushed = new CountDownLatch(1);
+		queue.add(flushed);
+		try {
+			while (!flushed.await(100, TimeUnit.MILLISECONDS)) {
+				if (!thread.isAlive()) {
+					// The writer thread has stopped after an error
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes all queued lines and stops the writer thread
+	 */
+	@Override
+	public void close() {
+		queue.add(STOP);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		final List<Object> batch = new ArrayList<>();
+		try {
+			while (true) {
+				batch.add(queue.take());
+				queue.drainTo(batch);
+				for (Object entry : batch) {
+					if (entry == STOP) {
+						finish();
+						return;
+					} else if (entry instanceof CountDownLatch) {
+						out.flush();
+						((CountDownLatch) entry).countDown();
+					} else {
+						out.write((String) entry);
+						out.write(System.lineSeparator());
+					}
+				}
+				batch.clear();
+				if (queue.isEmpty()) {
+					out.flush();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			System.err.println("[CoffeeBag] Failed to write log: " + e);
+			failed = true;
+			// Lines queued before the flag was set are never written
+			queue.clear();
+		}
+	}
+
+	/**
+	 * For testing
+	 *
+	 * @return the number of lines and requests waiting to be written
+	 */
+	int getQueuedCount() {
+		return queue.size();
+	}
+
+	private void finish() throws IOException {
+		if (closeOutput) {
+			out.close();
+		} else {
+			out.flush();
+		}
+	}
+}
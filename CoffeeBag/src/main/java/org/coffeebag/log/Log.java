@@ -1,20 +1,34 @@
 package org.coffeebag.log;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * A simple logging tool with basic configuration support
+ *
+ * Messages that are expensive to build should be passed as suppliers, which are only called if the message will be
+ * logged. Enabled messages are written by a background thread.
+ *
+ * The static logging methods use the current log of the calling thread. Each compilation makes its own log current
+ * while it runs, so that compilations running in parallel in one virtual machine do not change each other's
+ * configuration. Threads without a current log use a global log, which is disabled unless it is enabled explicitly.
  */
 public class Log {
 
 	/**
-	 * Log levels
+	 * Log levels, from least to most important
 	 */
 	public enum Level {
 		VERBOSE,
 		DEBUG,
 		INFO,;
-		
+
 		public String toShortString() {
 			switch (this) {
 			case DEBUG:
@@ -24,54 +38,180 @@ public class Log {
 			case VERBOSE:
 				return "V";
 			default:
-				return "<?>";	
+				return "<?>";
 			}
 		}
 	}
+	/**
+	 * If the logger is enabled
+	 */
+	private volatile boolean enabled;
+	/**
+	 * The least important level that is logged
+	 */
+	private volatile Level minimumLevel;
 	/**
 	 * Filters log messages based on their tags
 	 */
-	private Predicate<String> tagFilter;
-	
+	private volatile Predicate<String> tagFilter;
+	/**
+	 * Writes messages, or null if no message has been logged since the output was last changed
+	 */
+	private AsyncLogWriter writer;
+	/**
+	 * The file to write messages to, or null to write them to standard output
+	 */
+	private Path file;
+
+	/**
+	 * The log of threads that have no current log, which is disabled by default so that code running outside a
+	 * compilation does not write to standard output
+	 */
+	private static final Log GLOBAL = new Log();
+	/**
+	 * The current log of each thread
+	 */
+	private static final ThreadLocal<Log> CURRENT = new ThreadLocal<>();
+
 	/**
-	 * The log instance
+	 * Creates a log that is disabled, and logs all levels to standard output once it is enabled
 	 */
-	private static Log instance;
-	
+	public Log() {
+		enabled = false;
+		minimumLevel = Level.VERBOSE;
+		tagFilter = (tag) -> true;
+	}
+
 	/**
-	 * @return the global Log instance
+	 * @return the current log of this thread, or the global log if this thread has none
 	 */
 	public static Log getInstance() {
-		if (instance == null) {
-			instance = new Log();
-			// Enable by default
-			instance.tagFilter = (tag) -> true;
+		final Log current = CURRENT.get();
+		return current != null ? current : GLOBAL;
+	}
+
+	/**
+	 * Sets the current log of this thread
+	 * @param log the log, or null to use the global log
+	 * @return the previous current log of this thread, or null if it had none
+	 */
+	public static Log setCurrent(Log log) {
+		final Log previous = CURRENT.get();
+		if (log == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(log);
 		}
-		return instance;
+		return previous;
+	}
+
+	/**
+	 * Checks if messages with a level and tag would be logged
+	 * @param level the level of the messages
+	 * @param tag the component that generates the messages
+	 * @return true if the messages would be logged
+	 */
+	public boolean isLoggable(Level level, String tag) {
+		return enabled && level.compareTo(minimumLevel) >= 0 && tagFilter.test(tag);
 	}
-	
+
 	public void log(Level level, String tag, String message) {
-		if (tagFilter.test(tag)) {
-			final StringBuilder builder = new StringBuilder();
-			builder.append('[')
-				.append(level.toShortString())
-				.append('/')
-				.append(tag)
-				.append("] ")
-				.append(message);
-			
-			System.out.println(builder.toString());
+		if (isLoggable(level, tag)) {
+			write(level, tag, message);
+		}
+	}
+
+	/**
+	 * Logs a message, building it only if it will be logged
+	 * @param level the level of the message
+	 * @param tag the component that generated the message
+	 * @param message supplies the message
+	 */
+	public void log(Level level, String tag, Supplier<String> message) {
+		if (isLoggable(level, tag)) {
+			write(level, tag, message.get());
+		}
+	}
+
+	private void write(Level level, String tag, String message) {
+		final StringBuilder builder = new StringBuilder();
+		builder.append('[')
+			.append(level.toShortString())
+			.append('/')
+			.append(tag)
+			.append("] ")
+			.append(message);
+
+		getWriter().write(builder.toString());
+	}
+
+	private synchronized AsyncLogWriter getWriter() {
+		if (writer == null) {
+			if (file != null) {
+				try {
+					writer = new AsyncLogWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), true);
+				} catch (IOException e) {
+					System.err.println("[CoffeeBag] Failed to open log file " + file + ": " + e);
+					file = null;
+				}
+			}
+			if (writer == null) {
+				writer = new AsyncLogWriter(new BufferedWriter(new OutputStreamWriter(System.out)), false);
+			}
+		}
+		return writer;
+	}
+
+	/**
+	 * Blocks until all messages logged so far have been written
+	 */
+	public synchronized void flush() {
+		if (writer != null) {
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Writes all messages logged so far and stops the writer thread, when the log is no longer used
+	 */
+	public synchronized void close() {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+
+	/**
+	 * Sets the file that messages are written to
+	 *
+	 * Messages logged before this call are written to the previous output.
+	 *
+	 * @param file the file to write to (replacing its contents), or null to write to standard output
+	 */
+	public synchronized void setOutput(Path file) {
+		if (writer != null) {
+			writer.close();
+			writer = null;
 		}
+		this.file = file;
 	}
-	
+
 	/**
 	 * Enables or disables the logger
 	 * @param enabled if the logger should be enabled
 	 */
 	public void setEnabled(boolean enabled) {
-		tagFilter = (tag) -> enabled;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Sets the least important level of messages to log
+	 * @param level the level
+	 */
+	public void setLevel(Level level) {
+		minimumLevel = level;
 	}
-	
+
 	/**
 	 * Sets a predicate to use for filtering messages by tag
 	 * @param filter
@@ -80,6 +220,19 @@ public class Log {
 		tagFilter = filter;
 	}
 
+	/**
+	 * Checks if messages with a level and tag would be logged
+	 *
+	 * This can be used to skip work that is only needed for logging.
+	 *
+	 * @param level the level of the messages
+	 * @param tag the component that generates the messages
+	 * @return true if the messages would be logged
+	 */
+	public static boolean isEnabled(Level level, String tag) {
+		return getInstance().isLoggable(level, tag);
+	}
+
 	/**
 	 * Logs a verbose message
 	 * @param tag the component that generated the message
@@ -88,7 +241,16 @@ public class Log {
 	public static void v(String tag, String message) {
 		getInstance().log(Level.VERBOSE, tag, message);
 	}
-	
+
+	/**
+	 * Logs a verbose message
+	 * @param tag the component that generated the message
+	 * @param message supplies the message
+	 */
+	public static void v(String tag, Supplier<String> message) {
+		getInstance().log(Level.VERBOSE, tag, message);
+	}
+
 	/**
 	 * Logs a debug message
 	 * @param tag the component that generated the message
@@ -97,7 +259,16 @@ public class Log {
 	public static void d(String tag, String message) {
 		getInstance().log(Level.DEBUG, tag, message);
 	}
-	
+
+	/**
+	 * Logs a debug message
+	 * @param tag the component that generated the message
+	 * @param message supplies the message
+	 */
+	public static void d(String tag, Supplier<String> message) {
+		getInstance().log(Level.DEBUG, tag, message);
+	}
+
 	/**
 	 * Logs an information message
 	 * @param tag the component that generated the message
@@ -106,4 +277,13 @@ public class Log {
 	public static void i(String tag, String message) {
 		getInstance().log(Level.INFO, tag, message);
 	}
+
+	/**
+	 * Logs an information message
+	 * @param tag the component that generated the message
+	 * @param message supplies the message
+	 */
+	public static void i(String tag, Supplier<String> message) {
+		getInstance().log(Level.INFO, tag, message);
+	}
 }
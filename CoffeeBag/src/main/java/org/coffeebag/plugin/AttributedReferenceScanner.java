@@ -0,0 +1,80 @@
+package org.coffeebag.plugin;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+
+import org.coffeebag.domain.AccessElement;
+
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+
+/**
+ * Finds the references to types, fields, methods, and constructors in an attributed tree, using the symbols that javac resolved
+ */
+public abstract class AttributedReferenceScanner extends TreePathScanner<Void, Void> {
+
+	private final Trees trees;
+
+	/**
+	 * Creates a scanner
+	 * @param trees the trees of the task that attributed the tree to scan
+	 */
+	protected AttributedReferenceScanner(Trees trees) {
+		this.trees = trees;
+	}
+
+	/**
+	 * Called for each reference to a type, field, method, or constructor
+	 *
+	 * @param node the tree that refers to the element
+	 * @param element the element
+	 * @param accessElement the element
+	 */
+	protected abstract void onReference(Tree node, Element element, AccessElement accessElement);
+
+	@Override
+	public Void visitIdentifier(IdentifierTree node, Void p) {
+		check(node);
+		return super.visitIdentifier(node, p);
+	}
+
+	@Override
+	public Void visitMemberSelect(MemberSelectTree node, Void p) {
+		check(node);
+		return super.visitMemberSelect(node, p);
+	}
+
+	@Override
+	public Void visitNewClass(NewClassTree node, Void p) {
+		check(node);
+		return super.visitNewClass(node, p);
+	}
+
+	@Override
+	public Void visitMemberReference(MemberReferenceTree node, Void p) {
+		check(node);
+		return super.visitMemberReference(node, p);
+	}
+
+	private void check(Tree node) {
+		final Element element = trees.getElement(getCurrentPath());
+		if (element == null) {
+			return;
+		}
+		if (element.getKind().isClass() || element.getKind().isInterface()) {
+			onReference(node, element, AccessElement.type((TypeElement) element));
+		} else if (element.getKind() == ElementKind.FIELD) {
+			onReference(node, element, AccessElement.field((VariableElement) element));
+		} else if (element.getKind() == ElementKind.METHOD || element.getKind() == ElementKind.CONSTRUCTOR) {
+			onReference(node, element, AccessElement.method((ExecutableElement) element));
+		}
+	}
+}
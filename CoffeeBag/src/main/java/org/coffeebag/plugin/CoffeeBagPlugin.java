@@ -0,0 +1,51 @@
+package org.coffeebag.plugin;
+
+import java.nio.file.Paths;
+
+import org.coffeebag.log.Log;
+import org.coffeebag.log.Log.Level;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Plugin;
+
+/**
+ * A javac plugin that checks visibility. Enable it with -Xplugin:CoffeeBag.
+ *
+ * Unlike the {@link org.coffeebag.processor.CheckVisibility} processor, which resolves names in the source itself,
+ * the plugin checks each class after javac has attributed it, using the symbols that javac resolved. It finds
+ * references that the processor cannot, such as fields of method return values, and reports each error at the
+ * reference.
+ *
+ * The plugin accepts the arguments log.level=[level] and log.file=[file], which work like the processor's logging
+ * options: -Xplugin:"CoffeeBag log.level=DEBUG".
+ */
+public class CoffeeBagPlugin implements Plugin {
+
+	/**
+	 * The name of the plugin, used in the -Xplugin option
+	 */
+	public static final String NAME = "CoffeeBag";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public void init(JavacTask task, String... args) {
+		// Each task has its own log, so that tasks running in parallel do not change each other's configuration
+		final Log log = new Log();
+		log.setEnabled(false);
+		for (String arg : args) {
+			if (arg.startsWith("log.level=")) {
+				log.setLevel(Level.valueOf(arg.substring("log.level=".length()).toUpperCase()));
+				log.setEnabled(true);
+			} else if (arg.startsWith("log.file=")) {
+				log.setOutput(Paths.get(arg.substring("log.file=".length())));
+			} else {
+				throw new IllegalArgumentException("Unknown " + NAME + " plugin argument " + arg);
+			}
+		}
+		task.addTaskListener(new VisibilityTaskListener(task, log));
+	}
+}
@@ -0,0 +1,60 @@
+package org.coffeebag.plugin;
+
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic.Kind;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+
+/**
+ * Reports messages through javac, at the source of an element if it has one
+ *
+ * Messages without a source position are reported at the compilation unit being checked.
+ */
+public class TreesMessager implements Messager {
+
+	private final Trees trees;
+	/**
+	 * The compilation unit being checked
+	 */
+	private CompilationUnitTree compilationUnit;
+
+	public TreesMessager(Trees trees) {
+		this.trees = trees;
+	}
+
+	public void setCompilationUnit(CompilationUnitTree compilationUnit) {
+		this.compilationUnit = compilationUnit;
+	}
+
+	@Override
+	public void printMessage(Kind kind, CharSequence msg) {
+		trees.printMessage(kind, msg, compilationUnit, compilationUnit);
+	}
+
+	@Override
+	public void printMessage(Kind kind, CharSequence msg, Element e) {
+		final TreePath path = e == null ? null : trees.getPath(e);
+		if (path == null) {
+			printMessage(kind, msg);
+			return;
+		}
+		final Tree tree = path.getLeaf();
+		trees.printMessage(kind, msg, tree, path.getCompilationUnit());
+	}
+
+	@Override
+	public void printMessage(Kind kind, CharSequence msg, Element e, AnnotationMirror a) {
+		printMessage(kind, msg, e);
+	}
+
+	@Override
+	public void printMessage(Kind kind, CharSequence msg, Element e, AnnotationMirror a, AnnotationValue v) {
+		printMessage(kind, msg, e);
+	}
+}
@@ -0,0 +1,148 @@
+package org.coffeebag.plugin;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic.Kind;
+
+import org.coffeebag.annotations.Access;
+import org.coffeebag.domain.AccessElement;
+import org.coffeebag.domain.SymbolTable;
+import org.coffeebag.domain.TypeHierarchy;
+import org.coffeebag.domain.UsingClass;
+import org.coffeebag.domain.invariant.VisibilityInvariant;
+import org.coffeebag.domain.invariant.VisibilityInvariantFactory;
+import org.coffeebag.log.Log;
+import org.coffeebag.processor.CheckVisibility;
+import org.coffeebag.processor.invariants.LibraryInvariants;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+
+/**
+ * Checks the references in each class when javac has finished analyzing it
+ */
+class VisibilityTaskListener implements TaskListener {
+	private static final String TAG = VisibilityTaskListener.class.getSimpleName();
+
+	private final Trees trees;
+	private final Elements elements;
+	/**
+	 * The IDs of the referenced types and fields
+	 */
+	private final SymbolTable symbols;
+	/**
+	 * The superclasses of the analyzed classes
+	 */
+	private final TypeHierarchy hierarchy;
+	/**
+	 * The invariants of annotated elements in libraries on the classpath
+	 */
+	private final LibraryInvariants libraryInvariants;
+	/**
+	 * The invariants of the referenced elements, by ID. Elements that have no invariant map to null.
+	 */
+	private final Map<Integer, VisibilityInvariant> invariants;
+	/**
+	 * Reports invalid annotations
+	 */
+	private final TreesMessager messager;
+	/**
+	 * The log of the task, which is the current log of the compiler thread while classes are checked
+	 */
+	private final Log log;
+
+	VisibilityTaskListener(JavacTask task, Log log) {
+		this.log = log;
+		trees = Trees.instance(task);
+		elements = task.getElements();
+		symbols = new SymbolTable();
+		hierarchy = new TypeHierarchy();
+		libraryInvariants = new LibraryInvariants(CheckVisibility.findFileManager(task),
+				CoffeeBagPlugin.class.getClassLoader(), symbols);
+		invariants = new HashMap<>();
+		messager = new TreesMessager(trees);
+	}
+
+	@Override
+	public void started(TaskEvent event) {
+	}
+
+	@Override
+	public void finished(TaskEvent event) {
+		if (event.getKind() != TaskEvent.Kind.ANALYZE || event.getTypeElement() == null) {
+			return;
+		}
+		final Log previous = Log.setCurrent(log);
+		try {
+			checkType(event);
+		} finally {
+			Log.setCurrent(previous);
+		}
+	}
+
+	private void checkType(TaskEvent event) {
+		final TypeElement type = event.getTypeElement();
+		final TreePath path = trees.getPath(type);
+		if (path == null) {
+			return;
+		}
+		Log.d(TAG, () -> "Checking " + type);
+		messager.setCompilationUnit(event.getCompilationUnit());
+		new ReferenceChecker(event.getCompilationUnit(), UsingClass.of(type, elements, hierarchy)).scan(path, null);
+	}
+
+	/**
+	 * Returns the invariant of an element, finding it the first time that the element is used
+	 *
+	 * @param element the element
+	 * @param id the ID of the element
+	 * @return the invariant, or null if the element has none
+	 */
+	private VisibilityInvariant getInvariant(Element element, int id) {
+		if (invariants.containsKey(id)) {
+			return invariants.get(id);
+		}
+		final VisibilityInvariant invariant;
+		if (element.getAnnotation(Access.class) != null) {
+			// Annotations are only available on elements compiled from source
+			invariant = VisibilityInvariantFactory.getInvariant(element, elements, messager);
+		} else {
+			invariant = libraryInvariants.get(id);
+		}
+		invariants.put(id, invariant);
+		return invariant;
+	}
+
+	/**
+	 * Checks the references to types and fields in a class
+	 */
+	private class ReferenceChecker extends AttributedReferenceScanner {
+		private final CompilationUnitTree compilationUnit;
+		private final UsingClass usingClass;
+
+		ReferenceChecker(CompilationUnitTree compilationUnit, UsingClass usingClass) {
+			super(trees);
+			this.compilationUnit = compilationUnit;
+			this.usingClass = usingClass;
+		}
+
+		@Override
+		protected void onReference(Tree node, Element element, AccessElement accessElement) {
+			final VisibilityInvariant invariant = getInvariant(element, symbols.intern(accessElement));
+			if (invariant != null && !invariant.isUsageAllowedIn(usingClass)) {
+				trees.printMessage(Kind.ERROR, accessElement.getKindName() + " " + accessElement.getDisplayName()
+						+ " is not visible to " + usingClass,
+						node, compilationUnit);
+			}
+		}
+	}
+}
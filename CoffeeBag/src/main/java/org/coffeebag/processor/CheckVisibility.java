@@ -1,49 +1,230 @@
 package org.coffeebag.processor;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
 import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
 import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
 
 import org.coffeebag.domain.AccessElement;
+import org.coffeebag.domain.SymbolMap;
+import org.coffeebag.domain.SymbolTable;
+import org.coffeebag.domain.TypeHierarchy;
+import org.coffeebag.domain.UsageIndex;
+import org.coffeebag.domain.UsingClass;
+import org.coffeebag.domain.invariant.PackageVisibilityMatrix;
 import org.coffeebag.domain.invariant.VisibilityInvariant;
+import org.coffeebag.domain.invariant.VisibilityInvariantFactory;
 import org.coffeebag.log.Log;
+import org.coffeebag.log.Log.Level;
+import org.coffeebag.processor.baseline.ViolationBaseline;
+import org.coffeebag.processor.incremental.IncrementalState;
+import org.coffeebag.processor.incremental.IncrementalState.ClassRecord;
 import org.coffeebag.processor.invariants.InvariantFinder;
-import org.coffeebag.processor.references.FieldReferenceFinder;
+import org.coffeebag.processor.invariants.InvariantIndex;
+import org.coffeebag.processor.invariants.LibraryInvariants;
+import org.coffeebag.processor.references.AnnotatedNameFilter;
+import org.coffeebag.processor.references.ClasspathIndex;
+import org.coffeebag.processor.references.PackageIndex;
 import org.coffeebag.processor.references.ReferenceFinder;
-import org.coffeebag.processor.references.TypeResolver;
+import org.coffeebag.processor.spill.ReferenceSpill;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
 
 @SupportedAnnotationTypes("*")
 @SupportedSourceVersion(SourceVersion.RELEASE_8)
 public class CheckVisibility extends AbstractProcessor {
 	private static final String TAG = CheckVisibility.class.getSimpleName();
+	/**
+	 * The name of the statistics report in the source output
+	 */
+	private static final String STATISTICS_FILE = "coffeebag-stats.json";
+
+	/**
+	 * The IDs of the types and fields that are referenced or annotated
+	 */
+	private SymbolTable symbols;
 
 	/**
-	 * Maps from a canonical class name to a set of canonical class/interface/enum names that it references
+	 * Maps from a canonical class name to the sorted IDs of the classes/interfaces/enums that it references
 	 */
-	private Map<String, Set<AccessElement>> typeReferences;
+	private Map<String, int[]> typeReferences;
 	/**
-	 * Maps from a canonical class name to the set of fields that it references
+	 * Maps from a canonical class name to the sorted IDs of the fields that it references and the methods and
+	 * constructors that it calls
 	 */
-	private Map<String, Set<AccessElement>> fieldReferences;
+	private Map<String, int[]> fieldReferences;
 
 	/**
-	 * Maps an annotated element to its visibility invariant.
+	 * Maps the ID of an annotated element to its visibility invariant.
 	 * If an item is not present in this mapping, it was not annotated
 	 */
-	private Map<AccessElement, VisibilityInvariant> annotatedMemberToInvariant;
+	private SymbolMap<VisibilityInvariant> annotatedMemberToInvariant;
+	/**
+	 * The invariants of annotated elements in libraries on the classpath
+	 */
+	private LibraryInvariants libraryInvariants;
+	/**
+	 * The invariants of the overloads that each call site may call, by call site ID. Call sites that may call an
+	 * unrestricted overload map to null.
+	 */
+	private SymbolMap<VisibilityInvariant[]> callInvariants;
+	/**
+	 * Snapshots of the classes whose usages are checked, by canonical name
+	 */
+	private Map<String, UsingClass> usingClasses;
+	/**
+	 * The superclasses of the classes whose usages are checked
+	 */
+	private TypeHierarchy typeHierarchy;
+
+	/**
+	 * The types in each package and class, shared by all compilation units
+	 */
+	private PackageIndex packageIndex;
+	/**
+	 * Selects the overloads that each call site may call
+	 */
+	private OverloadResolver overloadResolver;
+
+	/**
+	 * The file that the incremental state is kept in, or null if incremental processing is disabled
+	 */
+	private Path incrementalFile;
+	/**
+	 * The state saved by the previous compilation. This is empty if incremental processing is disabled.
+	 */
+	private IncrementalState previousState;
+	/**
+	 * The state of this compilation, with a record for each class compiled from source
+	 */
+	private IncrementalState currentState;
+	/**
+	 * The canonical names of the classes whose references were found by scanning their source in this compilation
+	 */
+	private Set<String> rescannedClasses;
+	/**
+	 * The canonical names of the classes that a build tool passed from class files, but that the previous state does
+	 * not know, so that their references are not known
+	 */
+	private Set<String> unknownClasses;
+	/**
+	 * The canonical names of the classes compiled from source whose source changed since the previous compilation,
+	 * or that the previous compilation did not have
+	 */
+	private Set<String> changedClasses;
+	/**
+	 * The canonical names of the classes whose saved references were reused although a class that they depend on
+	 * changed, because their source was not available in the round where it changed
+	 */
+	private Set<String> staleClasses;
+	/**
+	 * The IDs of the annotated elements whose invariants changed since the previous compilation
+	 */
+	private BitSet changedInvariants;
+
+	/**
+	 * If usages are checked in the round where they become known, instead of in the final round
+	 */
+	private boolean streaming;
+	/**
+	 * The IDs of the elements whose types exist, so that they will not gain invariants in later rounds
+	 */
+	private BitSet finalSymbols;
+	/**
+	 * The time, memory, and work measurements of this compilation
+	 */
+	private Statistics statistics;
+	/**
+	 * The names of annotated elements, used to skip compilation units that cannot refer to them, or null if
+	 * prefiltering is disabled
+	 */
+	private AnnotatedNameFilter nameFilter;
+	/**
+	 * The compilation units that were skipped because they could not refer to an annotated element
+	 */
+	private List<SkippedUnit> skippedUnits;
+	/**
+	 * The compilation units that were scanned without some method bodies, because the bodies could not refer to an
+	 * annotated element
+	 */
+	private List<SkippedUnit> prunedUnits;
+	/**
+	 * The number of compilation units that the prefilter tested
+	 */
+	private int filteredUnitCount;
+	/**
+	 * The file that the references of scanned classes are moved to at the end of each round, or null if references
+	 * stay in memory
+	 */
+	private ReferenceSpill spill;
+	/**
+	 * The baseline file, or null if all violations are reported
+	 */
+	private Path baselineFile;
+	/**
+	 * The known violations that are not reported, or null if the baseline is being recorded or could not be read
+	 */
+	private ViolationBaseline baseline;
+	/**
+	 * The hashes of the violations found, mapped to the hashes of their using classes, if they are being recorded as
+	 * the new baseline instead of being reported
+	 */
+	private Map<Long, Long> recordedViolations;
+	/**
+	 * The hashes of the classes compiled from source, whose baseline violations are fixed if they are not found
+	 */
+	private Set<Long> checkedClasses;
+	/**
+	 * The number of violations that the baseline suppressed
+	 */
+	private int suppressedCount;
+	/**
+	 * The log of this compilation, which is the current log of the compiler thread while the processor runs
+	 */
+	private final Log log;
 
 	/**
 	 * Creates a new processor that does not log
@@ -58,82 +239,1115 @@ public class CheckVisibility extends AbstractProcessor {
 	 * @param log if the processor should output log information
 	 */
 	public CheckVisibility(boolean log) {
+		symbols = new SymbolTable();
 		typeReferences = new HashMap<>();
 		fieldReferences = new HashMap<>();
-		annotatedMemberToInvariant = new HashMap<>();
-		Log.getInstance().setEnabled(log);
+		annotatedMemberToInvariant = new SymbolMap<>();
+		callInvariants = new SymbolMap<>();
+		usingClasses = new HashMap<>();
+		typeHierarchy = new TypeHierarchy();
+		previousState = new IncrementalState();
+		currentState = new IncrementalState();
+		rescannedClasses = new HashSet<>();
+		unknownClasses = new TreeSet<>();
+		changedClasses = new HashSet<>();
+		staleClasses = new TreeSet<>();
+		changedInvariants = new BitSet();
+		finalSymbols = new BitSet();
+		statistics = new Statistics(false);
+		skippedUnits = new ArrayList<>();
+		prunedUnits = new ArrayList<>();
+		this.log = new Log();
+		this.log.setEnabled(log);
+	}
+
+	@Override
+	public synchronized void init(ProcessingEnvironment processingEnv) {
+		super.init(processingEnv);
+		final Log previous = Log.setCurrent(log);
+		try {
+			initState();
+		} finally {
+			Log.setCurrent(previous);
+		}
+	}
+
+	private void initState() {
+		packageIndex = new PackageIndex(processingEnv);
+		overloadResolver = new OverloadResolver(processingEnv);
+
+		final Options options = new Options(processingEnv.getOptions());
+		final String logLevel = options.get(Options.LOG_LEVEL);
+		if (logLevel != null) {
+			try {
+				log.setLevel(Level.valueOf(logLevel.toUpperCase()));
+				log.setEnabled(true);
+			} catch (IllegalArgumentException e) {
+				processingEnv.getMessager().printMessage(Kind.WARNING, "Unknown log level " + logLevel);
+			}
+		}
+		final String logFile = options.get(Options.LOG_FILE);
+		if (logFile != null) {
+			log.setOutput(Paths.get(logFile));
+		}
+		final String stateFile = options.get(Options.INCREMENTAL);
+		if (stateFile != null) {
+			incrementalFile = Paths.get(stateFile);
+			previousState = IncrementalState.load(incrementalFile, symbols);
+		}
+		// Incremental processing needs all references at the end of the compilation to save them
+		streaming = options.isSet(Options.STREAMING) && incrementalFile == null;
+		statistics = new Statistics(options.isSet(Options.STATS));
+		final String spillFile = options.get(Options.SPILL);
+		if (spillFile != null && incrementalFile == null && !streaming) {
+			try {
+				spill = new ReferenceSpill(Paths.get(spillFile));
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Kind.WARNING,
+						"Failed to create CoffeeBag spill file " + spillFile + ": " + e);
+			}
+		}
+		final String baselineName = options.get(Options.BASELINE);
+		if (baselineName != null) {
+			baselineFile = Paths.get(baselineName);
+			if (options.isSet(Options.BASELINE_UPDATE)) {
+				recordedViolations = new HashMap<>();
+			} else {
+				try {
+					baseline = ViolationBaseline.load(baselineFile);
+					checkedClasses = new HashSet<>();
+				} catch (IOException e) {
+					processingEnv.getMessager().printMessage(Kind.WARNING,
+							"Failed to read CoffeeBag baseline " + baselineFile + ", reporting all violations: " + e);
+				}
+			}
+		}
+		final JavaFileManager fileManager = findFileManager(processingEnv);
+		libraryInvariants = new LibraryInvariants(fileManager, CheckVisibility.class.getClassLoader(), symbols);
+		final String classpathIndexFile = options.get(Options.CLASSPATH_INDEX);
+		if (classpathIndexFile != null) {
+			if (fileManager != null) {
+				packageIndex.setClasspathIndex(ClasspathIndex.forCompilation(fileManager,
+						processingEnv.getSourceVersion(), Paths.get(classpathIndexFile)));
+			} else {
+				Log.i(TAG, "Not indexing the class path without the file manager");
+			}
+		}
+		// Incremental processing reuses the references of unchanged files, which must not have been skipped
+		if (options.isSet(Options.PREFILTER) && incrementalFile == null) {
+			nameFilter = new AnnotatedNameFilter();
+			nameFilter.addAll(libraryInvariants.getElements());
+		}
+	}
+
+	/**
+	 * Finds the file manager of javac, which is not part of the processing API
+	 * @param compiler the processing environment or task of javac, which have the context of the compilation
+	 * @return the file manager, or null if it cannot be found, for example because a build tool wraps the
+	 * processing environment
+	 */
+	public static JavaFileManager findFileManager(Object compiler) {
+		try {
+			final Object context = compiler.getClass().getMethod("getContext").invoke(compiler);
+			return (JavaFileManager) context.getClass().getMethod("get", Class.class).invoke(context,
+					JavaFileManager.class);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			Log.i(TAG, "Failed to find the file manager: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the supported options, and registers this processor as aggregating with Gradle in incremental mode
+	 *
+	 * Gradle's aggregating processors may only read annotations that are kept in class files, because Gradle passes
+	 * the unchanged types that it reprocesses as class files. {@link org.coffeebag.annotations.Access} has source
+	 * retention, but this processor does not read annotations of those types: their references and invariants come
+	 * from the incremental state, and the types that it does not know are reported. Supporting all annotation types
+	 * makes Gradle reprocess every type, which is needed because any class can use an annotated element. Without
+	 * the incremental state, the processor needs every source file, so it is then not incremental for Gradle.
+	 */
+	@Override
+	public Set<String> getSupportedOptions() {
+		if (incrementalFile != null) {
+			// Tell Gradle that this processor reads the whole compilation
+			final Set<String> names = new HashSet<>(Options.NAMES);
+			names.add(Options.GRADLE_AGGREGATING);
+			return names;
+		}
+		return Options.NAMES;
 	}
 
 	@Override
 	public boolean process(Set<? extends TypeElement> typeElements, RoundEnvironment roundEnv) {
+		final Log previous = Log.setCurrent(log);
+		try {
+			processRound(roundEnv);
+		} finally {
+			Log.setCurrent(previous);
+		}
+		// Do not consume annotations
+		return false;
+	}
+
+	private void processRound(RoundEnvironment roundEnv) {
 		if (!roundEnv.processingOver()) {
 			// build member usage structure
+			// Group the types by the compilation unit that declares them, so that each unit is scanned once
+			final Trees trees = Trees.instance(processingEnv);
+			final Map<CompilationUnitTree, List<Element>> compilationUnits = new LinkedHashMap<>();
+			// Packages that contain types that the previous compilation did not have
+			final Set<String> packagesWithNewTypes = new HashSet<>();
 			for (Element element : roundEnv.getRootElements()) {
 				// Ignore packages
 				if (element.getKind() == ElementKind.PACKAGE) {
 					continue;
 				}
-				// Get erased type name
-				final String cannonicalClassName = processingEnv.getTypeUtils().erasure(element.asType()).toString();
+				final String packageName = processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+				final String className = ((TypeElement) element).getQualifiedName().toString();
+				// Types added in this round make earlier listings of their package and outer class out of date
+				packageIndex.invalidate(packageName);
+				packageIndex.invalidate(className);
+				packageIndex.addSourceType(className);
 
-				final TypeResolver resolver = new TypeResolver(processingEnv, element);
-				final ReferenceFinder finder = new ReferenceFinder(processingEnv, resolver, element);
-				final Set<AccessElement> usedTypes = finder.getTypesUsed();
-				// Record usages
-				typeReferences.put(cannonicalClassName, usedTypes);
-				for (AccessElement referencedType : usedTypes) {
-					Log.d(TAG, "Element " + element + " used type " + referencedType);
+				final TreePath path = trees.getPath(element);
+				if (path == null) {
+					// A build tool passed a type from a class file. Its references are taken from the previous state.
+					Log.d(TAG, () -> "No source for " + className);
+					if (incrementalFile != null && previousState.get(className) == null) {
+						unknownClasses.add(className);
+					}
+					continue;
+				}
+				if (incrementalFile != null && previousState.get(className) == null) {
+					packagesWithNewTypes.add(packageName);
+				}
+				if (incrementalFile != null && !isUpToDate(className, path.getCompilationUnit())) {
+					changedClasses.add(className);
 				}
-				
-				// Find usages of fields
-				final FieldReferenceFinder fieldReferenceFinder = new FieldReferenceFinder(processingEnv, resolver, element);
-				final Set<AccessElement> referencedFields = fieldReferenceFinder.getReferencedFields();
-				fieldReferences.put(cannonicalClassName, referencedFields);
-				for (AccessElement referencedField : referencedFields) {
-					Log.d(TAG, "Element " + element + " used field " + referencedField);
+				if (checkedClasses != null) {
+					checkedClasses.add(ViolationBaseline.hash(className));
 				}
+				compilationUnits.computeIfAbsent(path.getCompilationUnit(), unit -> new ArrayList<>()).add(element);
 			}
 
 			// build visibility invariant structure
-			InvariantFinder finder = new InvariantFinder(processingEnv);
-			annotatedMemberToInvariant.putAll(finder.getVisibilityInvariants(roundEnv));
+			// Invariants are found before references, so that the prefilter knows the names annotated in this round
+			statistics.begin(Statistics.Phase.INVARIANT_DISCOVERY);
+			final InvariantFinder invariantFinder = new InvariantFinder(processingEnv);
+			final Map<AccessElement, VisibilityInvariant> roundInvariants = invariantFinder.getVisibilityInvariants(roundEnv);
+			for (Map.Entry<AccessElement, VisibilityInvariant> entry : roundInvariants.entrySet()) {
+				annotatedMemberToInvariant.put(symbols.intern(entry.getKey()), entry.getValue());
+			}
+			statistics.end();
+			// The names that rescanned pruned compilation units are rescanned for, by compilation unit
+			final Map<CompilationUnitTree, Set<String>> rescanNames = new HashMap<>();
+			if (nameFilter != null) {
+				addSkippedUnits(nameFilter.addAll(roundInvariants.keySet()), compilationUnits, rescanNames);
+			}
+
+			for (Map.Entry<CompilationUnitTree, List<Element>> compilationUnit : compilationUnits.entrySet()) {
+				if (isUnchanged(compilationUnit.getKey(), compilationUnit.getValue(), packagesWithNewTypes)) {
+					for (Element element : compilationUnit.getValue()) {
+						final ClassRecord record = previousState.get(((TypeElement) element).getQualifiedName().toString());
+						Log.d(TAG, () -> "Reusing references of unchanged class " + record.getClassName());
+						typeReferences.put(record.getClassName(), record.getTypeReferences());
+						fieldReferences.put(record.getClassName(), record.getFieldReferences());
+						currentState.put(withoutInvariants(record));
+					}
+					statistics.add(Statistics.Count.REUSED_COMPILATION_UNITS, 1);
+					continue;
+				}
+				statistics.begin(Statistics.Phase.REFERENCE_SCAN);
+				Set<Tree> prunedBodies = Collections.emptySet();
+				if (nameFilter != null) {
+					final Set<String> identifiers = AnnotatedNameFilter.getIdentifiers(compilationUnit.getKey());
+					if (!isRelevant(compilationUnit.getKey(), compilationUnit.getValue(), identifiers)) {
+						statistics.end();
+						continue;
+					}
+					prunedBodies = pruneBodies(compilationUnit.getKey(), compilationUnit.getValue(), identifiers);
+				}
+				statistics.add(Statistics.Count.COMPILATION_UNITS, 1);
+				final JavaFileObject sourceFile = compilationUnit.getKey().getSourceFile();
+				final ReferenceFinder finder = new ReferenceFinder(processingEnv, packageIndex, compilationUnit.getKey(),
+						compilationUnit.getValue(), prunedBodies);
+				final Set<String> newNames = rescanNames.get(compilationUnit.getKey());
+				for (Element element : compilationUnit.getValue()) {
+					// Get erased type name
+					final String cannonicalClassName = processingEnv.getTypeUtils().erasure(element.asType()).toString();
+
+					final int[] usedTypes;
+					final int[] referencedFields;
+					if (newNames == null) {
+						usedTypes = symbols.intern(finder.getTypesUsed(element));
+						// Record usages
+						typeReferences.put(cannonicalClassName, usedTypes);
+
+						// Record usages of fields
+						referencedFields = symbols.intern(finder.getReferencedFields(element));
+						fieldReferences.put(cannonicalClassName, referencedFields);
+					} else {
+						// The other references were found when the class was first scanned, and may have been checked
+						usedTypes = symbols.intern(withNames(finder.getTypesUsed(element), newNames));
+						typeReferences.merge(cannonicalClassName, usedTypes, CheckVisibility::union);
+						referencedFields = symbols.intern(withNames(finder.getReferencedFields(element), newNames));
+						fieldReferences.merge(cannonicalClassName, referencedFields, CheckVisibility::union);
+					}
+					statistics.add(Statistics.Count.TYPE_REFERENCES, usedTypes.length);
+					statistics.add(Statistics.Count.FIELD_REFERENCES, referencedFields.length);
+
+					if (incrementalFile != null) {
+						rescannedClasses.add(cannonicalClassName);
+						final int[] dependencies = symbols.intern(finder.getDependencies(element).stream()
+								.map(AccessElement::type).collect(Collectors.toList()));
+						currentState.put(new ClassRecord(cannonicalClassName, sourceFile.toUri().toString(),
+								sourceFile.getLastModified(), usedTypes, referencedFields, dependencies,
+								new HashMap<>()));
+					}
+
+					if (Log.isEnabled(Level.DEBUG, TAG)) {
+						for (int referencedType : usedTypes) {
+							Log.d(TAG, "Element " + element + " used type " + symbols.toString(referencedType));
+						}
+						for (int referencedField : referencedFields) {
+							Log.d(TAG, "Element " + element + " used field " + symbols.toString(referencedField));
+						}
+					}
+				}
+				statistics.end();
+			}
+
+			if (streaming) {
+				statistics.begin(Statistics.Phase.CHECKING);
+				checkReadyUsages(typeReferences, "class");
+				checkReadyUsages(fieldReferences, "field");
+				statistics.end();
+			}
+			if (spill != null) {
+				spillReferences();
+			}
 		} else {
 			Log.d(TAG, "-------- Starting final processing --------");
+			if (nameFilter != null) {
+				Log.i(TAG, () -> "Prefilter skipped " + skippedUnits.size() + " of " + filteredUnitCount
+						+ " compilation units, and method bodies of " + prunedUnits.size() + " more");
+				skippedUnits.clear();
+				prunedUnits.clear();
+			}
 			
-			for (Map.Entry<AccessElement, VisibilityInvariant> entry : annotatedMemberToInvariant.entrySet()) {
-				Log.d(TAG, "Invariant: " + entry.getKey() + " => " + entry.getValue());
+			if (Log.isEnabled(Level.DEBUG, TAG)) {
+				for (int id = annotatedMemberToInvariant.nextKey(0);
+						id >= 0; id = annotatedMemberToInvariant.nextKey(id + 1)) {
+					Log.d(TAG, "Invariant: " + symbols.toString(id) + " => " + annotatedMemberToInvariant.get(id));
+				}
 			}
 
-			checkUsages(typeReferences, "class");
-			checkUsages(fieldReferences, "field");
+			if (incrementalFile != null) {
+				mergePreviousState();
+				findStaleClasses();
+				changedInvariants = findChangedInvariants();
+				if (!unknownClasses.isEmpty()) {
+					processingEnv.getMessager().printMessage(Kind.WARNING, "CoffeeBag has no saved references for "
+							+ unknownClasses.size() + " classes that were not compiled from source, such as "
+							+ unknownClasses.iterator().next() + ". Their usages are not checked until they are "
+							+ "compiled from source, for example in a clean build.");
+				}
+				if (!staleClasses.isEmpty()) {
+					processingEnv.getMessager().printMessage(Kind.WARNING, "CoffeeBag reused the saved references of "
+							+ staleClasses.size() + " classes that depend on changed classes, such as "
+							+ staleClasses.iterator().next() + ". Their references are found again when they are "
+							+ "compiled from source.");
+				}
+			}
+
+			statistics.begin(Statistics.Phase.CHECKING);
+			if (spill != null) {
+				readSpilledReferences();
+			}
+			boolean errors = checkUsages(typeReferences, "class");
+			errors |= checkUsages(fieldReferences, "field");
+			statistics.end();
+
+			if (incrementalFile != null) {
+				saveState(errors);
+			}
+			finishBaseline();
+			writeInvariantIndex();
+			writeStatistics();
+			log.close();
 		}
-		// Do not consume annotations
+	}
+
+	/**
+	 * A compilation unit that was not scanned for references
+	 */
+	private static class SkippedUnit {
+		/**
+		 * The canonical names of the top-level types in the compilation unit
+		 */
+		private final List<String> classNames;
+		/**
+		 * The identifiers in the compilation unit
+		 */
+		private final Set<String> identifiers;
+
+		SkippedUnit(List<String> classNames, Set<String> identifiers) {
+			this.classNames = classNames;
+			this.identifiers = identifiers;
+		}
+	}
+
+	/**
+	 * Checks if a compilation unit may refer to an annotated element, and records it as skipped if it cannot
+	 *
+	 * @param compilationUnit the compilation unit
+	 * @param elements the top-level types in the compilation unit
+	 * @return true if the compilation unit should be scanned
+	 */
+	private boolean isRelevant(CompilationUnitTree compilationUnit, List<Element> elements, Set<String> identifiers) {
+		filteredUnitCount++;
+		if (nameFilter.mayRefer(identifiers)) {
+			return true;
+		}
+		Log.d(TAG, () -> "Skipping " + compilationUnit.getSourceFile().getName()
+				+ ", which cannot refer to an annotated element");
+		skippedUnits.add(new SkippedUnit(getClassNames(elements), identifiers));
+		statistics.add(Statistics.Count.SKIPPED_COMPILATION_UNITS, 1);
 		return false;
 	}
 
-	private void checkUsages(Map<String, Set<AccessElement>> references, String usageType) {
-		for (Entry<String, Set<AccessElement>> reference : references.entrySet()) {
-			String className = reference.getKey();
-			final TypeElement usingClass = processingEnv.getElementUtils().getTypeElement(className);
-			if (usingClass == null) {
-				throw new IllegalStateException("Type element not found for canonical name " + className);
-			}
-			for (AccessElement usage : reference.getValue()) {
-				Log.d(TAG, "Checking use of " + usageType + " " + usage);
-				final VisibilityInvariant invariant = annotatedMemberToInvariant.get(usage);
-				if (invariant != null) {
-					if (invariant.isUsageAllowedIn(usingClass)) {
-						Log.v(TAG, "Usage of " + usage + " OK in " + className);
-					} else {
-						final Messager messager = processingEnv.getMessager();
-						messager.printMessage(Kind.ERROR, usageType.substring(0, 1).toUpperCase() +
-								usageType.substring(1) + " " + usage + " is not visible to " + className, usingClass);
-					}
+	/**
+	 * Finds the method bodies of a compilation unit that cannot refer to an annotated element, and records the unit
+	 * as pruned if there are any
+	 *
+	 * @param compilationUnit the compilation unit
+	 * @param elements the top-level types in the compilation unit
+	 * @param identifiers the identifiers in the compilation unit
+	 * @return the method bodies to skip
+	 */
+	private Set<Tree> pruneBodies(CompilationUnitTree compilationUnit, List<Element> elements,
+			Set<String> identifiers) {
+		final Set<Tree> prunedBodies = nameFilter.getPrunableBodies(compilationUnit);
+		if (!prunedBodies.isEmpty()) {
+			Log.d(TAG, () -> "Skipping " + prunedBodies.size() + " method bodies of "
+					+ compilationUnit.getSourceFile().getName() + ", which cannot refer to an annotated element");
+			prunedUnits.add(new SkippedUnit(getClassNames(elements), identifiers));
+			statistics.add(Statistics.Count.PRUNED_METHOD_BODIES, prunedBodies.size());
+		}
+		return prunedBodies;
+	}
+
+	private static List<String> getClassNames(List<Element> elements) {
+		final List<String> classNames = new ArrayList<>(elements.size());
+		for (Element element : elements) {
+			classNames.add(((TypeElement) element).getQualifiedName().toString());
+		}
+		return classNames;
+	}
+
+	/**
+	 * @param references references found in a compilation unit
+	 * @param names names of annotated elements
+	 * @return the references whose targets have one of the names
+	 */
+	private static List<AccessElement> withNames(Set<AccessElement> references, Set<String> names) {
+		final List<AccessElement> named = new ArrayList<>();
+		for (AccessElement reference : references) {
+			if (names.contains(AnnotatedNameFilter.getName(reference))) {
+				named.add(reference);
+			}
+		}
+		return named;
+	}
+
+	/**
+	 * @param first sorted IDs without duplicates
+	 * @param second sorted IDs without duplicates
+	 * @return the sorted IDs that are in either array
+	 */
+	private static int[] union(int[] first, int[] second) {
+		return IntStream.concat(Arrays.stream(first), Arrays.stream(second)).distinct().sorted().toArray();
+	}
+
+	/**
+	 * Adds the skipped and pruned compilation units that may refer to newly annotated elements to the units to scan
+	 *
+	 * @param newNames the names of annotated elements that the filter did not contain before this round
+	 * @param compilationUnits the compilation units to scan in this round, by compilation unit
+	 * @param rescanNames receives the new names that each pruned compilation unit is rescanned for
+	 */
+	private void addSkippedUnits(Set<String> newNames, Map<CompilationUnitTree, List<Element>> compilationUnits,
+			Map<CompilationUnitTree, Set<String>> rescanNames) {
+		if (newNames.isEmpty()) {
+			return;
+		}
+		for (Iterator<SkippedUnit> iterator = skippedUnits.iterator(); iterator.hasNext();) {
+			final SkippedUnit skipped = iterator.next();
+			if (Collections.disjoint(skipped.identifiers, newNames)) {
+				continue;
+			}
+			iterator.remove();
+			statistics.add(Statistics.Count.SKIPPED_COMPILATION_UNITS, -1);
+			filteredUnitCount--;
+			addRescannedUnit(skipped, compilationUnits);
+		}
+		for (Iterator<SkippedUnit> iterator = prunedUnits.iterator(); iterator.hasNext();) {
+			final SkippedUnit pruned = iterator.next();
+			if (Collections.disjoint(pruned.identifiers, newNames)) {
+				continue;
+			}
+			iterator.remove();
+			statistics.add(Statistics.Count.COMPILATION_UNITS, -1);
+			filteredUnitCount--;
+			rescanNames.put(addRescannedUnit(pruned, compilationUnits), newNames);
+		}
+	}
+
+	/**
+	 * Adds a compilation unit that was not completely scanned to the units to scan
+	 * @param unit the compilation unit
+	 * @param compilationUnits the compilation units to scan in this round, by compilation unit
+	 * @return the tree of the compilation unit
+	 */
+	private CompilationUnitTree addRescannedUnit(SkippedUnit unit,
+			Map<CompilationUnitTree, List<Element>> compilationUnits) {
+		final Trees trees = Trees.instance(processingEnv);
+		CompilationUnitTree compilationUnit = null;
+		for (String className : unit.classNames) {
+			final TypeElement element = processingEnv.getElementUtils().getTypeElement(className);
+			final TreePath path = element != null ? trees.getPath(element) : null;
+			if (path == null) {
+				throw new IllegalStateException("Source of skipped class " + className + " not found");
+			}
+			Log.d(TAG, () -> "Rescanning " + className + ", which may refer to an element annotated in this round");
+			compilationUnit = path.getCompilationUnit();
+			compilationUnits.computeIfAbsent(compilationUnit, key -> new ArrayList<>()).add(element);
+		}
+		return compilationUnit;
+	}
+
+	/**
+	 * Checks if the references found for the classes in a compilation unit by the previous compilation can be reused
+	 *
+	 * @param compilationUnit the compilation unit
+	 * @param elements the top-level types in the compilation unit
+	 * @param packagesWithNewTypes the packages that contain types that the previous compilation did not have
+	 * @return true if incremental processing is enabled and the previous references are still correct
+	 */
+	private boolean isUnchanged(CompilationUnitTree compilationUnit, List<Element> elements,
+			Set<String> packagesWithNewTypes) {
+		if (incrementalFile == null) {
+			return false;
+		}
+		for (Element element : elements) {
+			final String className = ((TypeElement) element).getQualifiedName().toString();
+			if (changedClasses.contains(className)) {
+				return false;
+			}
+			// References resolved through the declarations of other classes change when those classes change
+			final String changed = findChangedDependency(previousState.get(className));
+			if (changed != null) {
+				Log.d(TAG, () -> "Rescanning " + className + ", which depends on changed class " + changed);
+				return false;
+			}
+		}
+		// A new type can change what a simple name refers to in its own package and in files that import it with a glob
+		final String packageName = compilationUnit.getPackageName() == null ? ""
+				: compilationUnit.getPackageName().toString();
+		if (packagesWithNewTypes.contains(packageName)) {
+			return false;
+		}
+		for (ImportTree anImport : compilationUnit.getImports()) {
+			final Tree imported = anImport.getQualifiedIdentifier();
+			if (imported.getKind() == Tree.Kind.MEMBER_SELECT) {
+				final MemberSelectTree select = (MemberSelectTree) imported;
+				if (select.getIdentifier().contentEquals("*")
+						&& packagesWithNewTypes.contains(select.getExpression().toString())) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param className the canonical name of a top-level class compiled from source
+	 * @param compilationUnit the compilation unit that declares the class
+	 * @return true if the previous state has a record of the class from the same, unchanged source file
+	 */
+	private boolean isUpToDate(String className, CompilationUnitTree compilationUnit) {
+		final ClassRecord record = previousState.get(className);
+		final JavaFileObject sourceFile = compilationUnit.getSourceFile();
+		return record != null && record.isUpToDate(sourceFile.toUri().toString(), sourceFile.getLastModified());
+	}
+
+	/**
+	 * @param record the record of a class
+	 * @return the canonical name of a class that the references of the class depend on and that changed in this
+	 * compilation, or null if there is none
+	 */
+	private String findChangedDependency(ClassRecord record) {
+		for (int dependency : record.getDependencies()) {
+			final String typeName = symbols.getTypeName(dependency);
+			if (changedClasses.contains(typeName)) {
+				return typeName;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the classes whose saved references were reused, although a class that they depend on changed
+	 *
+	 * This happens if the class was not compiled from source, or if the class that it depends on changed in a later
+	 * processing round. The references are still used in this compilation, but the class is saved with an unknown
+	 * modification time, so that its references are found again when it is next compiled from source.
+	 */
+	private void findStaleClasses() {
+		final List<ClassRecord> stale = new ArrayList<>();
+		for (ClassRecord record : currentState.getClasses()) {
+			if (!rescannedClasses.contains(record.getClassName()) && findChangedDependency(record) != null) {
+				stale.add(record);
+			}
+		}
+		for (ClassRecord record : stale) {
+			Log.d(TAG, () -> "References of " + record.getClassName() + " may be out of date");
+			staleClasses.add(record.getClassName());
+			currentState.put(new ClassRecord(record.getClassName(), record.getSourceUri(), 0,
+					record.getTypeReferences(), record.getFieldReferences(), record.getDependencies(),
+					record.getInvariants()));
+		}
+	}
+
+	/**
+	 * Adds the classes from the previous compilation that were not compiled from source in this compilation, but
+	 * still exist
+	 */
+	private void mergePreviousState() {
+		for (ClassRecord record : previousState.getClasses()) {
+			final String className = record.getClassName();
+			if (currentState.get(className) != null) {
+				continue;
+			}
+			if (processingEnv.getElementUtils().getTypeElement(className) == null) {
+				Log.d(TAG, () -> "Class " + className + " was removed");
+				continue;
+			}
+			Log.d(TAG, () -> "Using saved references and invariants of class " + className);
+			typeReferences.put(className, record.getTypeReferences());
+			fieldReferences.put(className, record.getFieldReferences());
+			for (Map.Entry<Integer, VisibilityInvariant> entry : record.getInvariants().entrySet()) {
+				annotatedMemberToInvariant.putIfAbsent(entry.getKey(), entry.getValue());
+			}
+			currentState.put(record);
+		}
+	}
+
+	/**
+	 * @return the annotated elements whose invariants were added, removed, or changed since the previous compilation
+	 */
+	private BitSet findChangedInvariants() {
+		final SymbolMap<VisibilityInvariant> previousInvariants = new SymbolMap<>();
+		for (ClassRecord record : previousState.getClasses()) {
+			for (Map.Entry<Integer, VisibilityInvariant> entry : record.getInvariants().entrySet()) {
+				previousInvariants.put(entry.getKey(), entry.getValue());
+			}
+		}
+		final BitSet changed = new BitSet();
+		for (int id = annotatedMemberToInvariant.nextKey(0); id >= 0; id = annotatedMemberToInvariant.nextKey(id + 1)) {
+			if (!VisibilityInvariantFactory.isSame(annotatedMemberToInvariant.get(id), previousInvariants.get(id))) {
+				changed.set(id);
+			}
+		}
+		for (int id = previousInvariants.nextKey(0); id >= 0; id = previousInvariants.nextKey(id + 1)) {
+			if (!annotatedMemberToInvariant.containsKey(id)) {
+				changed.set(id);
+			}
+		}
+		Log.d(TAG, () -> changed.cardinality() + " invariants changed");
+		return changed;
+	}
+
+	/**
+	 * Checks if a usage needs to be checked in this compilation
+	 *
+	 * @param className the canonical name of the using class
+	 * @param usage the ID of the element used
+	 * @param invariant the invariant of the element used
+	 * @return true if the usage may have a different result than in the previous compilation
+	 */
+	private boolean needsCheck(String className, int usage, VisibilityInvariant invariant) {
+		if (incrementalFile == null || rescannedClasses.contains(className) || changedInvariants.get(usage)) {
+			return true;
+		}
+		// The using class may have become a subclass through a change to one of its superclasses
+		return invariant.getKind() == VisibilityInvariant.Kind.SUBCLASS;
+	}
+
+	/**
+	 * Saves the state of this compilation for the next compilation
+	 *
+	 * @param errors if any usages were not allowed. The state is then removed, so that the next compilation checks
+	 * every usage again.
+	 */
+	private void saveState(boolean errors) {
+		try {
+			if (errors) {
+				Files.deleteIfExists(incrementalFile);
+				return;
+			}
+			for (int id = annotatedMemberToInvariant.nextKey(0);
+					id >= 0; id = annotatedMemberToInvariant.nextKey(id + 1)) {
+				final ClassRecord record = currentState.get(getTopLevelClass(symbols.getTypeName(id)));
+				if (record != null) {
+					record.getInvariants().put(id, annotatedMemberToInvariant.get(id));
+				}
+			}
+			currentState.save(incrementalFile, symbols);
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.WARNING,
+					"Failed to save CoffeeBag state to " + incrementalFile + ": " + e);
+		}
+	}
+
+	/**
+	 * Writes the invariants of this compilation to the class output, so that compilations that use it as a library
+	 * can check usages of its elements
+	 */
+	private void writeInvariantIndex() {
+		if (annotatedMemberToInvariant.isEmpty()) {
+			return;
+		}
+		try {
+			final FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					InvariantIndex.RESOURCE);
+			final Map<AccessElement, VisibilityInvariant> invariants = new HashMap<>(annotatedMemberToInvariant.size());
+			for (int id = annotatedMemberToInvariant.nextKey(0);
+					id >= 0; id = annotatedMemberToInvariant.nextKey(id + 1)) {
+				invariants.put(symbols.get(id), annotatedMemberToInvariant.get(id));
+			}
+			try (OutputStream out = file.openOutputStream()) {
+				InvariantIndex.write(invariants, out);
+			}
+			Log.d(TAG, () -> "Wrote " + annotatedMemberToInvariant.size() + " invariants to " + file.toUri());
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.WARNING, "Failed to write CoffeeBag invariant index: " + e);
+		}
+	}
+
+	/**
+	 * Moves the references found so far from memory to the spill file
+	 *
+	 * If the file cannot be written, spilling stops and the remaining references stay in memory.
+	 */
+	private void spillReferences() {
+		final int before = spill.size();
+		try {
+			for (Iterator<Map.Entry<String, int[]>> iterator = typeReferences.entrySet().iterator(); iterator.hasNext();) {
+				final Map.Entry<String, int[]> reference = iterator.next();
+				spill.write(reference.getKey(), reference.getValue(), fieldReferences.remove(reference.getKey()));
+				iterator.remove();
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.WARNING, "Failed to write CoffeeBag spill file: " + e);
+			spill = null;
+			return;
+		}
+		Log.d(TAG, () -> "Spilled references of " + (spill.size() - before) + " classes");
+	}
+
+	/**
+	 * Reads the spilled references back into memory, keeping only the usages of elements that have invariants
+	 *
+	 * Usages of other elements are never checked, so the references kept are a small part of the references spilled.
+	 */
+	private void readSpilledReferences() {
+		statistics.set(Statistics.Count.SPILLED_CLASSES, spill.size());
+		try {
+			spill.read((className, types, fields) -> {
+				// A class has more than one record if a pruned compilation unit was rescanned in a later round
+				typeReferences.merge(className, Arrays.stream(types).filter(this::hasInvariant).toArray(),
+						CheckVisibility::union);
+				fieldReferences.merge(className, Arrays.stream(fields).filter(this::hasInvariant).toArray(),
+						CheckVisibility::union);
+			});
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR, "Failed to read CoffeeBag spill file: " + e);
+		}
+		try {
+			spill.close();
+		} catch (IOException e) {
+			Log.i(TAG, () -> "Failed to delete spill file: " + e);
+		}
+		spill = null;
+	}
+
+	/**
+	 * @param element the ID of an element
+	 * @return true if the element has an invariant in this compilation or in a library
+	 */
+	private boolean hasInvariant(int element) {
+		if (symbols.isCallSite(element)) {
+			return getCallInvariants(element) != null;
+		}
+		return annotatedMemberToInvariant.containsKey(element) || libraryInvariants.get(element) != null;
+	}
+
+	/**
+	 * Returns the invariants of the methods or constructors that a call site may call, finding them the first time
+	 *
+	 * The overloads are selected from the argument types that are known, and from the number of arguments otherwise.
+	 * If more than one overload may be called, the call is checked against the invariants of the annotated ones and is
+	 * allowed if any of them allows it, even if an unannotated overload may be the one called.
+	 *
+	 * @param callSite the ID of the call site
+	 * @return the invariants, or null if the call is always allowed
+	 */
+	private VisibilityInvariant[] getCallInvariants(int callSite) {
+		if (callInvariants.containsKey(callSite)) {
+			return callInvariants.get(callSite);
+		}
+		final VisibilityInvariant[] invariants = findCallInvariants(symbols.get(callSite));
+		callInvariants.put(callSite, invariants);
+		return invariants;
+	}
+
+	private VisibilityInvariant[] findCallInvariants(AccessElement call) {
+		final TypeElement owner = processingEnv.getElementUtils().getTypeElement(call.getTypeName());
+		if (owner == null) {
+			return null;
+		}
+		final String name = call.getMemberName();
+		// Constructors are not inherited
+		final List<ExecutableElement> named = new ArrayList<>();
+		for (ExecutableElement candidate : AccessElement.CONSTRUCTOR_NAME.equals(name)
+				? ElementFilter.constructorsIn(owner.getEnclosedElements())
+				: ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(owner))) {
+			if (candidate.getKind() == ElementKind.CONSTRUCTOR || candidate.getSimpleName().contentEquals(name)) {
+				named.add(candidate);
+			}
+		}
+		final List<VisibilityInvariant> invariants = new ArrayList<>();
+		for (ExecutableElement candidate : overloadResolver.select(named, call)) {
+			final int id = symbols.intern(AccessElement.method(candidate));
+			VisibilityInvariant invariant = annotatedMemberToInvariant.get(id);
+			if (invariant == null) {
+				invariant = libraryInvariants.get(id);
+			}
+			if (invariant == null) {
+				Log.v(TAG, () -> "Call " + call + " may call unrestricted " + symbols.toString(id));
+			} else {
+				invariants.add(invariant);
+			}
+		}
+		return invariants.isEmpty() ? null : invariants.toArray(new VisibilityInvariant[invariants.size()]);
+	}
+
+	/**
+	 * Writes the statistics of this compilation to the source output, if they were enabled
+	 */
+	private void writeStatistics() {
+		if (!statistics.isEnabled()) {
+			return;
+		}
+		statistics.set(Statistics.Count.RESOLVER_LOOKUPS, packageIndex.getLookups());
+		statistics.set(Statistics.Count.RESOLVER_CACHE_HITS, packageIndex.getHits());
+		statistics.set(Statistics.Count.LIBRARY_INVARIANT_LOOKUPS, libraryInvariants.getLookups());
+		statistics.set(Statistics.Count.LIBRARY_INVARIANT_CACHE_HITS, libraryInvariants.getHits());
+		statistics.set(Statistics.Count.INVARIANTS, annotatedMemberToInvariant.size());
+		try {
+			final FileObject file = processingEnv.getFiler().createResource(StandardLocation.SOURCE_OUTPUT, "",
+					STATISTICS_FILE);
+			try (Writer out = file.openWriter()) {
+				out.write(statistics.toJson());
+			}
+			Log.d(TAG, () -> "Wrote statistics to " + file.toUri());
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.WARNING, "Failed to write CoffeeBag statistics: " + e);
+		}
+	}
+
+	/**
+	 * @param typeName the canonical name of a class
+	 * @return the canonical name of the top-level class that declares the class, or null if it was not found
+	 */
+	private String getTopLevelClass(String typeName) {
+		Element type = processingEnv.getElementUtils().getTypeElement(typeName);
+		if (type == null) {
+			return null;
+		}
+		while (type.getEnclosingElement().getKind() != ElementKind.PACKAGE) {
+			type = type.getEnclosingElement();
+		}
+		return ((TypeElement) type).getQualifiedName().toString();
+	}
+
+	private static ClassRecord withoutInvariants(ClassRecord record) {
+		return new ClassRecord(record.getClassName(), record.getSourceUri(), record.getSourceLastModified(),
+				record.getTypeReferences(), record.getFieldReferences(), record.getDependencies(), new HashMap<>());
+	}
+
+	/**
+	 * Checks the usages whose targets and using classes are complete, and removes them from the references
+	 *
+	 * A usage is parked until the final round if its target does not exist yet (because it will be generated in a
+	 * later round, and may then be annotated), or if a superclass of the using class does not exist yet.
+	 *
+	 * @param references maps from canonical class names to the elements that the classes use. Checked usages are
+	 * removed.
+	 * @param usageType the kind of element used, for error messages
+	 */
+	private void checkReadyUsages(Map<String, int[]> references, String usageType) {
+		final Map<String, int[]> ready = new HashMap<>();
+		for (Iterator<Map.Entry<String, int[]>> iterator = references.entrySet().iterator(); iterator.hasNext();) {
+			final Map.Entry<String, int[]> reference = iterator.next();
+			if (!isHierarchyComplete(reference.getKey())) {
+				continue;
+			}
+			final int[] usages = reference.getValue();
+			final int[] parked = Arrays.stream(usages).filter(usage -> !isTargetComplete(usage)).toArray();
+			if (parked.length == usages.length) {
+				continue;
+			}
+			ready.put(reference.getKey(), parked.length == 0 ? usages
+					: Arrays.stream(usages).filter(usage -> finalSymbols.get(usage)).toArray());
+			if (parked.length == 0) {
+				iterator.remove();
+			} else {
+				reference.setValue(parked);
+			}
+		}
+		Log.d(TAG, () -> "Checking " + usageType + " usages of " + ready.size() + " classes, "
+				+ references.size() + " classes have parked usages");
+		checkUsages(ready, usageType);
+	}
+
+	/**
+	 * @param usage the ID of an element
+	 * @return true if the type of the element, or the type that declares it, exists
+	 */
+	private boolean isTargetComplete(int usage) {
+		if (!finalSymbols.get(usage)) {
+			if (processingEnv.getElementUtils().getTypeElement(symbols.getTypeName(usage)) == null) {
+				return false;
+			}
+			finalSymbols.set(usage);
+		}
+		return true;
+	}
+
+	/**
+	 * @param className the canonical name of a class
+	 * @return true if the class and all its superclasses exist
+	 */
+	private boolean isHierarchyComplete(String className) {
+		final TypeElement type = processingEnv.getElementUtils().getTypeElement(className);
+		if (type == null) {
+			return false;
+		}
+		TypeMirror superclass = type.getSuperclass();
+		while (superclass.getKind() == TypeKind.DECLARED) {
+			superclass = ((TypeElement) ((DeclaredType) superclass).asElement()).getSuperclass();
+		}
+		return superclass.getKind() == TypeKind.NONE;
+	}
+
+	/**
+	 * A usage of an annotated element whose invariant must be checked
+	 */
+	private static class Usage {
+		/**
+		 * The canonical name of the using class
+		 */
+		private final String className;
+		/**
+		 * The ID of the element used
+		 */
+		private final int element;
+		/**
+		 * The invariants of the element used. The usage is allowed if any of them allows it, because a call site
+		 * may call any of several overloads.
+		 */
+		private final VisibilityInvariant[] invariants;
+		/**
+		 * The indexes of the invariants in the package verdicts, or -1 for invariants that are not scoped to a package
+		 */
+		private final int[] verdictIndexes;
+		/**
+		 * A snapshot of the using class
+		 */
+		private final UsingClass usingClass;
+		/**
+		 * The package-scoped invariants that allow usage from the package of the using class
+		 */
+		private final BitSet packageVerdicts;
+
+		Usage(String className, int element, VisibilityInvariant[] invariants, int[] verdictIndexes,
+				UsingClass usingClass, BitSet packageVerdicts) {
+			this.className = className;
+			this.element = element;
+			this.invariants = invariants;
+			this.verdictIndexes = verdictIndexes;
+			this.usingClass = usingClass;
+			this.packageVerdicts = packageVerdicts;
+		}
+
+		boolean isAllowed() {
+			for (int i = 0; i < invariants.length; i++) {
+				if (verdictIndexes[i] != -1 ? packageVerdicts.get(verdictIndexes[i])
+						: invariants[i].isUsageAllowedIn(usingClass)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Checks usages and reports the ones that are not allowed
+	 *
+	 * The usages and snapshots of the using classes are collected on this thread, because the compiler is not
+	 * thread-safe. The invariants are then evaluated in parallel, and errors are reported in order of class name and
+	 * element name.
+	 *
+	 * @param references maps from canonical class names to the elements that the classes use
+	 * @param usageType the kind of element used, for error messages
+	 * @return true if any usage was not allowed
+	 */
+	private boolean checkUsages(Map<String, int[]> references, String usageType) {
+		// Only the users of elements that have invariants are visited
+		final UsageIndex index = UsageIndex.build(references, symbols.size());
+		// Package-scoped invariants are compiled into verdicts per using package, so each check is a bit test
+		final PackageVisibilityMatrix matrix = new PackageVisibilityMatrix();
+		// The targets that have invariants, with their invariants and verdict indexes at the same positions
+		final int[] targets = index.getTargets();
+		final int[] checkedTargets = new int[targets.length];
+		final VisibilityInvariant[][] targetInvariants = new VisibilityInvariant[targets.length][];
+		final int[][] verdictIndexes = new int[targets.length][];
+		int checkedCount = 0;
+		// Changes to libraries are not tracked, so usages of library elements are always checked
+		final BitSet alwaysChecked = new BitSet();
+		for (int target : targets) {
+			final VisibilityInvariant[] invariants;
+			final boolean local;
+			if (symbols.isCallSite(target)) {
+				invariants = getCallInvariants(target);
+				// A call site does not change when the invariants of the methods that it may call change
+				local = false;
+			} else {
+				VisibilityInvariant invariant = annotatedMemberToInvariant.get(target);
+				local = invariant != null;
+				if (!local) {
+					invariant = libraryInvariants.get(target);
+				}
+				invariants = invariant == null ? null : new VisibilityInvariant[] { invariant };
+			}
+			if (invariants == null) {
+				Log.v(TAG, () -> "No visibility invariant for referenced " + usageType + " " + symbols.toString(target));
+				continue;
+			}
+			checkedTargets[checkedCount] = target;
+			targetInvariants[checkedCount] = invariants;
+			verdictIndexes[checkedCount] = Arrays.stream(invariants).mapToInt(matrix::add).toArray();
+			checkedCount++;
+			alwaysChecked.set(target, !local);
+		}
+		final List<Usage> usages = new ArrayList<>();
+		for (int i = 0; i < checkedCount; i++) {
+			final int target = checkedTargets[i];
+			final VisibilityInvariant[] invariants = targetInvariants[i];
+			Log.d(TAG, () -> "Checking uses of " + usageType + " " + symbols.toString(target));
+			for (String className : index.getUsers(target)) {
+				if (!alwaysChecked.get(target) && !needsCheck(className, target, invariants[0])) {
+					Log.v(TAG, () -> "Usage of " + symbols.toString(target) + " in " + className + " unchanged");
 				} else {
-					Log.v(TAG, "No visibility invariant for referenced " + usageType + " " + usage);
+					final UsingClass usingClass = getUsingClass(className);
+					usages.add(new Usage(className, target, invariants, verdictIndexes[i], usingClass,
+							matrix.getVerdicts(usingClass.getPackageName())));
 				}
 			}
 		}
+
+		final List<Usage> violations = usages.parallelStream()
+				.filter(usage -> {
+					if (usage.isAllowed()) {
+						// Worker threads do not have the log of this compilation as their current log
+						log.log(Level.VERBOSE, TAG,
+								() -> "Usage of " + symbols.toString(usage.element) + " OK in " + usage.className);
+						return false;
+					}
+					return true;
+				})
+				.collect(Collectors.toList());
+		statistics.add(Statistics.Count.INVARIANTS_EVALUATED, usages.size());
+		statistics.add(Statistics.Count.VIOLATIONS, violations.size());
+		violations.sort(Comparator.<Usage, String>comparing(usage -> usage.className)
+				.thenComparing(usage -> symbols.toString(usage.element)));
+
+		final Messager messager = processingEnv.getMessager();
+		boolean reported = false;
+		for (Usage violation : violations) {
+			final String element = symbols.toString(violation.element);
+			if (baseline != null || recordedViolations != null) {
+				final long hash = ViolationBaseline.hash(usageType, violation.className, element);
+				if (recordedViolations != null) {
+					recordedViolations.put(hash, ViolationBaseline.hash(violation.className));
+					continue;
+				}
+				if (baseline.contains(hash)) {
+					suppressedCount++;
+					continue;
+				}
+			}
+			messager.printMessage(Kind.ERROR, symbols.getKindName(violation.element) + " "
+					+ symbols.getDisplayName(violation.element) + " is not visible to " + violation.className,
+					processingEnv.getElementUtils().getTypeElement(violation.className));
+			reported = true;
+		}
+		return reported;
+	}
+
+	/**
+	 * Writes the violations found to the baseline file if they were recorded, or reports how many violations the
+	 * baseline suppressed
+	 */
+	private void finishBaseline() {
+		final Messager messager = processingEnv.getMessager();
+		if (recordedViolations != null) {
+			try {
+				ViolationBaseline.write(recordedViolations, baselineFile);
+				messager.printMessage(Kind.NOTE, "CoffeeBag recorded " + recordedViolations.size()
+						+ " violations in baseline " + baselineFile);
+			} catch (IOException e) {
+				messager.printMessage(Kind.WARNING, "Failed to write CoffeeBag baseline " + baselineFile + ": " + e);
+			}
+		} else if (baseline != null) {
+			final StringBuilder message = new StringBuilder("CoffeeBag baseline suppressed ")
+					.append(suppressedCount).append(" violations");
+			// Incremental processing does not check unchanged usages, so it cannot tell which violations were fixed
+			if (incrementalFile == null) {
+				message.append(", ").append(baseline.getFixedCount(checkedClasses))
+						.append(" baseline violations are fixed");
+			}
+			messager.printMessage(Kind.NOTE, message);
+		}
+	}
+
+	/**
+	 * Returns a snapshot of a class, creating it the first time that the class is used
+	 *
+	 * @param className the canonical name of the class
+	 * @return the snapshot
+	 */
+	private UsingClass getUsingClass(String className) {
+		return usingClasses.computeIfAbsent(className, name -> {
+			final TypeElement usingClass = processingEnv.getElementUtils().getTypeElement(name);
+			if (usingClass == null) {
+				throw new IllegalStateException("Type element not found for canonical name " + name);
+			}
+			return UsingClass.of(usingClass, processingEnv.getElementUtils(), typeHierarchy);
+		});
 	}
 
 	/**
@@ -143,9 +1357,9 @@ public class CheckVisibility extends AbstractProcessor {
 	 */
 	Map<String, Set<String>> getTypeReferences() {
 		final Map<String, Set<String>> stringified = new HashMap<>(typeReferences.size());
-		for (Map.Entry<String, Set<AccessElement>> entry : typeReferences.entrySet()) {
-			stringified.put(entry.getKey(), entry.getValue().stream()
-					.map(AccessElement::getTypeName)
+		for (Map.Entry<String, int[]> entry : typeReferences.entrySet()) {
+			stringified.put(entry.getKey(), Arrays.stream(entry.getValue())
+					.mapToObj(symbols::getTypeName)
 					.collect(Collectors.toSet()));
 		}
 		return stringified;
@@ -158,8 +1372,8 @@ public class CheckVisibility extends AbstractProcessor {
 	 */
 	Map<String, VisibilityInvariant> getInvariants() {
 		final Map<String, VisibilityInvariant> stringified = new HashMap<>(annotatedMemberToInvariant.size());
-		for (Map.Entry<AccessElement, VisibilityInvariant> entry : annotatedMemberToInvariant.entrySet()) {
-			stringified.put(entry.getKey().toString(), entry.getValue());
+		for (int id = annotatedMemberToInvariant.nextKey(0); id >= 0; id = annotatedMemberToInvariant.nextKey(id + 1)) {
+			stringified.put(symbols.toString(id), annotatedMemberToInvariant.get(id));
 		}
 		return stringified;
 	}
@@ -171,9 +1385,10 @@ public class CheckVisibility extends AbstractProcessor {
 	 */
 	Map<String, Set<String>> getFieldReferences() {
 		final Map<String, Set<String>> stringified = new HashMap<>(fieldReferences.size());
-		for (Map.Entry<String, Set<AccessElement>> entry : fieldReferences.entrySet()) {
-			stringified.put(entry.getKey(), entry.getValue().stream()
-					.map(AccessElement::toString)
+		for (Map.Entry<String, int[]> entry : fieldReferences.entrySet()) {
+			stringified.put(entry.getKey(), Arrays.stream(entry.getValue())
+					.filter(id -> !symbols.isMethod(id))
+					.mapToObj(symbols::toString)
 					.collect(Collectors.toSet()));
 		}
 		return stringified;
@@ -0,0 +1,113 @@
+package org.coffeebag.processor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Options that can be passed to the processor with -A[name]=[value]
+ */
+class Options {
+
+	/**
+	 * The least important level of log messages to write (VERBOSE, DEBUG, or INFO). Setting this enables logging.
+	 */
+	static final String LOG_LEVEL = "coffeebag.log.level";
+	/**
+	 * The file to write log messages to, instead of standard output
+	 */
+	static final String LOG_FILE = "coffeebag.log.file";
+	/**
+	 * The file in which to keep the results of a compilation, so that the next compilation only rescans changed files.
+	 * Setting this enables incremental processing.
+	 */
+	static final String INCREMENTAL = "coffeebag.incremental";
+	/**
+	 * If usages should be checked in the round where their targets become known, instead of in the final round.
+	 * This is ignored in incremental processing.
+	 */
+	static final String STREAMING = "coffeebag.streaming";
+	/**
+	 * If a JSON report of the time, memory, and work of each processing phase should be written to the source output
+	 */
+	static final String STATS = "coffeebag.stats";
+	/**
+	 * If compilation units that do not contain the name of any annotated element should be skipped instead of
+	 * scanned for references. This is ignored in incremental processing.
+	 */
+	static final String PREFILTER = "coffeebag.prefilter";
+	/**
+	 * The file to move the references of each class to after it has been scanned, instead of keeping them in memory
+	 * until the final round. This is ignored in incremental and streaming processing.
+	 */
+	static final String SPILL = "coffeebag.spill";
+	/**
+	 * The file of known violations, which are not reported
+	 */
+	static final String BASELINE = "coffeebag.baseline";
+	/**
+	 * If the violations found should be written to the baseline file instead of being reported
+	 */
+	static final String BASELINE_UPDATE = "coffeebag.baseline.update";
+	/**
+	 * The file to cache the listings of class path jars in. Setting this makes the processor look up types in
+	 * glob-imported packages in these listings, instead of loading every class of the package.
+	 */
+	static final String CLASSPATH_INDEX = "coffeebag.classpath.index";
+	/**
+	 * The option that Gradle passes to dynamic processors when they are used as aggregating processors
+	 */
+	static final String GRADLE_AGGREGATING = "org.gradle.annotation.processing.aggregating";
+
+	/**
+	 * The names of all supported options
+	 */
+	static final Set<String> NAMES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			LOG_LEVEL,
+			LOG_FILE,
+			INCREMENTAL,
+			STREAMING,
+			STATS,
+			PREFILTER,
+			SPILL,
+			BASELINE,
+			BASELINE_UPDATE,
+			CLASSPATH_INDEX)));
+
+	/**
+	 * The option values, by name
+	 */
+	private final Map<String, String> values;
+
+	/**
+	 * Creates an options object
+	 * @param values the options passed to the processor
+	 */
+	Options(Map<String, String> values) {
+		this.values = values;
+	}
+
+	/**
+	 * Returns the value of an option
+	 * @param name the option name
+	 * @return the value, or null if the option was not set
+	 */
+	String get(String name) {
+		return values.get(name);
+	}
+
+	/**
+	 * Returns the value of a boolean option
+	 * @param name the option name
+	 * @return true if the option was set to true, or was set with no value
+	 */
+	boolean isSet(String name) {
+		if (!values.containsKey(name)) {
+			return false;
+		}
+		final String value = values.get(name);
+		return value == null || Boolean.parseBoolean(value);
+	}
+}
@@ -0,0 +1,190 @@
+package org.coffeebag.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import org.coffeebag.domain.AccessElement;
+
+/**
+ * Selects the overloads that a call site may call, from its number of arguments and the argument types that the
+ * reference visitor knows
+ *
+ * If all argument types are known, this follows the phases of overload resolution in the Java language: overloads
+ * that are applicable by subtyping are preferred to ones that need boxing, which are preferred to variable-arity
+ * calls, and only the most specific applicable overloads are kept. An argument whose type is not known may have any
+ * type, so the overloads that are applicable in any phase are kept.
+ */
+class OverloadResolver {
+
+	private final Elements elements;
+	private final Types types;
+
+	OverloadResolver(ProcessingEnvironment env) {
+		elements = env.getElementUtils();
+		types = env.getTypeUtils();
+	}
+
+	/**
+	 * Selects the overloads that a call may call
+	 * @param candidates the methods or constructors with the name of the call
+	 * @param call the call site
+	 * @return the candidates that the call may call. If no candidate is applicable to the known argument types,
+	 * because a type was not resolved as the compiler resolves it, every candidate that accepts the number of
+	 * arguments is returned.
+	 */
+	List<ExecutableElement> select(List<ExecutableElement> candidates, AccessElement call) {
+		final int arity = call.getArity();
+		if (arity == AccessElement.ANY_ARITY) {
+			return candidates;
+		}
+		final List<TypeMirror> arguments = getArgumentTypes(call, arity);
+		final boolean allKnown = !arguments.contains(null);
+		final List<ExecutableElement> strict = new ArrayList<>();
+		final List<ExecutableElement> loose = new ArrayList<>();
+		final List<ExecutableElement> variableArity = new ArrayList<>();
+		for (ExecutableElement candidate : candidates) {
+			if (isApplicable(candidate, arguments, false, false)) {
+				strict.add(candidate);
+			} else if (isApplicable(candidate, arguments, true, false)) {
+				loose.add(candidate);
+			} else if (isApplicable(candidate, arguments, true, true)) {
+				variableArity.add(candidate);
+			}
+		}
+		if (allKnown) {
+			// Variable-arity overloads are not compared, because their parameters do not match the arguments one to one
+			if (!strict.isEmpty()) {
+				return mostSpecific(strict);
+			} else if (!loose.isEmpty()) {
+				return mostSpecific(loose);
+			} else if (!variableArity.isEmpty()) {
+				return variableArity;
+			}
+		} else if (!strict.isEmpty() || !loose.isEmpty() || !variableArity.isEmpty()) {
+			final List<ExecutableElement> applicable = new ArrayList<>(strict);
+			applicable.addAll(loose);
+			applicable.addAll(variableArity);
+			return applicable;
+		}
+		final List<ExecutableElement> byArity = new ArrayList<>();
+		for (ExecutableElement candidate : candidates) {
+			final int parameters = candidate.getParameters().size();
+			if (arity == parameters || (candidate.isVarArgs() && arity >= parameters - 1)) {
+				byArity.add(candidate);
+			}
+		}
+		return byArity;
+	}
+
+	/**
+	 * @return the type of each argument of a call, or null for the arguments whose types are not known
+	 */
+	private List<TypeMirror> getArgumentTypes(AccessElement call, int arity) {
+		final List<String> names = call.getArgumentTypes();
+		final List<TypeMirror> arguments = new ArrayList<>(arity);
+		for (int i = 0; i < arity; i++) {
+			arguments.add(names == null ? null : toType(names.get(i)));
+		}
+		return arguments;
+	}
+
+	/**
+	 * @param name an argument type as recorded in a call site key, or null
+	 * @return the type, or null if it is not known
+	 */
+	private TypeMirror toType(String name) {
+		if (name == null) {
+			return null;
+		} else if (name.equals(AccessElement.NULL_ARGUMENT)) {
+			return types.getNullType();
+		}
+		final TypeKind primitive = getPrimitiveKind(name);
+		if (primitive != null) {
+			return types.getPrimitiveType(primitive);
+		}
+		final TypeElement type = elements.getTypeElement(name);
+		return type == null ? null : types.erasure(type.asType());
+	}
+
+	private static TypeKind getPrimitiveKind(String name) {
+		try {
+			final TypeKind kind = TypeKind.valueOf(name.toUpperCase(Locale.ROOT));
+			return kind.isPrimitive() ? kind : null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks if a method can be called with arguments, as in one phase of overload resolution
+	 * @param method the method or constructor
+	 * @param arguments the argument types, with null for the arguments whose types are not known
+	 * @param boxing if arguments may be boxed or unboxed
+	 * @param variableArity if a variable-arity method may be called with its variable arity
+	 * @return true if the method is applicable
+	 */
+	private boolean isApplicable(ExecutableElement method, List<TypeMirror> arguments, boolean boxing,
+			boolean variableArity) {
+		final int parameters = method.getParameters().size();
+		if (variableArity ? !method.isVarArgs() || arguments.size() < parameters - 1
+				: arguments.size() != parameters) {
+			return false;
+		}
+		for (int i = 0; i < arguments.size(); i++) {
+			TypeMirror parameter = types.erasure(method.getParameters().get(Math.min(i, parameters - 1)).asType());
+			if (variableArity && i >= parameters - 1) {
+				parameter = ((ArrayType) parameter).getComponentType();
+			}
+			final TypeMirror argument = arguments.get(i);
+			if (argument != null && !(boxing ? types.isAssignable(argument, parameter)
+					: types.isSubtype(argument, parameter))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param applicable overloads that are applicable in the same phase
+	 * @return the overloads for which no other overload is more specific
+	 */
+	private List<ExecutableElement> mostSpecific(List<ExecutableElement> applicable) {
+		final List<ExecutableElement> specific = new ArrayList<>();
+		for (ExecutableElement method : applicable) {
+			boolean lessSpecific = false;
+			for (ExecutableElement other : applicable) {
+				if (other != method && isMoreSpecific(other, method) && !isMoreSpecific(method, other)) {
+					lessSpecific = true;
+					break;
+				}
+			}
+			if (!lessSpecific) {
+				specific.add(method);
+			}
+		}
+		return specific;
+	}
+
+	/**
+	 * @return true if every parameter type of the first method is a subtype of the parameter type of the second
+	 */
+	private boolean isMoreSpecific(ExecutableElement method, ExecutableElement other) {
+		for (int i = 0; i < method.getParameters().size(); i++) {
+			if (!types.isSubtype(types.erasure(method.getParameters().get(i).asType()),
+					types.erasure(other.getParameters().get(i).asType()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
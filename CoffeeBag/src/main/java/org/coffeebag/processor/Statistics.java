@@ -0,0 +1,232 @@
+package org.coffeebag.processor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Measures the time and memory that the processor spends in each phase, and counts the work that it does
+ *
+ * Times and allocations are measured on the compiler thread. The threads that evaluate invariants in parallel are not
+ * included. A disabled object ignores all calls.
+ */
+class Statistics {
+
+	/**
+	 * The phases of processing that are measured
+	 */
+	enum Phase {
+		/**
+		 * Finding the types and fields that classes refer to
+		 */
+		REFERENCE_SCAN("referenceScan"),
+		/**
+		 * Finding the invariants of annotated elements
+		 */
+		INVARIANT_DISCOVERY("invariantDiscovery"),
+		/**
+		 * Checking usages against invariants
+		 */
+		CHECKING("checking");
+
+		private final String jsonName;
+
+		Phase(String jsonName) {
+			this.jsonName = jsonName;
+		}
+	}
+
+	/**
+	 * The quantities that are counted
+	 */
+	enum Count {
+		COMPILATION_UNITS("compilationUnits"),
+		REUSED_COMPILATION_UNITS("reusedCompilationUnits"),
+		SKIPPED_COMPILATION_UNITS("skippedCompilationUnits"),
+		PRUNED_METHOD_BODIES("prunedMethodBodies"),
+		TYPE_REFERENCES("typeReferences"),
+		FIELD_REFERENCES("fieldReferences"),
+		SPILLED_CLASSES("spilledClasses"),
+		RESOLVER_LOOKUPS("resolverLookups"),
+		RESOLVER_CACHE_HITS("resolverCacheHits"),
+		LIBRARY_INVARIANT_LOOKUPS("libraryInvariantLookups"),
+		LIBRARY_INVARIANT_CACHE_HITS("libraryInvariantCacheHits"),
+		INVARIANTS("invariants"),
+		INVARIANTS_EVALUATED("invariantsEvaluated"),
+		VIOLATIONS("violations");
+
+		private final String jsonName;
+
+		Count(String jsonName) {
+			this.jsonName = jsonName;
+		}
+	}
+
+	/**
+	 * A measurement of the current thread
+	 */
+	private static class Sample {
+		private long wallNanos;
+		private long cpuNanos;
+		private long allocatedBytes;
+	}
+
+	/**
+	 * If measurements are taken
+	 */
+	private final boolean enabled;
+	/**
+	 * The bean that measures thread CPU time
+	 */
+	private final ThreadMXBean threads;
+	/**
+	 * The bean that measures allocations, or null if the virtual machine does not support it
+	 */
+	private final com.sun.management.ThreadMXBean allocations;
+	/**
+	 * The totals for each phase
+	 */
+	private final Map<Phase, Sample> totals;
+	/**
+	 * The counts
+	 */
+	private final Map<Count, Long> counts;
+	/**
+	 * The phase that is being measured, or null if none is
+	 */
+	private Phase currentPhase;
+	/**
+	 * The measurement taken when the current phase started
+	 */
+	private Sample start;
+
+	/**
+	 * Creates a statistics object
+	 * @param enabled if measurements should be taken
+	 */
+	Statistics(boolean enabled) {
+		this.enabled = enabled;
+		threads = ManagementFactory.getThreadMXBean();
+		if (enabled && threads.isThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled()) {
+			threads.setThreadCpuTimeEnabled(true);
+		}
+		if (threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+			allocations = (com.sun.management.ThreadMXBean) threads;
+			if (enabled && !allocations.isThreadAllocatedMemoryEnabled()) {
+				allocations.setThreadAllocatedMemoryEnabled(true);
+			}
+		} else {
+			allocations = null;
+		}
+		totals = new EnumMap<>(Phase.class);
+		for (Phase phase : Phase.values()) {
+			totals.put(phase, new Sample());
+		}
+		counts = new EnumMap<>(Count.class);
+		for (Count count : Count.values()) {
+			counts.put(count, 0L);
+		}
+	}
+
+	/**
+	 * @return true if measurements are taken
+	 */
+	boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts measuring a phase
+	 * @param phase the phase
+	 */
+	void begin(Phase phase) {
+		if (!enabled) {
+			return;
+		}
+		if (currentPhase != null) {
+			throw new IllegalStateException("Phase " + currentPhase + " has not ended");
+		}
+		currentPhase = phase;
+		start = sample();
+	}
+
+	/**
+	 * Stops measuring the current phase and adds the measurement to its totals
+	 */
+	void end() {
+		if (!enabled) {
+			return;
+		}
+		final Sample end = sample();
+		final Sample total = totals.get(currentPhase);
+		total.wallNanos += end.wallNanos - start.wallNanos;
+		total.cpuNanos += end.cpuNanos - start.cpuNanos;
+		total.allocatedBytes += end.allocatedBytes - start.allocatedBytes;
+		currentPhase = null;
+		start = null;
+	}
+
+	/**
+	 * Adds to a count
+	 * @param count the count
+	 * @param amount the amount to add
+	 */
+	void add(Count count, long amount) {
+		if (enabled) {
+			counts.merge(count, amount, Long::sum);
+		}
+	}
+
+	/**
+	 * Sets a count
+	 * @param count the count
+	 * @param value the value
+	 */
+	void set(Count count, long value) {
+		if (enabled) {
+			counts.put(count, value);
+		}
+	}
+
+	/**
+	 * Formats the measurements as a JSON object
+	 *
+	 * Times are in nanoseconds. CPU times and allocations are -1 if the virtual machine cannot measure them.
+	 *
+	 * @return the JSON text
+	 */
+	String toJson() {
+		final StringBuilder json = new StringBuilder("{\n\t\"phases\": {\n");
+		final Phase[] phases = Phase.values();
+		for (int i = 0; i < phases.length; i++) {
+			final Sample total = totals.get(phases[i]);
+			json.append("\t\t\"").append(phases[i].jsonName).append("\": {")
+					.append("\"wallNanos\": ").append(total.wallNanos)
+					.append(", \"cpuNanos\": ").append(threads.isThreadCpuTimeSupported() ? total.cpuNanos : -1)
+					.append(", \"allocatedBytes\": ").append(allocations != null ? total.allocatedBytes : -1)
+					.append(i < phases.length - 1 ? "},\n" : "}\n");
+		}
+		json.append("\t},\n\t\"counts\": {\n");
+		final Count[] names = Count.values();
+		for (int i = 0; i < names.length; i++) {
+			json.append("\t\t\"").append(names[i].jsonName).append("\": ").append(counts.get(names[i]))
+					.append(i < names.length - 1 ? ",\n" : "\n");
+		}
+		json.append("\t}\n}\n");
+		return json.toString();
+	}
+
+	private Sample sample() {
+		final Sample sample = new Sample();
+		sample.wallNanos = System.nanoTime();
+		if (threads.isThreadCpuTimeSupported()) {
+			sample.cpuNanos = threads.getCurrentThreadCpuTime();
+		}
+		if (allocations != null) {
+			sample.allocatedBytes = allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return sample;
+	}
+}
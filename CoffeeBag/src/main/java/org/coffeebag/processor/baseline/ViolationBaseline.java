@@ -0,0 +1,203 @@
+package org.coffeebag.processor.baseline;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of known violations that are not reported
+ *
+ * Each violation is stored as a 64-bit hash of the kind of element used, the using class, and the element, with a
+ * hash of the using class, so that a violation is only counted as fixed if its class was compiled. The file is a hash
+ * table that is read in place from a memory-mapped file:
+ * <pre>
+ * int magic, int version, int slot count (a power of two), int entry count
+ * (long, long)[slot count] the violation hash and class hash in each slot, or 0 and 0 if the slot is empty
+ * </pre>
+ * Hashes are placed with linear probing on the violation hash.
+ */
+public class ViolationBaseline {
+
+	private static final int MAGIC = 0x43424231;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 16;
+	private static final int SLOT_SIZE = 16;
+	private static final long EMPTY = 0;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * The table contents
+	 */
+	private final ByteBuffer buffer;
+	/**
+	 * The number of slots, a power of two
+	 */
+	private final int slotCount;
+	/**
+	 * The slots whose violations have been found in this compilation
+	 */
+	private final BitSet found;
+
+	private ViolationBaseline(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException("Not a supported baseline file");
+		}
+		slotCount = buffer.getInt(8);
+		if (Integer.bitCount(slotCount) != 1 || HEADER_SIZE + (long) SLOT_SIZE * slotCount > buffer.limit()) {
+			throw new IOException("Corrupt baseline file");
+		}
+		found = new BitSet(slotCount);
+	}
+
+	/**
+	 * Maps a baseline file
+	 * @param file the file
+	 * @return the baseline
+	 * @throws IOException if the file could not be read or is not a baseline file
+	 */
+	public static ViolationBaseline load(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Baseline file is too large");
+			}
+			// The mapping stays valid after the channel is closed
+			return new ViolationBaseline(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Calculates the hash of a violation
+	 * @param usageType the kind of element used
+	 * @param className the canonical name of the using class
+	 * @param element the element used
+	 * @return the hash, which is never 0
+	 */
+	public static long hash(String usageType, String className, String element) {
+		long hash = FNV_OFFSET_BASIS;
+		hash = update(hash, usageType);
+		hash = update(hash, className);
+		hash = update(hash, element);
+		return hash == EMPTY ? 1 : hash;
+	}
+
+	/**
+	 * Calculates the hash of a using class
+	 * @param className the canonical name of the class
+	 * @return the hash, which is never 0
+	 */
+	public static long hash(String className) {
+		final long hash = update(FNV_OFFSET_BASIS, className);
+		return hash == EMPTY ? 1 : hash;
+	}
+
+	private static long update(long hash, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+			hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+		}
+		// Separate the parts, so that moving characters from one part to another changes the hash
+		return (hash ^ 0xFF) * FNV_PRIME;
+	}
+
+	/**
+	 * @return the number of violations in the baseline
+	 */
+	public int size() {
+		return buffer.getInt(12);
+	}
+
+	/**
+	 * Checks if the baseline contains a violation, and records that the violation still exists
+	 * @param hash the hash of the violation
+	 * @return true if the violation is in the baseline
+	 */
+	public boolean contains(long hash) {
+		for (int i = 0; i < slotCount; i++) {
+			final int slot = ((int) (hash ^ (hash >>> 32)) + i) & (slotCount - 1);
+			final long stored = buffer.getLong(HEADER_SIZE + SLOT_SIZE * slot);
+			if (stored == EMPTY) {
+				return false;
+			}
+			if (stored == hash) {
+				found.set(slot);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the violations that no longer occur
+	 *
+	 * Violations of classes that were not compiled are not counted, because their usages were not checked.
+	 *
+	 * @param checkedClasses the hashes of the using classes whose usages were checked, from {@link #hash(String)}
+	 * @return the number of violations of the classes in the baseline that have not been found by
+	 * {@link #contains(long)}
+	 */
+	public int getFixedCount(Set<Long> checkedClasses) {
+		int fixed = 0;
+		for (int slot = 0; slot < slotCount; slot++) {
+			final int offset = HEADER_SIZE + SLOT_SIZE * slot;
+			if (buffer.getLong(offset) != EMPTY && !found.get(slot)
+					&& checkedClasses.contains(buffer.getLong(offset + 8))) {
+				fixed++;
+			}
+		}
+		return fixed;
+	}
+
+	/**
+	 * Writes a baseline file, replacing any existing file
+	 * @param violations maps the hashes of the violations to the hashes of their using classes
+	 * @param file the file to write
+	 * @throws IOException if the file could not be written
+	 */
+	public static void write(Map<Long, Long> violations, Path file) throws IOException {
+		// Keep the table at most half full
+		final int slotCount = Integer.highestOneBit(Math.max(1, violations.size()) * 2 - 1) << 1;
+		final long[] slots = new long[2 * slotCount];
+		int count = 0;
+		for (Map.Entry<Long, Long> violation : violations.entrySet()) {
+			final long hash = violation.getKey();
+			int slot = (int) (hash ^ (hash >>> 32)) & (slotCount - 1);
+			while (slots[2 * slot] != EMPTY && slots[2 * slot] != hash) {
+				slot = (slot + 1) & (slotCount - 1);
+			}
+			if (slots[2 * slot] == EMPTY) {
+				slots[2 * slot] = hash;
+				slots[2 * slot + 1] = violation.getValue();
+				count++;
+			}
+		}
+
+		final Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(slotCount);
+			out.writeInt(count);
+			for (long hash : slots) {
+				out.writeLong(hash);
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
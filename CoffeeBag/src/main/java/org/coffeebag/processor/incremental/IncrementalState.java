@@ -0,0 +1,271 @@
+package org.coffeebag.processor.incremental;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.coffeebag.domain.AccessElement;
+import org.coffeebag.domain.SymbolTable;
+import org.coffeebag.domain.invariant.VisibilityInvariant;
+import org.coffeebag.domain.invariant.VisibilityInvariantFactory;
+import org.coffeebag.log.Log;
+
+/**
+ * The results of a compilation, saved so that the next compilation can reuse them
+ *
+ * For each top-level class, the state records the source file that it was compiled from, the types and fields that
+ * it refers to, the types whose declarations those references were resolved with, and the invariants of the
+ * annotated elements that it declares. Elements are stored as IDs in a
+ * {@link SymbolTable} while the state is in memory, and by name in the file.
+ */
+public class IncrementalState {
+	private static final String TAG = IncrementalState.class.getSimpleName();
+
+	/**
+	 * The first four bytes of a state file
+	 */
+	private static final int MAGIC = 0xC0FFEEBA;
+	/**
+	 * The version of the file format. Files with other versions are ignored.
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * What is known about one top-level class
+	 */
+	public static class ClassRecord {
+		/**
+		 * The canonical name of the class
+		 */
+		private final String className;
+		/**
+		 * The URI of the source file that declares the class
+		 */
+		private final String sourceUri;
+		/**
+		 * The last modification time of the source file, or 0 if unknown
+		 */
+		private final long sourceLastModified;
+		/**
+		 * The IDs of the types that the class refers to, sorted
+		 */
+		private final int[] typeReferences;
+		/**
+		 * The IDs of the fields that the class refers to, sorted
+		 */
+		private final int[] fieldReferences;
+		/**
+		 * The IDs of the top-level types whose declarations were read to resolve the references of the class. The
+		 * references must be found again when one of these types changes.
+		 */
+		private final int[] dependencies;
+		/**
+		 * The invariants of the annotated elements that the class declares, by element ID
+		 */
+		private final Map<Integer, VisibilityInvariant> invariants;
+
+		public ClassRecord(String className, String sourceUri, long sourceLastModified,
+				int[] typeReferences, int[] fieldReferences, int[] dependencies,
+				Map<Integer, VisibilityInvariant> invariants) {
+			this.className = className;
+			this.sourceUri = sourceUri;
+			this.sourceLastModified = sourceLastModified;
+			this.typeReferences = typeReferences;
+			this.fieldReferences = fieldReferences;
+			this.dependencies = dependencies;
+			this.invariants = invariants;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public String getSourceUri() {
+			return sourceUri;
+		}
+
+		public long getSourceLastModified() {
+			return sourceLastModified;
+		}
+
+		public int[] getTypeReferences() {
+			return typeReferences;
+		}
+
+		public int[] getFieldReferences() {
+			return fieldReferences;
+		}
+
+		public int[] getDependencies() {
+			return dependencies;
+		}
+
+		public Map<Integer, VisibilityInvariant> getInvariants() {
+			return invariants;
+		}
+
+		/**
+		 * Checks if this record was made from a source file that has not changed since
+		 *
+		 * @param uri the URI of the source file that now declares the class
+		 * @param lastModified the current last modification time of the source file
+		 * @return true if the file is the same and has a known, unchanged modification time
+		 */
+		public boolean isUpToDate(String uri, long lastModified) {
+			return lastModified != 0 && lastModified == sourceLastModified && uri.equals(sourceUri);
+		}
+	}
+
+	/**
+	 * The classes, by canonical name
+	 */
+	private final Map<String, ClassRecord> classes;
+
+	/**
+	 * Creates an empty state
+	 */
+	public IncrementalState() {
+		classes = new HashMap<>();
+	}
+
+	/**
+	 * Returns the record for a class
+	 * @param className the canonical name of the class
+	 * @return the record, or null if the class is not known
+	 */
+	public ClassRecord get(String className) {
+		return classes.get(className);
+	}
+
+	/**
+	 * @return all class records
+	 */
+	public Collection<ClassRecord> getClasses() {
+		return Collections.unmodifiableCollection(classes.values());
+	}
+
+	/**
+	 * Adds or replaces the record for a class
+	 * @param record the record
+	 */
+	public void put(ClassRecord record) {
+		classes.put(record.getClassName(), record);
+	}
+
+	/**
+	 * Reads a state file
+	 *
+	 * @param file the file to read
+	 * @param symbols the table to add the elements in the file to
+	 * @return the state in the file, or an empty state if the file does not exist or cannot be read
+	 */
+	public static IncrementalState load(Path file, SymbolTable symbols) {
+		final IncrementalState state = new IncrementalState();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				Log.i(TAG, () -> "Ignoring state file " + file + " with an unknown format");
+				return state;
+			}
+			final int classCount = in.readInt();
+			for (int i = 0; i < classCount; i++) {
+				final String className = in.readUTF();
+				final String sourceUri = in.readUTF();
+				final long lastModified = in.readLong();
+				final int[] types = readElements(in, symbols);
+				final int[] fields = readElements(in, symbols);
+				final int[] dependencies = readElements(in, symbols);
+				final int invariantCount = in.readInt();
+				final Map<Integer, VisibilityInvariant> invariants = new HashMap<>(invariantCount);
+				for (int j = 0; j < invariantCount; j++) {
+					final int element = symbols.intern(readElement(in));
+					final VisibilityInvariant.Kind kind = VisibilityInvariant.Kind.values()[in.readByte()];
+					invariants.put(element, VisibilityInvariantFactory.create(kind, in.readUTF()));
+				}
+				state.put(new ClassRecord(className, sourceUri, lastModified, types, fields, dependencies, invariants));
+			}
+		} catch (NoSuchFileException e) {
+			Log.i(TAG, () -> "No state file at " + file + ", starting a full build");
+		} catch (IOException | RuntimeException e) {
+			Log.i(TAG, () -> "Ignoring unreadable state file " + file + ": " + e);
+			return new IncrementalState();
+		}
+		return state;
+	}
+
+	/**
+	 * Writes this state to a file, replacing it
+	 *
+	 * @param file the file to write
+	 * @param symbols the table that contains the elements in this state
+	 * @throws IOException if the file could not be written
+	 */
+	public void save(Path file, SymbolTable symbols) throws IOException {
+		final Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		final Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(classes.size());
+			for (ClassRecord record : classes.values()) {
+				out.writeUTF(record.className);
+				out.writeUTF(record.sourceUri);
+				out.writeLong(record.sourceLastModified);
+				writeElements(out, record.typeReferences, symbols);
+				writeElements(out, record.fieldReferences, symbols);
+				writeElements(out, record.dependencies, symbols);
+				out.writeInt(record.invariants.size());
+				for (Map.Entry<Integer, VisibilityInvariant> entry : record.invariants.entrySet()) {
+					writeElement(out, symbols.get(entry.getKey()));
+					out.writeByte(entry.getValue().getKind().ordinal());
+					out.writeUTF(entry.getValue().getScope());
+				}
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static int[] readElements(DataInputStream in, SymbolTable symbols) throws IOException {
+		final int count = in.readInt();
+		final AccessElement[] elements = new AccessElement[count];
+		for (int i = 0; i < count; i++) {
+			elements[i] = readElement(in);
+		}
+		return symbols.intern(Arrays.asList(elements));
+	}
+
+	private static AccessElement readElement(DataInputStream in) throws IOException {
+		final String typeName = in.readUTF();
+		if (in.readBoolean()) {
+			return AccessElement.member(typeName, in.readUTF());
+		} else {
+			return AccessElement.type(typeName);
+		}
+	}
+
+	private static void writeElements(DataOutputStream out, int[] elements, SymbolTable symbols) throws IOException {
+		out.writeInt(elements.length);
+		for (int element : elements) {
+			writeElement(out, symbols.get(element));
+		}
+	}
+
+	private static void writeElement(DataOutputStream out, AccessElement element) throws IOException {
+		out.writeUTF(element.getTypeName());
+		out.writeBoolean(element.getMemberKey() != null);
+		if (element.getMemberKey() != null) {
+			out.writeUTF(element.getMemberKey());
+		}
+	}
+}
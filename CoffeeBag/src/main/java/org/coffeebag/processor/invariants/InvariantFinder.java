@@ -8,6 +8,8 @@ import java.util.Objects;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 
@@ -55,9 +57,11 @@ public class InvariantFinder {
 				accessElement = AccessElement.type((TypeElement) element);
 			} else if (element.getKind().isField()) {
 				accessElement = AccessElement.field((VariableElement) element);
+			} else if (element.getKind() == ElementKind.METHOD || element.getKind() == ElementKind.CONSTRUCTOR) {
+				accessElement = AccessElement.method((ExecutableElement) element);
 			} else {
 				// Unsupported type
-				Log.i(TAG, "Ignoring element " + element.getSimpleName() + " with unsupported kind " + element.getKind());
+				Log.i(TAG, () -> "Ignoring element " + element.getSimpleName() + " with unsupported kind " + element.getKind());
 				continue;
 			}
 			final VisibilityInvariant invariant = VisibilityInvariantFactory.getInvariant(element, env);
@@ -0,0 +1,234 @@
+package org.coffeebag.processor.invariants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.coffeebag.domain.AccessElement;
+import org.coffeebag.domain.invariant.VisibilityInvariant;
+
+/**
+ * A binary hash table that maps annotated elements to the kinds and scopes of their invariants
+ *
+ * The processor writes an index of the invariants in each compilation, so that compilations that use the compiled
+ * classes as a library can check usages of them. Because {@link org.coffeebag.annotations.Access} is not retained in
+ * class files, this index is the only record of the invariants.
+ *
+ * The format is designed to be read in place from a memory-mapped file:
+ * <pre>
+ * int magic, int version, int slot count (a power of two), int entry count
+ * int[slot count] offset of the entry in each slot, or -1 if the slot is empty
+ * entries: int key hash, byte invariant kind, short key length, key (UTF-8), short scope length, scope (UTF-8)
+ * </pre>
+ * Keys are placed with linear probing.
+ */
+public class InvariantIndex {
+
+	/**
+	 * The location of the index in the class output and in library jars
+	 */
+	public static final String RESOURCE = "META-INF/coffeebag/invariants.idx";
+
+	private static final int MAGIC = 0x43424958;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int EMPTY = -1;
+
+	/**
+	 * The index contents
+	 */
+	private final ByteBuffer buffer;
+	/**
+	 * The number of slots, a power of two
+	 */
+	private final int slotCount;
+
+	/**
+	 * Creates an index that reads from a buffer
+	 *
+	 * @param buffer the buffer, positioned at the start of the index. Its position is not changed by lookups.
+	 * @throws IOException if the buffer does not contain an index in a supported format
+	 */
+	public InvariantIndex(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.slice();
+		if (this.buffer.limit() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION) {
+			throw new IOException("Not a supported invariant index");
+		}
+		slotCount = this.buffer.getInt(8);
+		if (Integer.bitCount(slotCount) != 1 || HEADER_SIZE + 4L * slotCount > this.buffer.limit()) {
+			throw new IOException("Corrupt invariant index");
+		}
+	}
+
+	/**
+	 * @return the number of invariants in this index
+	 */
+	public int size() {
+		return buffer.getInt(12);
+	}
+
+	/**
+	 * Lists the elements in this index
+	 * @return the elements, in no particular order
+	 */
+	public List<AccessElement> getElements() {
+		final List<AccessElement> elements = new ArrayList<>(size());
+		for (int slot = 0; slot < slotCount; slot++) {
+			final int offset = buffer.getInt(HEADER_SIZE + 4 * slot);
+			if (offset != EMPTY) {
+				final String key = readString(offset + 5);
+				final int separator = key.indexOf('#');
+				elements.add(separator == -1 ? AccessElement.type(key)
+						: AccessElement.member(key.substring(0, separator), key.substring(separator + 1)));
+			}
+		}
+		return elements;
+	}
+
+	/**
+	 * An invariant read from the index
+	 */
+	public static class Entry {
+		private final VisibilityInvariant.Kind kind;
+		private final String scope;
+
+		Entry(VisibilityInvariant.Kind kind, String scope) {
+			this.kind = kind;
+			this.scope = scope;
+		}
+
+		public VisibilityInvariant.Kind getKind() {
+			return kind;
+		}
+
+		public String getScope() {
+			return scope;
+		}
+	}
+
+	/**
+	 * Looks up the invariant of an element
+	 *
+	 * @param element the element
+	 * @return the kind and scope of its invariant, or null if the index does not contain the element
+	 */
+	public Entry get(AccessElement element) {
+		return get(element.getTypeName(), element.getMemberKey());
+	}
+
+	/**
+	 * Looks up the invariant of an element by its names
+	 *
+	 * @param typeName the canonical name of the type, or of the type that declares the member
+	 * @param memberKey the member key, or null for a type
+	 * @return the kind and scope of its invariant, or null if the index does not contain the element
+	 */
+	public Entry get(String typeName, String memberKey) {
+		final String key = keyOf(typeName, memberKey);
+		final int hash = key.hashCode();
+		final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < slotCount; i++) {
+			final int slot = (hash + i) & (slotCount - 1);
+			final int offset = buffer.getInt(HEADER_SIZE + 4 * slot);
+			if (offset == EMPTY) {
+				return null;
+			}
+			if (buffer.getInt(offset) == hash && keyEquals(offset + 5, keyBytes)) {
+				final VisibilityInvariant.Kind kind = VisibilityInvariant.Kind.values()[buffer.get(offset + 4)];
+				final int scopeOffset = offset + 7 + keyBytes.length;
+				return new Entry(kind, readString(scopeOffset));
+			}
+		}
+		return null;
+	}
+
+	private boolean keyEquals(int offset, byte[] keyBytes) {
+		if (buffer.getShort(offset) != keyBytes.length) {
+			return false;
+		}
+		for (int i = 0; i < keyBytes.length; i++) {
+			if (buffer.get(offset + 2 + i) != keyBytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String readString(int offset) {
+		final byte[] bytes = new byte[buffer.getShort(offset) & 0xFFFF];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(offset + 2 + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes an index
+	 *
+	 * @param invariants the invariants to write
+	 * @param out the stream to write to
+	 * @throws IOException if the index could not be written
+	 */
+	public static void write(Map<AccessElement, VisibilityInvariant> invariants, OutputStream out) throws IOException {
+		// Keep the table at most half full
+		final int slotCount = Integer.highestOneBit(Math.max(1, invariants.size()) * 2 - 1) << 1;
+		final int[] slots = new int[slotCount];
+		Arrays.fill(slots, EMPTY);
+
+		final int entriesStart = HEADER_SIZE + 4 * slotCount;
+		final ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+		final DataOutputStream entries = new DataOutputStream(entryBytes);
+		for (Map.Entry<AccessElement, VisibilityInvariant> invariant : invariants.entrySet()) {
+			final String key = keyOf(invariant.getKey());
+			final int hash = key.hashCode();
+			int slot = hash & (slotCount - 1);
+			while (slots[slot] != EMPTY) {
+				slot = (slot + 1) & (slotCount - 1);
+			}
+			slots[slot] = entriesStart + entries.size();
+
+			entries.writeInt(hash);
+			entries.writeByte(invariant.getValue().getKind().ordinal());
+			writeString(entries, key);
+			writeString(entries, invariant.getValue().getScope());
+		}
+
+		final DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(slotCount);
+		data.writeInt(invariants.size());
+		for (int offset : slots) {
+			data.writeInt(offset);
+		}
+		entryBytes.writeTo(data);
+		data.flush();
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > Short.MAX_VALUE) {
+			throw new IOException("Name too long for invariant index: " + value);
+		}
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * @return the key of an element, which distinguishes fields from nested types with the same name
+	 */
+	private static String keyOf(AccessElement element) {
+		return keyOf(element.getTypeName(), element.getMemberKey());
+	}
+
+	private static String keyOf(String typeName, String memberKey) {
+		return memberKey != null ? typeName + '#' + memberKey : typeName;
+	}
+}
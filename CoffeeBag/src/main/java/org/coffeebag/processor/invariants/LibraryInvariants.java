@@ -0,0 +1,225 @@
+package org.coffeebag.processor.invariants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.List;
+
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import org.coffeebag.domain.AccessElement;
+import org.coffeebag.domain.SymbolMap;
+import org.coffeebag.domain.SymbolTable;
+import org.coffeebag.domain.invariant.VisibilityInvariant;
+import org.coffeebag.domain.invariant.VisibilityInvariantFactory;
+import org.coffeebag.log.Log;
+
+/**
+ * Finds the invariants of elements in libraries, using the {@link InvariantIndex}es on the classpath
+ *
+ * The indexes are found the first time that an invariant is looked up, on the class path of the compilation as the
+ * file manager sees it. Index files in directories are memory-mapped, and indexes in jar files are read into memory.
+ */
+public class LibraryInvariants {
+	private static final String TAG = LibraryInvariants.class.getSimpleName();
+
+	/**
+	 * The file manager of the compilation, or null if it is not known
+	 */
+	private final JavaFileManager fileManager;
+	/**
+	 * The class loader to find indexes with if the file manager is not known
+	 */
+	private final ClassLoader classLoader;
+	/**
+	 * The table that contains the elements looked up
+	 */
+	private final SymbolTable symbols;
+	/**
+	 * The indexes on the classpath, or null if they have not been found yet
+	 */
+	private List<InvariantIndex> indexes;
+	/**
+	 * The invariants that have been looked up, by element ID. Elements that have no invariant map to null.
+	 */
+	private final SymbolMap<VisibilityInvariant> cache;
+	/**
+	 * The number of lookups
+	 */
+	private long lookups;
+	/**
+	 * The number of lookups answered from the cache
+	 */
+	private long hits;
+
+	/**
+	 * Creates an object that finds indexes on the class path of a compilation
+	 * @param fileManager the file manager of the compilation, or null to find indexes with the class loader
+	 * @param classLoader the class loader whose resources include the compilation classpath, used if the file
+	 * manager is not known
+	 * @param symbols the table that contains the elements to look up
+	 */
+	public LibraryInvariants(JavaFileManager fileManager, ClassLoader classLoader, SymbolTable symbols) {
+		this.symbols = symbols;
+		this.fileManager = fileManager;
+		this.classLoader = classLoader;
+		cache = new SymbolMap<>();
+	}
+
+	/**
+	 * Returns the invariant of an element in a library
+	 * @param element the ID of the element
+	 * @return the invariant, or null if no index contains the element
+	 */
+	public VisibilityInvariant get(int element) {
+		lookups++;
+		if (cache.containsKey(element)) {
+			hits++;
+			return cache.get(element);
+		}
+		VisibilityInvariant invariant = null;
+		for (InvariantIndex index : getIndexes()) {
+			final InvariantIndex.Entry entry = index.get(symbols.getTypeName(element), symbols.getMemberKey(element));
+			if (entry != null) {
+				invariant = VisibilityInvariantFactory.create(entry.getKind(), entry.getScope());
+				break;
+			}
+		}
+		cache.put(element, invariant);
+		return invariant;
+	}
+
+	/**
+	 * Lists the elements that have invariants in libraries
+	 * @return the elements
+	 */
+	public List<AccessElement> getElements() {
+		final List<AccessElement> elements = new ArrayList<>();
+		for (InvariantIndex index : getIndexes()) {
+			elements.addAll(index.getElements());
+		}
+		return elements;
+	}
+
+	/**
+	 * @return the number of lookups done with this object
+	 */
+	public long getLookups() {
+		return lookups;
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	private List<InvariantIndex> getIndexes() {
+		if (indexes == null) {
+			indexes = findIndexes();
+		}
+		return indexes;
+	}
+
+	private List<InvariantIndex> findIndexes() {
+		if (fileManager != null) {
+			return findIndexes(fileManager);
+		}
+		if (classLoader == null) {
+			return Collections.emptyList();
+		}
+		final List<InvariantIndex> found = new ArrayList<>();
+		try {
+			final Enumeration<URL> resources = classLoader.getResources(InvariantIndex.RESOURCE);
+			while (resources.hasMoreElements()) {
+				final URL resource = resources.nextElement();
+				try {
+					final InvariantIndex index = new InvariantIndex(read(resource));
+					Log.d(TAG, () -> "Loaded " + index.size() + " invariants from " + resource);
+					found.add(index);
+				} catch (IOException | URISyntaxException e) {
+					Log.i(TAG, () -> "Ignoring invariant index " + resource + ": " + e);
+				}
+			}
+		} catch (IOException e) {
+			Log.i(TAG, () -> "Failed to list invariant indexes: " + e);
+		}
+		return found;
+	}
+
+	private static List<InvariantIndex> findIndexes(JavaFileManager fileManager) {
+		final String packageName = InvariantIndex.RESOURCE.substring(0, InvariantIndex.RESOURCE.lastIndexOf('/'))
+				.replace('/', '.');
+		final List<InvariantIndex> found = new ArrayList<>();
+		try {
+			for (JavaFileObject file : fileManager.list(StandardLocation.CLASS_PATH, packageName,
+					EnumSet.of(JavaFileObject.Kind.OTHER), false)) {
+				final URI uri = file.toUri();
+				if (!uri.toString().endsWith(InvariantIndex.RESOURCE)) {
+					continue;
+				}
+				try {
+					final InvariantIndex index = new InvariantIndex(read(file));
+					Log.d(TAG, () -> "Loaded " + index.size() + " invariants from " + uri);
+					found.add(index);
+				} catch (IOException | RuntimeException e) {
+					Log.i(TAG, () -> "Ignoring invariant index " + uri + ": " + e);
+				}
+			}
+		} catch (IOException e) {
+			Log.i(TAG, () -> "Failed to list invariant indexes: " + e);
+		}
+		return found;
+	}
+
+	private static ByteBuffer read(JavaFileObject file) throws IOException {
+		final URI uri = file.toUri();
+		if ("file".equals(uri.getScheme())) {
+			return map(Paths.get(uri));
+		}
+		try (InputStream in = file.openInputStream()) {
+			return readFully(in);
+		}
+	}
+
+	private static ByteBuffer read(URL resource) throws IOException, URISyntaxException {
+		if ("file".equals(resource.getProtocol())) {
+			return map(Paths.get(resource.toURI()));
+		}
+		try (InputStream in = resource.openStream()) {
+			return readFully(in);
+		}
+	}
+
+	private static ByteBuffer map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// The mapping stays valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	private static ByteBuffer readFully(InputStream in) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, count);
+		}
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+}
@@ -0,0 +1,231 @@
+package org.coffeebag.processor.references;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import javax.lang.model.element.Name;
+
+import org.coffeebag.domain.AccessElement;
+
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.ParameterizedTypeTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreeScanner;
+
+/**
+ * Decides cheaply if a compilation unit can refer to an annotated element
+ *
+ * The filter holds the simple names of annotated types and the names of annotated fields and methods. Every
+ * reference that {@link ReferenceFinder} finds is written in the source as an identifier that ends with the name of
+ * its target (the class name for a constructor), so a compilation unit whose identifiers include none of these names
+ * cannot refer to an annotated element. The exception is super(...), which calls a constructor of the superclass
+ * that is named in the extends clause of the same compilation unit.
+ */
+public class AnnotatedNameFilter {
+
+	/**
+	 * The simple names of annotated types and the names of annotated fields and methods
+	 */
+	private final Set<String> names;
+
+	/**
+	 * Creates an empty filter
+	 */
+	public AnnotatedNameFilter() {
+		names = new HashSet<>();
+	}
+
+	/**
+	 * Adds the name of an annotated element
+	 * @param element the element
+	 * @return the name, or null if the filter already contained it
+	 */
+	public String add(AccessElement element) {
+		final String name = getName(element);
+		return names.add(name) ? name : null;
+	}
+
+	/**
+	 * @param element an element or a reference to one
+	 * @return the identifier that a reference to the element ends with in the source
+	 */
+	public static String getName(AccessElement element) {
+		if (element.getMemberKey() != null && !AccessElement.CONSTRUCTOR_NAME.equals(element.getMemberName())) {
+			return element.getMemberName();
+		}
+		// Constructors are called with the simple name of their class
+		final String typeName = element.getTypeName();
+		return typeName.substring(typeName.lastIndexOf('.') + 1);
+	}
+
+	/**
+	 * Adds the names of annotated elements
+	 * @param elements the elements
+	 * @return the names that the filter did not already contain
+	 */
+	public Set<String> addAll(Collection<AccessElement> elements) {
+		final Set<String> added = new HashSet<>();
+		for (AccessElement element : elements) {
+			final String name = add(element);
+			if (name != null) {
+				added.add(name);
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * @param identifiers the identifiers in a compilation unit
+	 * @return true if the compilation unit may refer to an annotated element
+	 */
+	public boolean mayRefer(Set<String> identifiers) {
+		if (identifiers.size() < names.size()) {
+			for (String identifier : identifiers) {
+				if (names.contains(identifier)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		for (String name : names) {
+			if (identifiers.contains(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the method bodies in a compilation unit that cannot refer to an annotated element
+	 *
+	 * A body is prunable if none of the identifiers in it, including those in local and anonymous classes and
+	 * lambdas, is the name of an annotated element. Like {@link #getIdentifiers(CompilationUnitTree)}, this only
+	 * walks the tree, so it costs much less than resolving the references in the bodies.
+	 *
+	 * @param compilationUnit the compilation unit
+	 * @return the prunable bodies, compared by identity
+	 */
+	public Set<Tree> getPrunableBodies(CompilationUnitTree compilationUnit) {
+		final Set<Tree> prunable = Collections.newSetFromMap(new IdentityHashMap<>());
+		compilationUnit.accept(new TreeScanner<Void, Void>() {
+			/**
+			 * The number of method bodies that enclose the tree being visited
+			 */
+			private int openBodies;
+			/**
+			 * The number of enclosing method bodies, outermost first, that mention an annotated name
+			 */
+			private int matchedBodies;
+			/**
+			 * The simple names of the superclasses of the enclosing classes, innermost first, which super refers to.
+			 * Classes that do not declare a superclass have an empty name.
+			 */
+			private final Deque<String> superclasses = new ArrayDeque<>();
+
+			@Override
+			public Void visitClass(ClassTree node, Void p) {
+				final Tree extendsClause = node.getExtendsClause();
+				superclasses.push(extendsClause == null ? "" : getSimpleName(extendsClause));
+				super.visitClass(node, p);
+				superclasses.pop();
+				return null;
+			}
+
+			@Override
+			public Void visitMethod(MethodTree node, Void p) {
+				final BlockTree body = node.getBody();
+				if (body == null) {
+					return super.visitMethod(node, p);
+				}
+				// The signature is always scanned, so only the body is tested
+				scan(node.getModifiers(), p);
+				scan(node.getReturnType(), p);
+				scan(node.getTypeParameters(), p);
+				scan(node.getParameters(), p);
+				scan(node.getReceiverParameter(), p);
+				scan(node.getThrows(), p);
+				openBodies++;
+				scan(body, p);
+				if (matchedBodies < openBodies) {
+					prunable.add(body);
+				}
+				openBodies--;
+				matchedBodies = Math.min(matchedBodies, openBodies);
+				return null;
+			}
+
+			@Override
+			public Void visitIdentifier(IdentifierTree node, Void p) {
+				match(node.getName());
+				return null;
+			}
+
+			@Override
+			public Void visitMemberSelect(MemberSelectTree node, Void p) {
+				match(node.getIdentifier());
+				return super.visitMemberSelect(node, p);
+			}
+
+			private void match(Name name) {
+				final String identifier = name.contentEquals("super") && !superclasses.isEmpty()
+						? superclasses.getFirst() : name.toString();
+				if (matchedBodies < openBodies && names.contains(identifier)) {
+					// A body that contains the name also contains it through all the bodies around it
+					matchedBodies = openBodies;
+				}
+			}
+		}, null);
+		return prunable;
+	}
+
+	/**
+	 * @param type a type tree
+	 * @return the simple name of the type, without type arguments
+	 */
+	private static String getSimpleName(Tree type) {
+		switch (type.getKind()) {
+		case MEMBER_SELECT:
+			return ((MemberSelectTree) type).getIdentifier().toString();
+		case PARAMETERIZED_TYPE:
+			return getSimpleName(((ParameterizedTypeTree) type).getType());
+		default:
+			return type.toString();
+		}
+	}
+
+	/**
+	 * Lists the identifiers in a compilation unit, including the last part of each qualified name
+	 *
+	 * This only walks the tree and does not resolve any names.
+	 *
+	 * @param compilationUnit the compilation unit
+	 * @return the identifiers
+	 */
+	public static Set<String> getIdentifiers(CompilationUnitTree compilationUnit) {
+		final Set<String> identifiers = new HashSet<>();
+		compilationUnit.accept(new TreeScanner<Void, Void>() {
+			@Override
+			public Void visitIdentifier(IdentifierTree node, Void p) {
+				identifiers.add(node.getName().toString());
+				return null;
+			}
+
+			@Override
+			public Void visitMemberSelect(MemberSelectTree node, Void p) {
+				identifiers.add(node.getIdentifier().toString());
+				return super.visitMemberSelect(node, p);
+			}
+		}, null);
+		return identifiers;
+	}
+}
@@ -0,0 +1,561 @@
+package org.coffeebag.processor.references;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.lang.model.SourceVersion;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileManager.Location;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+import org.coffeebag.log.Log;
+
+/**
+ * Lists the top-level classes in the packages of the class path without completing their symbols
+ *
+ * Jar files on the class path are listed by reading their central directories. Class directories, and the platform
+ * classes of the compilation, are listed one package at a time when they are first used, the platform classes through
+ * the file manager of the compilation.
+ *
+ * The listings of jar files are cached in a file, keyed by path, size and modification time, so that later
+ * compilations only read the jars that changed.
+ */
+public class ClasspathIndex {
+	private static final String TAG = ClasspathIndex.class.getSimpleName();
+
+	/**
+	 * The first bytes of a cache file, "CBCI"
+	 */
+	private static final int MAGIC = 0x43424349;
+	private static final int VERSION = 1;
+
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+	private static final int CENTRAL_DIRECTORY_ENTRY_SIZE = 46;
+	private static final int MAX_COMMENT_SIZE = 0xffff;
+
+	/**
+	 * The listing of a jar file
+	 */
+	private static class Listing {
+		private final long size;
+		private final long modified;
+		/**
+		 * Maps from package names to the simple names of their top-level classes
+		 */
+		private final Map<String, Set<String>> packages;
+		/**
+		 * When this listing was last used from {@link #SHARED_LISTINGS}, as a value of {@link #USE_CLOCK}
+		 */
+		private volatile long lastUsed;
+
+		Listing(long size, long modified, Map<String, Set<String>> packages) {
+			this.size = size;
+			this.modified = modified;
+			this.packages = packages;
+		}
+	}
+
+	/**
+	 * The most listings that are kept in memory between compilations
+	 */
+	private static final int MAX_SHARED_LISTINGS = 256;
+
+	/**
+	 * The recently used listings in this virtual machine, by absolute path, shared by compilations that run in
+	 * parallel in one compiler daemon. A long-running daemon sees many versions of the same jars, so the least
+	 * recently used listings are evicted; they are still in the cache file. Listings are not modified after they
+	 * are created, except for the time that they were last used, so reads do not lock or reorder the map.
+	 */
+	private static final ConcurrentMap<String, Listing> SHARED_LISTINGS = new ConcurrentHashMap<>();
+	/**
+	 * Counts uses of shared listings, to find the least recently used one
+	 */
+	private static final AtomicLong USE_CLOCK = new AtomicLong();
+
+	/**
+	 * Maps from package names to the simple names of the top-level classes in the listed jars
+	 */
+	private final Map<String, Set<String>> packages;
+	/**
+	 * The class directories on the class path
+	 */
+	private final List<Path> directories;
+	/**
+	 * The file manager that lists the other locations
+	 */
+	private final JavaFileManager fileManager;
+	/**
+	 * The locations that are listed through the file manager
+	 */
+	private final List<Location> locations;
+	/**
+	 * Maps from package names to the simple names of the top-level classes in the class directories and the locations
+	 * of the file manager
+	 */
+	private final Map<String, Set<String>> listedPackages;
+
+	private ClasspathIndex(Map<String, Set<String>> packages, List<Path> directories, JavaFileManager fileManager,
+			List<Location> locations) {
+		this.packages = packages;
+		this.directories = directories;
+		this.fileManager = fileManager;
+		this.locations = locations;
+		this.listedPackages = new HashMap<>();
+	}
+
+	/**
+	 * Creates an index of the class path of a compilation
+	 *
+	 * @param fileManager the file manager of the compilation
+	 * @param sourceVersion the source version of the compilation
+	 * @param cacheFile the file to cache jar listings in
+	 * @return the index
+	 */
+	public static ClasspathIndex forCompilation(JavaFileManager fileManager, SourceVersion sourceVersion,
+			Path cacheFile) {
+		final List<Path> entries = new ArrayList<>();
+		final List<Location> locations = new ArrayList<>();
+		// The platform classes are whatever the compilation reads them from: the system modules for Java 9 and
+		// later, or else the boot class path, which may be a runtime image, -bootclasspath or the ct.sym of --release
+		final boolean modules = sourceVersion.compareTo(SourceVersion.RELEASE_8) > 0;
+		if (!(modules && addSystemModules(fileManager, locations))
+				&& fileManager.hasLocation(StandardLocation.PLATFORM_CLASS_PATH)) {
+			locations.add(StandardLocation.PLATFORM_CLASS_PATH);
+		}
+		if (!addFiles(fileManager, StandardLocation.CLASS_PATH, entries)) {
+			locations.add(StandardLocation.CLASS_PATH);
+		}
+		Log.d(TAG, () -> "Listing " + locations + " through the file manager");
+		return build(entries, fileManager, locations, cacheFile);
+	}
+
+	/**
+	 * Adds the files of a location to a list if the file manager knows them as files
+	 * @return true if the files were added, false if the location must be listed through the file manager
+	 */
+	private static boolean addFiles(JavaFileManager fileManager, Location location, List<Path> entries) {
+		if (!(fileManager instanceof StandardJavaFileManager)) {
+			return false;
+		}
+		final List<Path> files = new ArrayList<>();
+		try {
+			final Iterable<? extends File> locationFiles = ((StandardJavaFileManager) fileManager)
+					.getLocation(location);
+			if (locationFiles == null) {
+				return false;
+			}
+			locationFiles.forEach(file -> files.add(file.toPath()));
+		} catch (RuntimeException e) {
+			// Paths that are not in the default file system
+			Log.d(TAG, () -> "Listing " + location + " through the file manager: " + e);
+			return false;
+		}
+		entries.addAll(files);
+		return true;
+	}
+
+	/**
+	 * Adds the locations of the system modules of a compilation for Java 9 and later
+	 * @return true if the locations were added, false if the compilation has no system modules
+	 */
+	private static boolean addSystemModules(JavaFileManager fileManager, List<Location> locations) {
+		final Location systemModules = systemModulesLocation();
+		if (systemModules == null || !fileManager.hasLocation(systemModules)) {
+			return false;
+		}
+		try {
+			// JavaFileManager.listLocationsForModules is not part of Java 8
+			final Method listLocations = JavaFileManager.class.getMethod("listLocationsForModules", Location.class);
+			@SuppressWarnings("unchecked")
+			final Iterable<Set<Location>> modules = (Iterable<Set<Location>>) listLocations.invoke(fileManager,
+					systemModules);
+			for (Set<Location> moduleLocations : modules) {
+				locations.addAll(moduleLocations);
+			}
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			Log.i(TAG, "Failed to list the system modules: " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * @return the location of the system modules, or null on Java 8
+	 */
+	private static Location systemModulesLocation() {
+		try {
+			return StandardLocation.valueOf("SYSTEM_MODULES");
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Creates an index
+	 * @param classpath the jar files and class directories to index
+	 * @param fileManager the file manager that lists the other locations
+	 * @param locations the locations to list through the file manager
+	 * @param cacheFile the file to cache jar listings in
+	 * @return the index
+	 */
+	private static ClasspathIndex build(List<Path> classpath, JavaFileManager fileManager, List<Location> locations,
+			Path cacheFile) {
+		final Map<String, Listing> cache = readCache(cacheFile);
+		final Map<String, Listing> listings = new LinkedHashMap<>();
+		final List<Path> directories = new ArrayList<>();
+		boolean changed = false;
+
+		final List<Path> jars = new ArrayList<>();
+		for (Path entry : classpath) {
+			if (Files.isDirectory(entry)) {
+				directories.add(entry);
+			} else if (Files.isRegularFile(entry)) {
+				jars.add(entry);
+			}
+		}
+		for (Path jar : jars) {
+			final String key = jar.toAbsolutePath().toString();
+			try {
+				final BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+				final long size = attributes.size();
+				final long modified = attributes.lastModifiedTime().toMillis();
+				Listing listing = getSharedListing(key);
+				if (!isCurrent(listing, size, modified)) {
+					listing = cache.get(key);
+					if (!isCurrent(listing, size, modified)) {
+						Log.d(TAG, () -> "Listing " + jar);
+						listing = new Listing(size, modified, listJar(jar));
+					}
+					putSharedListing(key, listing);
+				}
+				if (cache.get(key) != listing) {
+					changed = true;
+				}
+				listings.put(key, listing);
+			} catch (IOException e) {
+				Log.i(TAG, "Failed to list " + jar + ": " + e);
+			}
+		}
+		// Other compilations, such as other modules of a project, may share the cache file
+		for (Map.Entry<String, Listing> entry : cache.entrySet()) {
+			if (listings.containsKey(entry.getKey())) {
+				continue;
+			}
+			if (Files.exists(Paths.get(entry.getKey()))) {
+				listings.put(entry.getKey(), entry.getValue());
+			} else {
+				changed = true;
+			}
+		}
+		if (changed) {
+			writeCache(cacheFile, listings);
+		}
+
+		final Map<String, Set<String>> packages = new HashMap<>();
+		for (Path jar : jars) {
+			final Listing listing = listings.get(jar.toAbsolutePath().toString());
+			if (listing == null) {
+				continue;
+			}
+			for (Map.Entry<String, Set<String>> entry : listing.packages.entrySet()) {
+				packages.computeIfAbsent(entry.getKey(), name -> new HashSet<>()).addAll(entry.getValue());
+			}
+		}
+		return new ClasspathIndex(packages, directories, fileManager, locations);
+	}
+
+	/**
+	 * @param key the absolute path of a jar
+	 * @return the shared listing of the jar, or null if there is none
+	 */
+	private static Listing getSharedListing(String key) {
+		final Listing listing = SHARED_LISTINGS.get(key);
+		if (listing != null) {
+			listing.lastUsed = USE_CLOCK.incrementAndGet();
+		}
+		return listing;
+	}
+
+	/**
+	 * Shares the listing of a jar, evicting the least recently used listings if there are too many
+	 * @param key the absolute path of the jar
+	 * @param listing the listing
+	 */
+	private static void putSharedListing(String key, Listing listing) {
+		listing.lastUsed = USE_CLOCK.incrementAndGet();
+		SHARED_LISTINGS.put(key, listing);
+		while (SHARED_LISTINGS.size() > MAX_SHARED_LISTINGS) {
+			Map.Entry<String, Listing> eldest = null;
+			for (Map.Entry<String, Listing> entry : SHARED_LISTINGS.entrySet()) {
+				if (eldest == null || entry.getValue().lastUsed < eldest.getValue().lastUsed) {
+					eldest = entry;
+				}
+			}
+			if (eldest != null) {
+				SHARED_LISTINGS.remove(eldest.getKey(), eldest.getValue());
+			}
+		}
+	}
+
+	private static boolean isCurrent(Listing listing, long size, long modified) {
+		return listing != null && listing.size == size && listing.modified == modified;
+	}
+
+	/**
+	 * @param packageName the name of a package
+	 * @return true if a jar, a class directory or a location of the file manager contains a class in the package
+	 */
+	public boolean containsPackage(String packageName) {
+		return packages.containsKey(packageName) || !listPackage(packageName).isEmpty();
+	}
+
+	/**
+	 * @param packageName the name of a package
+	 * @param simpleName the simple name of a top-level class
+	 * @return true if a jar, a class directory or a location of the file manager contains the class
+	 */
+	public boolean contains(String packageName, String simpleName) {
+		final Set<String> names = packages.get(packageName);
+		return (names != null && names.contains(simpleName)) || listPackage(packageName).contains(simpleName);
+	}
+
+	/**
+	 * Lists a package in the class directories and the locations of the file manager
+	 */
+	private Set<String> listPackage(String packageName) {
+		if (directories.isEmpty() && locations.isEmpty()) {
+			return Collections.emptySet();
+		}
+		return listedPackages.computeIfAbsent(packageName, name -> {
+			final Set<String> names = new HashSet<>();
+			for (Path directory : directories) {
+				final Path packageDirectory = name.isEmpty() ? directory
+						: directory.resolve(name.replace('.', File.separatorChar));
+				if (!Files.isDirectory(packageDirectory)) {
+					continue;
+				}
+				try (DirectoryStream<Path> files = Files.newDirectoryStream(packageDirectory, "*.class")) {
+					for (Path file : files) {
+						addClass(names, file.getFileName().toString());
+					}
+				} catch (IOException e) {
+					Log.i(TAG, "Failed to list " + packageDirectory + ": " + e);
+				}
+			}
+			for (Location location : locations) {
+				try {
+					for (JavaFileObject file : fileManager.list(location, name,
+							EnumSet.of(JavaFileObject.Kind.CLASS), false)) {
+						final String binaryName = fileManager.inferBinaryName(location, file);
+						if (binaryName != null) {
+							addName(names, binaryName.substring(binaryName.lastIndexOf('.') + 1));
+						}
+					}
+				} catch (IOException | RuntimeException e) {
+					Log.i(TAG, "Failed to list " + name + " in " + location + ": " + e);
+				}
+			}
+			return names.isEmpty() ? Collections.emptySet() : names;
+		});
+	}
+
+	/**
+	 * Lists the classes in a jar file from its central directory
+	 */
+	static Map<String, Set<String>> listJar(Path jar) throws IOException {
+		final Map<String, Set<String>> packages = new HashMap<>();
+		try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+			final long fileSize = channel.size();
+			final int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+			final MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, fileSize - tailSize, tailSize);
+			tail.order(ByteOrder.LITTLE_ENDIAN);
+			int end = -1;
+			for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+				if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+					end = i;
+					break;
+				}
+			}
+			if (end == -1) {
+				throw new IOException("No central directory in " + jar);
+			}
+			final int entryCount = tail.getShort(end + 10) & 0xffff;
+			final long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+			if (entryCount == 0xffff || directorySize == 0xffffffffL) {
+				// A Zip64 file, which ZipFile can read
+				return listZip64(jar);
+			}
+			// Data before the archive, such as a launcher script, moves the central directory from its recorded offset
+			final long directoryStart = fileSize - tailSize + end - directorySize;
+			final MappedByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryStart,
+					directorySize);
+			directory.order(ByteOrder.LITTLE_ENDIAN);
+			int position = 0;
+			for (int i = 0; i < entryCount; i++) {
+				if (directory.getInt(position) != CENTRAL_DIRECTORY_ENTRY) {
+					throw new IOException("Corrupt central directory in " + jar);
+				}
+				final int nameLength = directory.getShort(position + 28) & 0xffff;
+				final int extraLength = directory.getShort(position + 30) & 0xffff;
+				final int commentLength = directory.getShort(position + 32) & 0xffff;
+				final byte[] name = new byte[nameLength];
+				final ByteBuffer nameBuffer = directory.duplicate();
+				nameBuffer.position(position + CENTRAL_DIRECTORY_ENTRY_SIZE);
+				nameBuffer.get(name);
+				addEntry(packages, new String(name, StandardCharsets.UTF_8));
+				position += CENTRAL_DIRECTORY_ENTRY_SIZE + nameLength + extraLength + commentLength;
+			}
+		}
+		return packages;
+	}
+
+	private static Map<String, Set<String>> listZip64(Path jar) throws IOException {
+		final Map<String, Set<String>> packages = new HashMap<>();
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			final Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				addEntry(packages, entries.nextElement().getName());
+			}
+		}
+		return packages;
+	}
+
+	/**
+	 * Adds a jar entry to a listing if it is a top-level class
+	 */
+	private static void addEntry(Map<String, Set<String>> packages, String entryName) {
+		if (!entryName.endsWith(".class") || entryName.startsWith("META-INF/")) {
+			return;
+		}
+		final int slash = entryName.lastIndexOf('/');
+		final String packageName = slash == -1 ? "" : entryName.substring(0, slash).replace('/', '.');
+		final Set<String> names = packages.computeIfAbsent(packageName, name -> new HashSet<>());
+		addClass(names, entryName.substring(slash + 1));
+		if (names.isEmpty()) {
+			packages.remove(packageName);
+		}
+	}
+
+	/**
+	 * Adds the simple name of a class file to a set if it is a top-level class
+	 */
+	private static void addClass(Set<String> names, String fileName) {
+		addName(names, fileName.substring(0, fileName.length() - ".class".length()));
+	}
+
+	/**
+	 * Adds the simple binary name of a class to a set if it is a top-level class
+	 */
+	private static void addName(Set<String> names, String name) {
+		// Nested classes are not listed, because they are found through their outer classes
+		if (name.indexOf('$') == -1 && !name.equals("package-info") && !name.equals("module-info")) {
+			names.add(name);
+		}
+	}
+
+	private static Map<String, Listing> readCache(Path file) {
+		final Map<String, Listing> cache = new HashMap<>();
+		if (!Files.isRegularFile(file)) {
+			return cache;
+		}
+		try (InputStream stream = Files.newInputStream(file);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				Log.i(TAG, "Ignoring class path index " + file + " with unknown format");
+				return cache;
+			}
+			final int listingCount = in.readInt();
+			for (int i = 0; i < listingCount; i++) {
+				final String key = in.readUTF();
+				final long size = in.readLong();
+				final long modified = in.readLong();
+				final int packageCount = in.readInt();
+				final Map<String, Set<String>> packages = new HashMap<>(packageCount * 2);
+				for (int j = 0; j < packageCount; j++) {
+					final String packageName = in.readUTF();
+					final int nameCount = in.readInt();
+					final Set<String> names = new HashSet<>(nameCount * 2);
+					for (int k = 0; k < nameCount; k++) {
+						names.add(in.readUTF());
+					}
+					packages.put(packageName, names);
+				}
+				cache.put(key, new Listing(size, modified, packages));
+			}
+		} catch (IOException e) {
+			Log.i(TAG, "Failed to read class path index " + file + ": " + e);
+			cache.clear();
+		}
+		return cache;
+	}
+
+	private static void writeCache(Path file, Map<String, Listing> listings) {
+		try {
+			final Path parent = file.toAbsolutePath().getParent();
+			Files.createDirectories(parent);
+			final Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+			try (OutputStream stream = Files.newOutputStream(temporary);
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(listings.size());
+				for (Map.Entry<String, Listing> entry : listings.entrySet()) {
+					final Listing listing = entry.getValue();
+					out.writeUTF(entry.getKey());
+					out.writeLong(listing.size);
+					out.writeLong(listing.modified);
+					out.writeInt(listing.packages.size());
+					for (Map.Entry<String, Set<String>> packageEntry : listing.packages.entrySet()) {
+						out.writeUTF(packageEntry.getKey());
+						out.writeInt(packageEntry.getValue().size());
+						for (String name : packageEntry.getValue()) {
+							out.writeUTF(name);
+						}
+					}
+				}
+			}
+			// Another compilation reading the cache sees either the old or the new version
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Log.i(TAG, "Failed to write class path index " + file + ": " + e);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package org.coffeebag.processor.references;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+
+import org.coffeebag.log.Log;
+
+/**
+ * Indexes the types that packages and classes contain by their simple names
+ *
+ * One index is shared by all the {@link TypeResolver}s of a compilation. The members of a package or class are
+ * listed the first time that it is used as a scope, and later lookups in that scope are hash lookups.
+ *
+ * Listing a package through the processing API completes the symbols of all its classes. With a
+ * {@link ClasspathIndex}, packages on the class path are looked up in the index and in the types declared in the
+ * sources of the compilation instead.
+ */
+public class PackageIndex {
+	private static final String TAG = PackageIndex.class.getSimpleName();
+
+	/**
+	 * The processing environment
+	 */
+	private final ProcessingEnvironment env;
+
+	/**
+	 * Maps from the name of a package or outer class to a map from the simple names of the types directly in it
+	 * to their canonical names
+	 */
+	private final Map<String, Map<String, String>> scopes;
+	/**
+	 * The index of the class path, or null to list packages through the processing API
+	 */
+	private ClasspathIndex classpathIndex;
+	/**
+	 * The canonical names of the top-level types declared in the sources of the compilation
+	 */
+	private final Set<String> sourceTypes;
+	/**
+	 * The number of lookups
+	 */
+	private long lookups;
+	/**
+	 * The number of lookups in scopes that were already indexed
+	 */
+	private long hits;
+
+	/**
+	 * Creates an empty index
+	 * @param env the processing environment
+	 */
+	public PackageIndex(ProcessingEnvironment env) {
+		Objects.requireNonNull(env);
+		this.env = env;
+		this.scopes = new HashMap<>();
+		this.sourceTypes = new HashSet<>();
+	}
+
+	/**
+	 * Sets the index used to look up types in packages on the class path
+	 * @param classpathIndex the index, or null to list packages through the processing API
+	 */
+	public void setClasspathIndex(ClasspathIndex classpathIndex) {
+		this.classpathIndex = classpathIndex;
+	}
+
+	/**
+	 * Records a top-level type declared in the sources of the compilation
+	 * @param canonicalName the canonical name of the type
+	 */
+	public void addSourceType(String canonicalName) {
+		sourceTypes.add(canonicalName);
+	}
+
+	/**
+	 * Looks up a type in a package or class
+	 *
+	 * @param scope the name of the package or outer class in which to look for the type
+	 * @param simpleName the simple name of the type
+	 * @return the canonical name of the type, or null if the scope does not contain a type with this name
+	 */
+	public String resolve(String scope, String simpleName) {
+		lookups++;
+		if (classpathIndex != null && classpathIndex.containsPackage(scope)) {
+			hits++;
+			final String canonicalName = scope + "." + simpleName;
+			if (classpathIndex.contains(scope, simpleName) || sourceTypes.contains(canonicalName)) {
+				return canonicalName;
+			}
+			return null;
+		}
+		Map<String, String> members = scopes.get(scope);
+		if (members != null) {
+			hits++;
+		} else {
+			members = listMembers(scope);
+			scopes.put(scope, members);
+		}
+		return members.get(simpleName);
+	}
+
+	/**
+	 * @return the number of lookups done with this index
+	 */
+	public long getLookups() {
+		return lookups;
+	}
+
+	/**
+	 * @return the number of lookups in scopes that were already indexed
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Discards the index of a scope, so that it will be listed again the next time it is used
+	 *
+	 * This must be called when types are added to the scope, for example in a later processing round.
+	 *
+	 * @param scope the name of a package or outer class
+	 */
+	public void invalidate(String scope) {
+		scopes.remove(scope);
+	}
+
+	/**
+	 * Lists the types directly in a package or class
+	 *
+	 * @param scope the name of the package or outer class
+	 * @return a map from simple names to canonical names
+	 */
+	private Map<String, String> listMembers(String scope) {
+		Log.d(TAG, () -> "Indexing scope " + scope);
+		final Map<String, String> members = new HashMap<>();
+		final PackageElement packageElement = env.getElementUtils().getPackageElement(scope);
+		if (packageElement != null) {
+			addTypes(packageElement, members);
+		}
+		final TypeElement typeElement = env.getElementUtils().getTypeElement(scope);
+		if (typeElement != null) {
+			addTypes(typeElement, members);
+		}
+		if (members.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		return members;
+	}
+
+	/**
+	 * Adds the types directly enclosed by an element to a map
+	 *
+	 * Types already in the map are not replaced, so a package takes precedence over a class with the same name.
+	 *
+	 * @param enclosing the package or class
+	 * @param members the map from simple names to canonical names to add to
+	 */
+	private static void addTypes(Element enclosing, Map<String, String> members) {
+		for (Element inner : enclosing.getEnclosedElements()) {
+			switch (inner.getKind()) {
+			// Intentional fallthrough
+			case CLASS:
+			case ENUM:
+			case INTERFACE:
+				members.putIfAbsent(inner.getSimpleName().toString(),
+						((TypeElement) inner).getQualifiedName().toString());
+				break;
+			default:
+				break;
+			}
+		}
+	}
+}
@@ -1,8 +1,10 @@
 package org.coffeebag.processor.references;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.processing.ProcessingEnvironment;
@@ -22,12 +24,13 @@ import org.coffeebag.domain.AccessElement;
 import org.coffeebag.log.Log;
 
 import com.sun.source.tree.CompilationUnitTree;
-import com.sun.source.util.TreePath;
+import com.sun.source.tree.Tree;
 import com.sun.source.util.Trees;
 
 /**
- * Finds the classes that a language element refers to
+ * Finds the classes and fields that the types declared in a compilation unit refer to
  *
+ * The compilation unit is scanned once, no matter how many types it declares.
  */
 public class ReferenceFinder {
 	private static final String TAG = ReferenceFinder.class.getSimpleName();
@@ -41,69 +44,133 @@ public class ReferenceFinder {
 			throw new IllegalStateException("Attempted to generate Type AccesElement from non-type element");
 		}
 	}
-	
+
 	/**
 	 * The processing environment
 	 */
 	private final ProcessingEnvironment mEnv;
-	
+
 	/**
-	 * The types that the code refers to
+	 * The types that each top-level type refers to
 	 */
-	private final Set<AccessElement> mTypes;
-	
+	private final Map<Element, Set<AccessElement>> mTypes;
+
+	/**
+	 * The fields that each top-level type refers to
+	 */
+	private final Map<Element, Set<AccessElement>> mFields;
+
+	/**
+	 * The types whose declarations the references of each top-level type depend on
+	 */
+	private final Map<Element, Set<String>> mDependencies;
+
 	/**
 	 * The trees object associated with the environment
 	 */
 	private final Trees mTrees;
-	
+
 	/**
-	 * Creates a reference finder that will analyze the provided source
-	 * @param source the source to analyze
+	 * Creates a reference finder that will analyze a compilation unit
+	 * @param env the processing environment
+	 * @param packageIndex the index of package members shared in this compilation
+	 * @param compilationUnit the compilation unit to analyze
+	 * @param sources the top-level types declared in the compilation unit
 	 */
-	public ReferenceFinder(ProcessingEnvironment env, TypeResolver resolver, Element source) {
-		Log.d(TAG, "-------- ReferenceFinder running on " + source.getSimpleName() + " --------");
+	public ReferenceFinder(ProcessingEnvironment env, PackageIndex packageIndex, CompilationUnitTree compilationUnit,
+			List<? extends Element> sources) {
+		this(env, packageIndex, compilationUnit, sources, Collections.emptySet());
+	}
+
+	/**
+	 * Creates a reference finder that will analyze a compilation unit, skipping some method bodies
+	 *
+	 * The references in the skipped bodies are not found. They must not include references to annotated elements.
+	 *
+	 * @param env the processing environment
+	 * @param packageIndex the index of package members shared in this compilation
+	 * @param compilationUnit the compilation unit to analyze
+	 * @param sources the top-level types declared in the compilation unit
+	 * @param prunedBodies the method bodies to skip, from {@link AnnotatedNameFilter#getPrunableBodies}
+	 */
+	public ReferenceFinder(ProcessingEnvironment env, PackageIndex packageIndex, CompilationUnitTree compilationUnit,
+			List<? extends Element> sources, Set<Tree> prunedBodies) {
+		Log.d(TAG, () -> "-------- ReferenceFinder running on " + compilationUnit.getSourceFile().getName() + " --------");
 		mEnv = env;
 		mTrees = Trees.instance(env);
-		mTypes = new HashSet<>();
-		
-		final TreePath elementPath = mTrees.getPath(source);
-		final CompilationUnitTree compilationUnit = elementPath.getCompilationUnit();
-
-		Log.i(TAG, "-------- Starting ReferenceScanner --------");
-		final ReferenceScanner scanner = new ReferenceScanner(mEnv, mTypes);
-		scanner.scan(source);
-		Log.i(TAG, "-------- ReferenceScanner done --------");
-		
+		mTypes = new HashMap<>();
+		mFields = new HashMap<>();
+		mDependencies = new HashMap<>();
+
 		Log.i(TAG, "-------- Starting ReferenceVisitor --------");
-		final ReferenceVisitor visitor = new ReferenceVisitor(env, resolver);
+		final TypeResolver resolver = new TypeResolver(env, packageIndex, compilationUnit);
+		final ReferenceVisitor visitor = new ReferenceVisitor(env, resolver, prunedBodies);
 		compilationUnit.accept(visitor, null);
-		mTypes.addAll(visitor.getTypes());
 		Log.i(TAG, "-------- ReferenceVisitor done --------");
-		
-		// Post-process
-		// Remove java.lang
-		mTypes.removeIf(typeName -> typeName.getTypeName().startsWith("java.lang."));
+
+		for (Element source : sources) {
+			final Set<AccessElement> types = new HashSet<>();
+			Log.i(TAG, "-------- Starting ReferenceScanner --------");
+			final ReferenceScanner scanner = new ReferenceScanner(mEnv, types);
+			scanner.scan(source);
+			Log.i(TAG, "-------- ReferenceScanner done --------");
+
+			final Tree sourceTree = mTrees.getTree(source);
+			types.addAll(visitor.getTypes(sourceTree));
+
+			// Post-process
+			// Remove java.lang
+			types.removeIf(typeName -> typeName.getTypeName().startsWith("java.lang."));
+
+			mTypes.put(source, types);
+			mFields.put(source, new HashSet<>(visitor.getFields(sourceTree)));
+			mDependencies.put(source, new HashSet<>(visitor.getDependencies(sourceTree)));
+		}
 	}
-	
+
 	/**
-	 * Returns an immutable set containing the canonical names of all types that the provided code refers to.
-	 * 
+	 * Returns an immutable set containing the canonical names of all types that a top-level type refers to.
+	 *
 	 * The returned set will not contain primitive types or types in the java.lang package.
-	 * 
+	 *
+	 * @param source a top-level type declared in the analyzed compilation unit
 	 * @return the referenced types
 	 */
-	public Set<AccessElement> getTypesUsed() {
-		return Collections.unmodifiableSet(mTypes);
+	public Set<AccessElement> getTypesUsed(Element source) {
+		return Collections.unmodifiableSet(mTypes.getOrDefault(source, Collections.emptySet()));
 	}
-	
+
+	/**
+	 * Returns an immutable set containing the fields that a top-level type refers to and the methods and
+	 * constructors that it calls.
+	 *
+	 * @param source a top-level type declared in the analyzed compilation unit
+	 * @return the referenced fields and call sites
+	 */
+	public Set<AccessElement> getReferencedFields(Element source) {
+		return Collections.unmodifiableSet(mFields.getOrDefault(source, Collections.emptySet()));
+	}
+
+	/**
+	 * Returns the top-level types whose declarations were read to find the references of a top-level type
+	 *
+	 * The references found may change when one of these types changes, for example when the type of a field that
+	 * the type refers to through another field changes.
+	 *
+	 * @param source a top-level type declared in the analyzed compilation unit
+	 * @return the canonical names of the types
+	 */
+	public Set<String> getDependencies(Element source) {
+		return Collections.unmodifiableSet(mDependencies.getOrDefault(source, Collections.emptySet()));
+	}
+
 	/**
 	 * Scans items for used types
 	 *
 	 * Works at the annotation processor level using standard interfaces
 	 */
 	private static class ReferenceScanner extends ElementScanner8<Void, Void> {
-		
+
 		/**
 		 * The processing environment
 		 */
@@ -112,8 +179,8 @@ public class ReferenceFinder {
 		 * The names of the types that the code refers to
 		 */
 		private final Set<AccessElement> mTypes;
-		
-		
+
+
 		public ReferenceScanner(ProcessingEnvironment env, Set<AccessElement> types) {
 			this.mEnv = env;
 			this.mTypes = types;
@@ -121,12 +188,12 @@ public class ReferenceFinder {
 
 		@Override
 		public Void visitVariable(VariableElement e, Void p) {
-			Log.d(TAG, "Visiting variable " + e);
-			Log.d(TAG, "Variable type is " + e.asType());
-			Log.d(TAG, "Variable type kind: " + e.asType().getKind());
-			
+			Log.d(TAG, () -> "Visiting variable " + e);
+			Log.d(TAG, () -> "Variable type is " + e.asType());
+			Log.d(TAG, () -> "Variable type kind: " + e.asType().getKind());
+
 			final Types types = mEnv.getTypeUtils();
-			
+
 			final TypeMirror varType = e.asType();
 			if (varType.getKind().equals(TypeKind.DECLARED)) {
 				// Erase type to remove generic type parameters
@@ -138,12 +205,12 @@ public class ReferenceFinder {
 
 		@Override
 		public Void visitType(TypeElement e, Void p) {
-			Log.d(TAG, "Visiting type " + e);
+			Log.d(TAG, () -> "Visiting type " + e);
 			final Types types = mEnv.getTypeUtils();
 			mTypes.add(generateAccessElement(types, e.getSuperclass()));
 			for (TypeMirror implInterface : e.getInterfaces()) {
 				final TypeMirror erased = types.erasure(implInterface);
-				Log.v(TAG, "Adding implemented interface " + erased);
+				Log.v(TAG, () -> "Adding implemented interface " + erased);
 				mTypes.add(generateAccessElement(types, erased));
 			}
 			for (TypeParameterElement typeParam : e.getTypeParameters()) {
@@ -155,7 +222,7 @@ public class ReferenceFinder {
 
 		@Override
 		public Void visitExecutable(ExecutableElement e, Void p) {
-			Log.d(TAG, "Visiting executable " + e);
+			Log.d(TAG, () -> "Visiting executable " + e);
 			final TypeMirror returnType = e.getReturnType();
 			handleTypeMirror(returnType);
 			for (TypeMirror exceptionType : e.getThrownTypes()) {
@@ -169,7 +236,7 @@ public class ReferenceFinder {
 			super.visitExecutable(e, p);
 			return null;
 		}
-		
+
 		/**
 		 * Processes a type mirror and adds relevant types
 		 * @param type the type to process
@@ -198,16 +265,16 @@ public class ReferenceFinder {
 				handleWildcardType((WildcardType) type);
 				break;
 			default:
-				Log.v(TAG, "Ignoring type " + type + " with kind " + type.getKind());
+				Log.v(TAG, () -> "Ignoring type " + type + " with kind " + type.getKind());
 				break;
-			
+
 			}
 		}
-		
+
 		private void handleArrayType(ArrayType type) {
 			handleTypeMirror(type.getComponentType());
 		}
-		
+
 		private void handleDeclaredType(DeclaredType type) {
 			// Handle arguments
 			for (TypeMirror typeArg : type.getTypeArguments()) {
@@ -218,24 +285,24 @@ public class ReferenceFinder {
 			final TypeMirror erased = types.erasure(type);
 			mTypes.add(generateAccessElement(types, erased));
 		}
-		
+
 		private void handleIntersectionType(IntersectionType type) {
 			for (TypeMirror bound : type.getBounds()) {
 				handleTypeMirror(bound);
 			}
 		}
-		
+
 		private void handleTypeVar(TypeVariable type) {
 			handleTypeMirror(type.getLowerBound());
 			handleTypeMirror(type.getUpperBound());
 		}
-		
+
 		private void handleUnionType(UnionType type) {
 			for (TypeMirror option : type.getAlternatives()) {
 				handleTypeMirror(option);
 			}
 		}
-		
+
 		private void handleWildcardType(WildcardType type) {
 			handleTypeMirror(type.getExtendsBound());
 			handleTypeMirror(type.getSuperBound());
@@ -243,9 +310,9 @@ public class ReferenceFinder {
 
 		@Override
 		public Void visitTypeParameter(TypeParameterElement e, Void p) {
-			Log.d(TAG, "Visiting type parameter " + e);
+			Log.d(TAG, () -> "Visiting type parameter " + e);
 			for (TypeMirror typeBound : e.getBounds()) {
-				Log.v(TAG, "Adding type generic type bound " + typeBound);
+				Log.v(TAG, () -> "Adding type generic type bound " + typeBound);
 				mTypes.add(generateAccessElement(mEnv.getTypeUtils(), typeBound));
 			}
 			return super.visitTypeParameter(e, p);
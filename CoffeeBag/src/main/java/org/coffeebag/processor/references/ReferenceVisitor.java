@@ -1,22 +1,51 @@
 package org.coffeebag.processor.references;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
 
 import org.coffeebag.domain.AccessElement;
 import org.coffeebag.log.Log;
 
 import com.sun.source.tree.ArrayTypeTree;
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.CatchTree;
 import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.EnhancedForLoopTree;
 import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.ForLoopTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.NewClassTree;
 import com.sun.source.tree.ParameterizedTypeTree;
+import com.sun.source.tree.ParenthesizedTree;
+import com.sun.source.tree.PrimitiveTypeTree;
+import com.sun.source.tree.SwitchTree;
 import com.sun.source.tree.Tree;
+import com.sun.source.tree.TryTree;
 import com.sun.source.tree.TypeCastTree;
 import com.sun.source.tree.TypeParameterTree;
 import com.sun.source.tree.VariableTree;
@@ -24,7 +53,10 @@ import com.sun.source.tree.WildcardTree;
 import com.sun.source.util.TreeScanner;
 
 /**
- * Visits AST nodes and scans for used types
+ * Visits AST nodes and scans for used types and fields
+ *
+ * One pass over a compilation unit collects the references of every top-level type declared in it. Each reference
+ * is attributed to the top-level type that encloses it.
  */
 class ReferenceVisitor extends TreeScanner<Void, Void> {
 	private static final String TAG = ReferenceVisitor.class.getSimpleName();
@@ -37,37 +69,207 @@ class ReferenceVisitor extends TreeScanner<Void, Void> {
 	 * The type resolver
 	 */
 	private final TypeResolver typeResolver;
-	
+
+	/**
+	 * The types referenced in the code, by the top-level type that refers to them
+	 */
+	private final Map<Tree, Set<AccessElement>> mTypes;
+
+	/**
+	 * The fields referenced and the methods and constructors called in the code, by the top-level type that refers
+	 * to them
+	 */
+	private final Map<Tree, Set<AccessElement>> mFields;
+
+	/**
+	 * The top-level types whose members were looked up to resolve the references of each top-level type
+	 */
+	private final Map<Tree, Set<String>> mDependencies;
+
+	/**
+	 * The variables in scope, by name. The first variable with each name shadows the others.
+	 */
+	private final Map<String, Deque<Variable>> variables;
+
+	/**
+	 * The open scopes, innermost first
+	 */
+	private final Deque<Scope> scopes;
+
+	/**
+	 * The classes that enclose the code being visited, innermost first
+	 */
+	private final Deque<EnclosingClass> classes;
+
+	/**
+	 * The supertypes of anonymous classes, by the tree of the class body
+	 */
+	private final Map<Tree, String> anonymousSupertypes;
+
+	/**
+	 * The simple names of the methods of types, including inherited methods, by the canonical name of the type
+	 */
+	private final Map<String, Set<String>> methodNames;
+
+	/**
+	 * The canonical names of the top-level types that declare a type and its supertypes, by the canonical name of the
+	 * type. Types in the java packages are left out, because they are not compiled from source.
+	 */
+	private final Map<String, Set<String>> declaringTypes;
+
 	/**
-	 * The types referenced in the code
+	 * The canonical names of the types of fields, by the canonical name of the declaring type and the field name,
+	 * separated by '#'. Fields that do not have a declared type map to null.
 	 */
-	private final Set<AccessElement> mTypes;
-	
+	private final Map<String, String> fieldTypes;
+
+	/**
+	 * The types referenced by the top-level type currently being visited, or null if no type is being visited
+	 */
+	private Set<AccessElement> currentTypes;
+
+	/**
+	 * The fields referenced by the top-level type currently being visited, or null if no type is being visited
+	 */
+	private Set<AccessElement> currentFields;
+
+	/**
+	 * The dependencies of the top-level type currently being visited, or null if no type is being visited
+	 */
+	private Set<String> currentDependencies;
+
 	/**
 	 * The package of the class, or empty for the default package
 	 */
 	private String currentPackage;
 
+	/**
+	 * The method bodies that are not visited because they cannot refer to an annotated element
+	 */
+	private final Set<Tree> prunedBodies;
+
 	/**
 	 * Creates a reference visitor
+	 * @param prunedBodies the method bodies to skip, compared by identity
 	 */
-	ReferenceVisitor(ProcessingEnvironment env, TypeResolver resolver) {
+	ReferenceVisitor(ProcessingEnvironment env, TypeResolver resolver, Set<Tree> prunedBodies) {
 		mEnv = env;
 		this.typeResolver = resolver;
-		mTypes = new HashSet<>();
+		this.prunedBodies = prunedBodies;
+		mTypes = new HashMap<>();
+		mFields = new HashMap<>();
+		mDependencies = new HashMap<>();
+		variables = new HashMap<>();
+		scopes = new ArrayDeque<>();
+		classes = new ArrayDeque<>();
+		anonymousSupertypes = new HashMap<>();
+		methodNames = new HashMap<>();
+		declaringTypes = new HashMap<>();
+		fieldTypes = new HashMap<>();
 		currentPackage = "";
 	}
 
 	/**
-	 * Returns the types that have been referenced in the processed code
-	 * 
-	 * If this visitor has not yet been accepted by any code, the returned set
-	 * will be empty.
-	 * 
+	 * A variable, parameter, or field
+	 */
+	private static class Variable {
+		/**
+		 * The tree of the declared type, or null if the type has been resolved or is not declared
+		 */
+		private Tree type;
+		/**
+		 * The canonical name of the type, or null if it has not been resolved or is not a class
+		 */
+		private String typeName;
+
+		Variable(Tree type, String typeName) {
+			this.type = type;
+			this.typeName = typeName;
+		}
+	}
+
+	/**
+	 * A class body, method, block, or statement that declares variables
+	 */
+	private static class Scope {
+		/**
+		 * If this scope is a class body, whose fields are declared when it is entered
+		 */
+		private final boolean classBody;
+		/**
+		 * The names of the variables declared in this scope
+		 */
+		private final List<String> names;
+
+		Scope(boolean classBody) {
+			this.classBody = classBody;
+			this.names = new ArrayList<>();
+		}
+	}
+
+	/**
+	 * A class that encloses the code being visited, which unqualified method names are looked up in
+	 */
+	private static class EnclosingClass {
+		/**
+		 * The canonical name of the class, or null for local and anonymous classes
+		 */
+		private final String name;
+		/**
+		 * The canonical name of the declared superclass, or null if it is not declared or could not be resolved
+		 */
+		private final String superclass;
+		/**
+		 * The canonical names of the declared supertypes that could be resolved
+		 */
+		private final List<String> supertypes;
+		/**
+		 * The simple names of the methods declared in the class body
+		 */
+		private final Set<String> declaredMethods;
+
+		EnclosingClass(String name, String superclass, List<String> supertypes, Set<String> declaredMethods) {
+			this.name = name;
+			this.superclass = superclass;
+			this.supertypes = supertypes;
+			this.declaredMethods = declaredMethods;
+		}
+	}
+
+	/**
+	 * Returns the types that have been referenced by a top-level type
+	 *
+	 * If this visitor has not yet been accepted by the code that contains the
+	 * type, the returned set will be empty.
+	 *
+	 * @param topLevelType the tree of the top-level type
 	 * @return an unmodifiable set of referenced type names
 	 */
-	public Set<AccessElement> getTypes() {
-		return Collections.unmodifiableSet(mTypes);
+	public Set<AccessElement> getTypes(Tree topLevelType) {
+		return Collections.unmodifiableSet(mTypes.getOrDefault(topLevelType, Collections.emptySet()));
+	}
+
+	/**
+	 * Returns the fields that have been referenced by a top-level type
+	 *
+	 * @param topLevelType the tree of the top-level type
+	 * @return an unmodifiable set of referenced fields
+	 */
+	public Set<AccessElement> getFields(Tree topLevelType) {
+		return Collections.unmodifiableSet(mFields.getOrDefault(topLevelType, Collections.emptySet()));
+	}
+
+	/**
+	 * Returns the top-level types whose members were looked up to resolve the references of a top-level type
+	 *
+	 * The types of fields and the methods of classes are looked up in the declarations of other classes, so the
+	 * references found in the type depend on those declarations and on the declarations of their supertypes.
+	 *
+	 * @param topLevelType the tree of the top-level type
+	 * @return an unmodifiable set of canonical type names
+	 */
+	public Set<String> getDependencies(Tree topLevelType) {
+		return Collections.unmodifiableSet(mDependencies.getOrDefault(topLevelType, Collections.emptySet()));
 	}
 
 	@Override
@@ -84,25 +286,171 @@ class ReferenceVisitor extends TreeScanner<Void, Void> {
 
 	@Override
 	public Void visitVariable(VariableTree tree, Void arg1) {
-		Log.d(TAG, "Visiting variable " + tree);
-		Log.d(TAG, "Type kind: " + tree.getType().getKind());
-		Log.d(TAG, "Type string: " + tree.getType());
-		Tree varType = tree.getType();
+		Log.d(TAG, () -> "Visiting variable " + tree);
+		final Tree varType = tree.getType();
+		if (varType == null) {
+			// Lambda parameter with an inferred type, which still shadows other variables
+			declare(tree.getName().toString(), new Variable(null, null));
+			return super.visitVariable(tree, arg1);
+		}
+		Log.d(TAG, () -> "Type kind: " + varType.getKind());
+		Log.d(TAG, () -> "Type string: " + varType);
 		handleTypeTree(varType);
+		if (!scopes.isEmpty() && !scopes.getFirst().classBody) {
+			// The type is resolved when the variable is first used in a member select
+			declare(tree.getName().toString(), new Variable(varType, null));
+		}
 		return super.visitVariable(tree, arg1);
 	}
 
 	@Override
 	public Void visitClass(ClassTree ct, Void arg1) {
+		final boolean topLevel = currentTypes == null;
+		if (topLevel) {
+			currentTypes = new HashSet<>();
+			currentFields = new HashSet<>();
+			currentDependencies = new HashSet<>();
+			mTypes.put(ct, currentTypes);
+			mFields.put(ct, currentFields);
+			mDependencies.put(ct, currentDependencies);
+		}
 		// Check superclass and interfaces
 		final Tree extendsClause = ct.getExtendsClause();
+		final List<String> supertypes = new ArrayList<>();
+		String superclass = null;
 		if (extendsClause != null) {
 			handleTypeTree(extendsClause);
+			superclass = resolveDeclaredType(extendsClause);
 		}
 		for (Tree superinterface : ct.getImplementsClause()) {
 			handleTypeTree(superinterface);
+			supertypes.add(resolveDeclaredType(superinterface));
+		}
+		// The supertype of an anonymous class is named in the new expression, not in the class body
+		supertypes.add(0, anonymousSupertypes.containsKey(ct) ? anonymousSupertypes.remove(ct) : superclass);
+		supertypes.removeIf(supertype -> supertype == null);
+		final Set<String> declaredMethods = new HashSet<>();
+		for (Tree member : ct.getMembers()) {
+			if (member.getKind() == Tree.Kind.METHOD) {
+				declaredMethods.add(((MethodTree) member).getName().toString());
+			}
+		}
+		// Member classes have canonical names. Local and anonymous classes do not.
+		final String className;
+		if (scopes.isEmpty()) {
+			className = (currentPackage.isEmpty() ? "" : currentPackage + ".") + ct.getSimpleName();
+		} else if (scopes.getFirst().classBody && resolveVariable("this") != null) {
+			className = resolveVariable("this") + "." + ct.getSimpleName();
+		} else {
+			className = null;
+		}
+		classes.push(new EnclosingClass(className, superclass, supertypes, declaredMethods));
+		// Declare all fields before the members are visited, because members can use fields declared after them
+		pushScope(true);
+		declare("this", new Variable(null, className));
+		for (Tree member : ct.getMembers()) {
+			if (member.getKind() == Tree.Kind.VARIABLE) {
+				final VariableTree field = (VariableTree) member;
+				declare(field.getName().toString(), new Variable(field.getType(), null));
+			}
+		}
+		super.visitClass(ct, arg1);
+		popScope();
+		classes.pop();
+		if (topLevel) {
+			currentTypes = null;
+			currentFields = null;
+			currentDependencies = null;
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitMethod(MethodTree arg0, Void arg1) {
+		// Parameters are in scope in the body
+		pushScope(false);
+		super.visitMethod(arg0, arg1);
+		popScope();
+		return null;
+	}
+
+	@Override
+	public Void visitLambdaExpression(LambdaExpressionTree arg0, Void arg1) {
+		pushScope(false);
+		super.visitLambdaExpression(arg0, arg1);
+		popScope();
+		return null;
+	}
+
+	@Override
+	public Void visitBlock(BlockTree arg0, Void arg1) {
+		if (prunedBodies.contains(arg0)) {
+			Log.v(TAG, "Skipping a method body that cannot refer to an annotated element");
+			return null;
+		}
+		pushScope(false);
+		super.visitBlock(arg0, arg1);
+		popScope();
+		return null;
+	}
+
+	@Override
+	public Void visitForLoop(ForLoopTree arg0, Void arg1) {
+		pushScope(false);
+		super.visitForLoop(arg0, arg1);
+		popScope();
+		return null;
+	}
+
+	@Override
+	public Void visitEnhancedForLoop(EnhancedForLoopTree arg0, Void arg1) {
+		pushScope(false);
+		super.visitEnhancedForLoop(arg0, arg1);
+		popScope();
+		return null;
+	}
+
+	@Override
+	public Void visitTry(TryTree arg0, Void arg1) {
+		// Resources are in scope in the try block
+		pushScope(false);
+		super.visitTry(arg0, arg1);
+		popScope();
+		return null;
+	}
+
+	@Override
+	public Void visitCatch(CatchTree arg0, Void arg1) {
+		pushScope(false);
+		super.visitCatch(arg0, arg1);
+		popScope();
+		return null;
+	}
+
+	@Override
+	public Void visitSwitch(SwitchTree arg0, Void arg1) {
+		// Variables declared in one case are in scope in the following cases
+		pushScope(false);
+		super.visitSwitch(arg0, arg1);
+		popScope();
+		return null;
+	}
+
+	@Override
+	public Void visitMemberSelect(MemberSelectTree arg0, Void arg1) {
+		if (!scopes.isEmpty()) {
+			// Supports fields of variables, and fields of those fields (a.b.c)
+			final ExpressionTree owner = arg0.getExpression();
+			final String fieldName = arg0.getIdentifier().toString();
+			final String ownerType = resolveExpressionType(owner);
+			if (ownerType != null) {
+				Log.d(TAG, () -> "Accessing field " + fieldName + " of type " + ownerType);
+				currentFields.add(AccessElement.field(ownerType, fieldName));
+			} else {
+				Log.i(TAG, () -> "Variable " + owner + " not resolved");
+			}
 		}
-		return super.visitClass(ct, arg1);
+		return super.visitMemberSelect(arg0, arg1);
 	}
 
 	@Override
@@ -125,35 +473,409 @@ class ReferenceVisitor extends TreeScanner<Void, Void> {
 		// Resolve constructor type
 		final ExpressionTree typeNameTree = arg0.getIdentifier();
 		handleTypeTree(typeNameTree);
+		// The class of outer.new Inner() depends on the type of outer, which is not resolved
+		if (arg0.getEnclosingExpression() == null) {
+			addCall(resolveDeclaredType(typeNameTree), AccessElement.CONSTRUCTOR_NAME, arg0.getArguments());
+		}
+		if (arg0.getClassBody() != null) {
+			final String supertype = resolveDeclaredType(typeNameTree);
+			if (supertype != null) {
+				anonymousSupertypes.put(arg0.getClassBody(), supertype);
+			}
+		}
 		return super.visitNewClass(arg0, arg1);
 	}
 
+	@Override
+	public Void visitMethodInvocation(MethodInvocationTree arg0, Void arg1) {
+		final ExpressionTree select = arg0.getMethodSelect();
+		final List<? extends ExpressionTree> arguments = arg0.getArguments();
+		if (select.getKind() == Tree.Kind.MEMBER_SELECT) {
+			final MemberSelectTree memberSelect = (MemberSelectTree) select;
+			final String name = memberSelect.getIdentifier().toString();
+			if (name.equals("super")) {
+				// outer.super(...) calls a constructor of the superclass of an inner class
+				addCall(getSuperclass(), AccessElement.CONSTRUCTOR_NAME, arguments);
+			} else if (isSuper(memberSelect.getExpression())) {
+				addCall(getSuperclass(), name, arguments);
+			} else {
+				addCall(resolveQualifierType(memberSelect.getExpression()), name, arguments);
+			}
+			// The method name is not a field, so only the expression before it is scanned
+			scan(memberSelect.getExpression(), arg1);
+		} else if (select.getKind() == Tree.Kind.IDENTIFIER) {
+			final String name = ((IdentifierTree) select).getName().toString();
+			// this(...) and super(...) call constructors of this class and its superclass
+			if (name.equals("this")) {
+				addCall(classes.isEmpty() ? null : classes.getFirst().name, AccessElement.CONSTRUCTOR_NAME, arguments);
+			} else if (name.equals("super")) {
+				addCall(getSuperclass(), AccessElement.CONSTRUCTOR_NAME, arguments);
+			} else {
+				addCall(resolveMethodOwner(name), name, arguments);
+			}
+		} else {
+			scan(select, arg1);
+		}
+		scan(arg0.getTypeArguments(), arg1);
+		scan(arg0.getArguments(), arg1);
+		return null;
+	}
+
+	@Override
+	public Void visitMemberReference(MemberReferenceTree arg0, Void arg1) {
+		final String name = arg0.getMode() == MemberReferenceTree.ReferenceMode.NEW ? AccessElement.CONSTRUCTOR_NAME
+				: arg0.getName().toString();
+		// The arity is known only after the functional interface type is inferred
+		final String typeName = resolveQualifierType(arg0.getQualifierExpression());
+		if (typeName != null && currentFields != null) {
+			Log.d(TAG, () -> "Referring to " + name + " of type " + typeName);
+			currentFields.add(AccessElement.method(typeName, name, AccessElement.ANY_ARITY));
+		}
+		return super.visitMemberReference(arg0, arg1);
+	}
+
+	/**
+	 * Finds the class whose method an unqualified method name refers to
+	 *
+	 * As in the Java language, the innermost enclosing class that has a method with the name is searched first,
+	 * then the classes that methods are statically imported from.
+	 *
+	 * @param name the method name
+	 * @return the canonical name of the class, or null if the method is declared in a local or anonymous class or
+	 * could not be found
+	 */
+	private String resolveMethodOwner(String name) {
+		for (EnclosingClass enclosing : classes) {
+			if (enclosing.name != null) {
+				if (hasMethod(enclosing.name, name)) {
+					return enclosing.name;
+				}
+				continue;
+			}
+			// The methods of local and anonymous classes cannot be referred to by name in other classes
+			if (enclosing.declaredMethods.contains(name)) {
+				return null;
+			}
+			for (String supertype : enclosing.supertypes) {
+				if (hasMethod(supertype, name)) {
+					return supertype;
+				}
+			}
+		}
+		for (String scope : typeResolver.getStaticImportScopes(name)) {
+			if (hasMethod(scope, name)) {
+				return scope;
+			}
+		}
+		Log.i(TAG, () -> "Method " + name + " not resolved");
+		return null;
+	}
+
+	/**
+	 * @param typeName the canonical name of a type
+	 * @param name a method name
+	 * @return true if the type declares or inherits a method with the name
+	 */
+	private boolean hasMethod(String typeName, String name) {
+		addDependency(typeName);
+		return methodNames.computeIfAbsent(typeName, key -> {
+			final TypeElement type = mEnv.getElementUtils().getTypeElement(key);
+			if (type == null) {
+				return Collections.emptySet();
+			}
+			final Set<String> names = new HashSet<>();
+			for (ExecutableElement method : ElementFilter.methodsIn(mEnv.getElementUtils().getAllMembers(type))) {
+				names.add(method.getSimpleName().toString());
+			}
+			return names;
+		}).contains(name);
+	}
+
+	/**
+	 * @return the canonical name of the superclass of the innermost enclosing class, or of the supertype of an
+	 * anonymous class, or null if it is not declared or could not be resolved
+	 */
+	private String getSuperclass() {
+		if (classes.isEmpty()) {
+			return null;
+		}
+		final EnclosingClass enclosing = classes.getFirst();
+		if (enclosing.superclass != null || enclosing.supertypes.isEmpty()) {
+			return enclosing.superclass;
+		}
+		return enclosing.name == null ? enclosing.supertypes.get(0) : null;
+	}
+
+	private static boolean isSuper(ExpressionTree expression) {
+		return expression.getKind() == Tree.Kind.IDENTIFIER
+				&& ((IdentifierTree) expression).getName().contentEquals("super");
+	}
+
+	/**
+	 * Records a call of a method or constructor by the current top-level type
+	 * @param typeName the canonical name of the class whose method is called, or null if it is not known
+	 * @param name the method name
+	 * @param arguments the arguments, whose types are recorded where they are known
+	 */
+	private void addCall(String typeName, String name, List<? extends ExpressionTree> arguments) {
+		if (typeName == null || currentFields == null) {
+			return;
+		}
+		final List<String> argumentTypes = new ArrayList<>(arguments.size());
+		for (ExpressionTree argument : arguments) {
+			argumentTypes.add(resolveArgumentType(argument));
+		}
+		Log.d(TAG, () -> "Calling " + name + " of type " + typeName + " with arguments " + argumentTypes);
+		currentFields.add(AccessElement.method(typeName, name, argumentTypes));
+	}
+
+	/**
+	 * Finds the type of a method argument, if it can be known without attributing the expression
+	 * @param argument the argument
+	 * @return the erased type as recorded in a call site key, or null if it is not known
+	 */
+	private String resolveArgumentType(ExpressionTree argument) {
+		switch (argument.getKind()) {
+		case INT_LITERAL:
+			return "int";
+		case LONG_LITERAL:
+			return "long";
+		case FLOAT_LITERAL:
+			return "float";
+		case DOUBLE_LITERAL:
+			return "double";
+		case BOOLEAN_LITERAL:
+			return "boolean";
+		case CHAR_LITERAL:
+			return "char";
+		case STRING_LITERAL:
+			return "java.lang.String";
+		case NULL_LITERAL:
+			return AccessElement.NULL_ARGUMENT;
+		case NEW_CLASS:
+			final NewClassTree newClass = (NewClassTree) argument;
+			return newClass.getEnclosingExpression() == null ? resolveDeclaredType(newClass.getIdentifier()) : null;
+		case TYPE_CAST:
+			final Tree castType = ((TypeCastTree) argument).getType();
+			if (castType.getKind() == Tree.Kind.PRIMITIVE_TYPE) {
+				return ((PrimitiveTypeTree) castType).getPrimitiveTypeKind().name().toLowerCase(Locale.ROOT);
+			}
+			return resolveDeclaredType(castType);
+		case PARENTHESIZED:
+			return resolveArgumentType(((ParenthesizedTree) argument).getExpression());
+		case IDENTIFIER:
+		case MEMBER_SELECT:
+			// Variables and fields of primitive types are not resolved, so their types are not known
+			return resolveExpressionType(argument);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Finds the class that an expression before a method name refers to
+	 *
+	 * A variable takes precedence over a type with the same name, as in the Java language.
+	 *
+	 * @param qualifier a variable, a field of a variable, or a type name
+	 * @return the canonical name of the class, or null if it could not be resolved
+	 */
+	private String resolveQualifierType(ExpressionTree qualifier) {
+		final String variableType = resolveExpressionType(qualifier);
+		if (variableType != null) {
+			return variableType;
+		}
+		return resolveDeclaredType(qualifier);
+	}
+
+	private void pushScope(boolean classBody) {
+		scopes.push(new Scope(classBody));
+	}
+
+	private void popScope() {
+		for (String name : scopes.pop().names) {
+			final Deque<Variable> shadowed = variables.get(name);
+			shadowed.pop();
+			if (shadowed.isEmpty()) {
+				variables.remove(name);
+			}
+		}
+	}
+
+	/**
+	 * Declares a variable in the innermost scope
+	 * @param name the variable name
+	 * @param variable the variable
+	 */
+	private void declare(String name, Variable variable) {
+		variables.computeIfAbsent(name, key -> new ArrayDeque<>()).push(variable);
+		scopes.getFirst().names.add(name);
+	}
+
+	/**
+	 * Resolves a variable in the current scopes and returns its canonical type name
+	 * @param name the variable name
+	 * @return the canonical type of the variable, or null if none could be found
+	 */
+	private String resolveVariable(String name) {
+		final Deque<Variable> declared = variables.get(name);
+		if (declared == null) {
+			return null;
+		}
+		final Variable variable = declared.getFirst();
+		if (variable.type != null) {
+			variable.typeName = resolveDeclaredType(variable.type);
+			variable.type = null;
+		}
+		return variable.typeName;
+	}
+
+	/**
+	 * Finds the canonical type name of an expression that names a variable or a field of a variable
+	 * @param expression the expression
+	 * @return the canonical type name, or null if the expression could not be resolved to a class
+	 */
+	private String resolveExpressionType(ExpressionTree expression) {
+		switch (expression.getKind()) {
+		case IDENTIFIER:
+			return resolveVariable(((IdentifierTree) expression).getName().toString());
+		case MEMBER_SELECT:
+			final MemberSelectTree select = (MemberSelectTree) expression;
+			final String ownerType = resolveExpressionType(select.getExpression());
+			if (ownerType == null) {
+				return null;
+			}
+			return getFieldType(ownerType, select.getIdentifier().toString());
+		case PARENTHESIZED:
+			return resolveExpressionType(((ParenthesizedTree) expression).getExpression());
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Resolves the declared type of a variable
+	 * @param type the type tree
+	 * @return the canonical name of the type, or null if it is not a class or could not be resolved
+	 */
+	private String resolveDeclaredType(Tree type) {
+		switch (type.getKind()) {
+		case IDENTIFIER:
+			return typeResolver.resolveUnqualifiedType(type.toString(), currentPackage);
+		case MEMBER_SELECT:
+			if (mEnv.getElementUtils().getTypeElement(type.toString()) != null) {
+				return type.toString();
+			}
+			// A class nested in an imported class
+			return typeResolver.resolveUnqualifiedType(type.toString(), currentPackage);
+		case PARAMETERIZED_TYPE:
+			return resolveDeclaredType(((ParameterizedTypeTree) type).getType());
+		default:
+			// Primitive and array types have no fields to check
+			return null;
+		}
+	}
+
+	/**
+	 * Finds the type of a field, including inherited fields
+	 * @param ownerType the canonical name of the class whose field it is
+	 * @param fieldName the field name
+	 * @return the canonical name of the erased field type, or null if the field was not found or is not a class
+	 */
+	private String getFieldType(String ownerType, String fieldName) {
+		addDependency(ownerType);
+		final String key = ownerType + '#' + fieldName;
+		if (fieldTypes.containsKey(key)) {
+			return fieldTypes.get(key);
+		}
+		String fieldType = null;
+		final TypeElement owner = mEnv.getElementUtils().getTypeElement(ownerType);
+		if (owner != null) {
+			for (VariableElement field : ElementFilter.fieldsIn(mEnv.getElementUtils().getAllMembers(owner))) {
+				if (field.getSimpleName().contentEquals(fieldName)) {
+					final TypeMirror erased = mEnv.getTypeUtils().erasure(field.asType());
+					if (erased.getKind() == TypeKind.DECLARED) {
+						fieldType = ((TypeElement) ((DeclaredType) erased).asElement()).getQualifiedName().toString();
+					}
+					break;
+				}
+			}
+		}
+		fieldTypes.put(key, fieldType);
+		return fieldType;
+	}
+
+	/**
+	 * Records that the references of the current top-level type depend on the members of a type
+	 * @param typeName the canonical name of the type
+	 */
+	private void addDependency(String typeName) {
+		if (currentDependencies == null) {
+			return;
+		}
+		currentDependencies.addAll(declaringTypes.computeIfAbsent(typeName, key -> {
+			final Set<String> declaring = new HashSet<>();
+			final TypeElement type = mEnv.getElementUtils().getTypeElement(key);
+			if (type != null) {
+				addDeclaringTypes(type.asType(), declaring, new HashSet<>());
+			}
+			return declaring;
+		}));
+	}
+
+	/**
+	 * Adds the top-level types that declare a type and its supertypes
+	 * @param type the type
+	 * @param declaring the canonical names of the top-level types found so far
+	 * @param visited the types whose supertypes have been added
+	 */
+	private void addDeclaringTypes(TypeMirror type, Set<String> declaring, Set<Element> visited) {
+		if (type.getKind() != TypeKind.DECLARED) {
+			return;
+		}
+		final Element element = ((DeclaredType) type).asElement();
+		Element topLevel = element;
+		while (topLevel.getEnclosingElement().getKind() != ElementKind.PACKAGE) {
+			topLevel = topLevel.getEnclosingElement();
+		}
+		final String name = ((TypeElement) topLevel).getQualifiedName().toString();
+		// The supertypes of types in the java packages are in the java packages too
+		if (name.startsWith("java.") || !visited.add(element)) {
+			return;
+		}
+		declaring.add(name);
+		for (TypeMirror supertype : mEnv.getTypeUtils().directSupertypes(type)) {
+			addDeclaringTypes(supertype, declaring, visited);
+		}
+	}
+
 	/**
 	 * Interprets a tree that represents the type of a variable
-	 * 
+	 *
 	 * @param varType
 	 *            the type of a variable
 	 */
 	private void handleTypeTree(Tree varType) {
-
-		Log.d(TAG, "handleTypeTree(" + varType + ")");
+		if (currentTypes == null) {
+			// Not in a type, so there is nothing to attribute the reference to
+			return;
+		}
+		Log.d(TAG, () -> "handleTypeTree(" + varType + ")");
 		switch (varType.getKind()) {
 		case MEMBER_SELECT:
-			// Type name is a fully-qualified type
-			// (Look for the type to see if it is an inner class instead of a
-			// fully qualified name)
-			final TypeElement typeElement = mEnv.getElementUtils().getTypeElement(varType.toString());
-			if (typeElement != null) {
-				Log.d(TAG, "Resolved fully-qualified type " + varType.toString());
-				mTypes.add(AccessElement.type(varType.toString()));
+			// Type name is a fully-qualified type, or a class nested in a class that is in scope
+			final String selected = resolveDeclaredType(varType);
+			Log.d(TAG, () -> "Resolved qualified \"" + varType + "\" as \"" + selected + "\"");
+			if (selected != null) {
+				currentTypes.add(AccessElement.type(selected));
 			}
 			break;
 		case IDENTIFIER:
 			// Type name is an unqualified ID
 			final String qualified = typeResolver.resolveUnqualifiedType(varType.toString(), currentPackage);
-			Log.d(TAG, "Resolved unqualified \"" + varType + "\" as \"" + qualified + "\"");
+			Log.d(TAG, () -> "Resolved unqualified \"" + varType + "\" as \"" + qualified + "\"");
 			if (qualified != null) {
-				mTypes.add(AccessElement.type(qualified));
+				currentTypes.add(AccessElement.type(qualified));
 			}
 			break;
 		case PARAMETERIZED_TYPE:
@@ -182,8 +904,8 @@ class ReferenceVisitor extends TreeScanner<Void, Void> {
 			// Ignore
 			break;
 		default:
-			Log.d(TAG, "Variable type has unexpected kind " + varType.getKind());
+			Log.d(TAG, () -> "Variable type has unexpected kind " + varType.getKind());
 			break;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -1,15 +1,14 @@
 package org.coffeebag.processor.references;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
 import javax.annotation.processing.ProcessingEnvironment;
-import javax.lang.model.element.Element;
-import javax.lang.model.element.PackageElement;
-import javax.lang.model.element.TypeElement;
-import javax.lang.model.util.Types;
 
 import org.coffeebag.domain.Import;
 import org.coffeebag.domain.Import.ImportType;
@@ -19,61 +18,114 @@ import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.ImportTree;
 import com.sun.source.tree.MemberSelectTree;
 import com.sun.source.tree.Tree;
-import com.sun.source.util.TreePath;
-import com.sun.source.util.Trees;
 
 /**
  * Resolves unqualified types based on imports
+ *
+ * The imports of a compilation unit are compiled into a table when the resolver is created. Names are resolved in the
+ * order of the scopes that shadow each other in the Java language:
+ * <ol>
+ * <li>Single-type imports, with one hash lookup</li>
+ * <li>Types in the current package, including the types declared in the compilation unit</li>
+ * <li>Glob imports, in the order in which they are declared</li>
+ * <li>The implicit glob import of java.lang</li>
+ * </ol>
+ *
+ * The classes that static members are imported from are kept too, to resolve unqualified calls of static methods.
  */
 public class TypeResolver {
 	private static final String TAG = TypeResolver.class.getSimpleName();
+
+	/**
+	 * The package that every compilation unit imports implicitly
+	 */
+	private static final String JAVA_LANG = "java.lang";
 	
 	/**
 	 * The processing environment
 	 */
 	private final ProcessingEnvironment env;
 	/**
-	 * The imports in the file being processed
+	 * Maps from the simple names of types imported with single-type imports to their canonical names
+	 */
+	private final Map<String, String> singleTypeImports;
+	/**
+	 * The packages and classes imported with glob imports, in the order in which they are declared, without java.lang
+	 */
+	private final List<String> globImports;
+	/**
+	 * Maps from the names of statically imported members to the canonical names of the classes that they are
+	 * imported from. Methods with one name may be imported from more than one class.
 	 */
-	private final Set<Import> imports;
+	private final Map<String, List<String>> singleStaticImports;
+	/**
+	 * The classes whose static members are all imported, in the order in which they are declared
+	 */
+	private final List<String> staticGlobImports;
+	/**
+	 * The index used to look up types in glob-imported packages and classes
+	 */
+	private final PackageIndex packageIndex;
 
 	/**
-	 * Creates a TypeResolver that will use the imports available in the provided element
+	 * Creates a TypeResolver that will use the imports available in the provided compilation unit
 	 * @param env the processing environment
-	 * @param element the element to get imports from
+	 * @param packageIndex the index of package members shared in this compilation
+	 * @param compilationUnit the compilation unit to get imports from
 	 */
-	public TypeResolver(ProcessingEnvironment env, Element element) {
-		final Trees trees = Trees.instance(env);
-		final TreePath elementPath = trees.getPath(element);
-		final CompilationUnitTree compilationUnit = elementPath.getCompilationUnit();
-		
+	public TypeResolver(ProcessingEnvironment env, PackageIndex packageIndex, CompilationUnitTree compilationUnit) {
 		// Inspect imports
-		final Set<Import> parsedImports = new HashSet<>();
+		final Map<String, String> singleTypeImports = new HashMap<>();
+		final Set<String> globImports = new LinkedHashSet<>();
+		final Map<String, List<String>> singleStaticImports = new HashMap<>();
+		final Set<String> staticGlobImports = new LinkedHashSet<>();
 		final List<? extends ImportTree> imports = compilationUnit.getImports();
 		
 		for (ImportTree importTree : imports) {
 			final Tree qualifiedId = importTree.getQualifiedIdentifier();
-			Log.d(TAG, "Import tree kind: " + importTree.getKind());
-			Log.d(TAG, "Import tree qualified ID kind: " + qualifiedId.getKind());
+			Log.d(TAG, () -> "Import tree kind: " + importTree.getKind());
+			Log.d(TAG, () -> "Import tree qualified ID kind: " + qualifiedId.getKind());
 			if (qualifiedId.getKind().equals(Tree.Kind.MEMBER_SELECT)) {
 				final MemberSelectTree idReference = (MemberSelectTree) qualifiedId;
+				final Import anImport;
 				if (idReference.getIdentifier().contentEquals("*")) {
 					// Glob import
-					Log.d(TAG, "Glob import of package " + idReference.getExpression());
-					parsedImports.add(new Import(ImportType.GLOB, idReference.getExpression().toString()));
+					Log.d(TAG, () -> "Glob import of package " + idReference.getExpression());
+					anImport = new Import(ImportType.GLOB, idReference.getExpression().toString());
 				} else {
 					// Single-class import
-					Log.d(TAG, "Single-class import of " + qualifiedId);
-					parsedImports.add(new Import(ImportType.TYPE, qualifiedId.toString()));
+					Log.d(TAG, () -> "Single-class import of " + qualifiedId);
+					anImport = new Import(ImportType.TYPE, qualifiedId.toString());
+				}
+				switch (anImport.getType()) {
+				case TYPE:
+					// Two single-type imports of the same simple name do not compile, so keep the first
+					singleTypeImports.putIfAbsent(idReference.getIdentifier().toString(), anImport.getScope());
+					break;
+				case GLOB:
+					if (!anImport.getScope().equals(JAVA_LANG)) {
+						globImports.add(anImport.getScope());
+					}
+					break;
+				}
+				if (importTree.isStatic()) {
+					// A static import also imports the member types that it names, so it is a type import too
+					if (anImport.getType() == ImportType.GLOB) {
+						staticGlobImports.add(anImport.getScope());
+					} else {
+						singleStaticImports.computeIfAbsent(idReference.getIdentifier().toString(),
+								name -> new ArrayList<>()).add(idReference.getExpression().toString());
+					}
 				}
 			}
 		}
 		
-		// Add an implicit import of java.lang
-		parsedImports.add(new Import(ImportType.GLOB, "java.lang"));
-		
 		this.env = env;
-		this.imports = parsedImports;
+		this.singleTypeImports = singleTypeImports;
+		this.globImports = new ArrayList<>(globImports);
+		this.singleStaticImports = singleStaticImports;
+		this.staticGlobImports = new ArrayList<>(staticGlobImports);
+		this.packageIndex = packageIndex;
 	}
 	
 	/**
@@ -90,14 +142,7 @@ public class TypeResolver {
 	public String resolveUnqualifiedType(String unqualifiedName, String currentPackage) {
 		Objects.requireNonNull(unqualifiedName);
 		Objects.requireNonNull(currentPackage);
-		Log.v(TAG, "resolveUnqualifiedType(" + unqualifiedName + " in " + currentPackage + ")");
-		
-		// Check current package
-		final String packagePrefix = currentPackage.isEmpty() ? "" : currentPackage + ".";
-		final String inCurrentPackage = packagePrefix + unqualifiedName;
-		if (env.getElementUtils().getTypeElement(inCurrentPackage) != null) {
-			return inCurrentPackage;
-		}
+		Log.v(TAG, () -> "resolveUnqualifiedType(" + unqualifiedName + " in " + currentPackage + ")");
 		
 		if (unqualifiedName.endsWith("[]")) {
 			// An array type
@@ -117,85 +162,51 @@ public class TypeResolver {
 			// Do not put template arguments back
 			return resolveUnqualifiedType(withoutTemplateArgs, currentPackage);
 		}
-		
-		for (Import anImport : imports) {
-			Log.d(TAG, String.format("Looking for \"%s\" in import \"%s\"", unqualifiedName, anImport));
-			switch (anImport.getType()) {
-			case TYPE:
-				if (anImport.getScope().endsWith("." + unqualifiedName)) {
-					return anImport.getScope();
-				}
-				// Check for importing a class and referencing a class nested in it
-				final int dotIndex = unqualifiedName.indexOf('.');
-				if (dotIndex != -1) {
-					final String outer = unqualifiedName.substring(0, dotIndex);
-					final String inner = unqualifiedName.substring(dotIndex + 1);
-					if (anImport.getScope().endsWith("." + outer)) {
-						return anImport.getScope() + "." + inner;
-					}
-				}
-				break;
-			case GLOB:
-				final String qualified = resolveClassInPackage(anImport.getScope(), unqualifiedName);
-				if (qualified != null) {
-					return qualified;
-				}
-				break;
+
+		// A reference to a nested class, such as Outer.Inner, is resolved through its outermost class
+		final int dotIndex = unqualifiedName.indexOf('.');
+		final String outer = dotIndex == -1 ? unqualifiedName : unqualifiedName.substring(0, dotIndex);
+		final String nested = dotIndex == -1 ? "" : unqualifiedName.substring(dotIndex);
+
+		final String imported = singleTypeImports.get(outer);
+		if (imported != null) {
+			return imported + nested;
+		}
+
+		// Check current package
+		final String packagePrefix = currentPackage.isEmpty() ? "" : currentPackage + ".";
+		final String inCurrentPackage = packagePrefix + unqualifiedName;
+		if (env.getElementUtils().getTypeElement(inCurrentPackage) != null) {
+			return inCurrentPackage;
+		}
+
+		for (String scope : globImports) {
+			Log.d(TAG, () -> String.format("Looking for \"%s\" in import \"%s.*\"", outer, scope));
+			final String qualified = packageIndex.resolve(scope, outer);
+			if (qualified != null) {
+				return qualified + nested;
 			}
 		}
-		return null;
+		final String qualified = packageIndex.resolve(JAVA_LANG, outer);
+		return qualified != null ? qualified + nested : null;
 	}
 
 	/**
-	 * Attempts to resolve an unqualified class name in a package
-	 * 
-	 * @param packageName
-	 *            the package in which to look for classes
-	 * @param className
-	 *            the class name to match
-	 * @return the fully-qualified name of the class, or null if it could not be
-	 *         resolved in this package
+	 * Returns the classes that a static member with a name may be imported from
+	 *
+	 * Single-static imports shadow static glob imports, so the classes of single-static imports of the name come
+	 * first, followed by every class whose static members are all imported.
+	 *
+	 * @param memberName the simple name of a method or field
+	 * @return the canonical names of the classes, in the order in which they should be searched
 	 */
-	private String resolveClassInPackage(String packageName, String className) {
-		final PackageElement packageElement = env.getElementUtils().getPackageElement(packageName);
-		if (packageElement != null) {
-			for (Element innerType : packageElement.getEnclosedElements()) {
-				switch (innerType.getKind()) {
-				// Intentional fallthrough
-				case CLASS:
-				case ENUM:
-				case INTERFACE:
-					if (innerType.getSimpleName().contentEquals(className)) {
-						// Found
-						return innerType.asType().toString();
-					}
-				default:
-					break;
-				}
-			}
+	public List<String> getStaticImportScopes(String memberName) {
+		final List<String> imported = singleStaticImports.get(memberName);
+		if (imported == null) {
+			return staticGlobImports;
 		}
-		final TypeElement typeElement = env.getElementUtils().getTypeElement(packageName);
-		if (typeElement != null) {
-			for (Element inner : typeElement.getEnclosedElements()) {
-				switch (inner.getKind()) {
-				// Intentional fallthrough
-				case CLASS:
-				case ENUM:
-				case INTERFACE:
-					Log.d(TAG, "Looking in class " + typeElement.getQualifiedName() + " for inner class " + className);
-					if (inner.getSimpleName().contentEquals(className)) {
-						// Found
-						// Erase type to remove template arguments
-						final Types types = env.getTypeUtils();
-						return types.erasure(inner.asType()).toString();
-					}
-					break;
-				default:
-					break;
-				}
-			}
-		}
-		return null;
+		final List<String> scopes = new ArrayList<>(imported);
+		scopes.addAll(staticGlobImports);
+		return scopes;
 	}
-	
 }
@@ -0,0 +1,155 @@
+package org.coffeebag.processor.spill;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.coffeebag.log.Log;
+
+/**
+ * A temporary file that holds the references of classes whose scanning is complete, so that they do not stay on the
+ * heap until the final round
+ *
+ * References are appended as each round ends, and read back one record at a time through a buffered stream, so reading
+ * takes the same memory however large the file is. Elements are stored as IDs, so the file can only be read with the
+ * symbol table that it was written with.
+ * <pre>
+ * records: short class name length, class name (UTF-8), int type count, int[] type IDs, int field count,
+ * int[] field IDs
+ * </pre>
+ */
+public class ReferenceSpill implements Closeable {
+	private static final String TAG = ReferenceSpill.class.getSimpleName();
+
+	/**
+	 * Receives the classes read from a spill file
+	 */
+	public interface Visitor {
+		/**
+		 * Called once for each class in the file
+		 * @param className the canonical name of the class
+		 * @param types the sorted IDs of the types that the class refers to
+		 * @param fields the sorted IDs of the fields that the class refers to
+		 */
+		void visit(String className, int[] types, int[] fields);
+	}
+
+	/**
+	 * The file
+	 */
+	private final Path file;
+	/**
+	 * The stream that appends to the file
+	 */
+	private final DataOutputStream out;
+	/**
+	 * The number of classes written
+	 */
+	private int size;
+
+	/**
+	 * Creates an empty spill file, replacing any file at the path
+	 * @param file the file to create
+	 * @throws IOException if the file could not be created
+	 */
+	public ReferenceSpill(Path file) throws IOException {
+		this.file = file;
+		final Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+	}
+
+	/**
+	 * @return the number of classes written
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Appends the references of a class
+	 * @param className the canonical name of the class
+	 * @param types the IDs of the types that the class refers to
+	 * @param fields the IDs of the fields that the class refers to
+	 * @throws IOException if the references could not be written
+	 */
+	public void write(String className, int[] types, int[] fields) throws IOException {
+		final byte[] name = className.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(name.length);
+		out.write(name);
+		writeIds(types);
+		writeIds(fields);
+		size++;
+	}
+
+	private void writeIds(int[] ids) throws IOException {
+		out.writeInt(ids.length);
+		for (int id : ids) {
+			out.writeInt(id);
+		}
+	}
+
+	/**
+	 * Reads every class written so far
+	 * @param visitor receives the classes, in the order in which they were written
+	 * @throws IOException if the file could not be read
+	 */
+	public void read(Visitor visitor) throws IOException {
+		out.flush();
+		Log.d(TAG, () -> "Reading " + size + " classes from " + file);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			// Reused for the IDs of each record
+			byte[] bytes = new byte[0];
+			for (int i = 0; i < size; i++) {
+				final byte[] name = new byte[in.readUnsignedShort()];
+				in.readFully(name);
+				final int typeCount = in.readInt();
+				bytes = readBytes(in, bytes, typeCount);
+				final int[] types = toIds(bytes, typeCount);
+				final int fieldCount = in.readInt();
+				bytes = readBytes(in, bytes, fieldCount);
+				final int[] fields = toIds(bytes, fieldCount);
+				visitor.visit(new String(name, StandardCharsets.UTF_8), types, fields);
+			}
+		}
+	}
+
+	/**
+	 * Reads the bytes of some IDs
+	 * @param in the stream
+	 * @param bytes a buffer that may be reused
+	 * @param count the number of IDs
+	 * @return a buffer whose first 4 * count bytes are the IDs
+	 */
+	private static byte[] readBytes(DataInputStream in, byte[] bytes, int count) throws IOException {
+		if (bytes.length < 4 * count) {
+			bytes = new byte[4 * count];
+		}
+		in.readFully(bytes, 0, 4 * count);
+		return bytes;
+	}
+
+	private static int[] toIds(byte[] bytes, int count) {
+		final int[] ids = new int[count];
+		ByteBuffer.wrap(bytes, 0, 4 * count).asIntBuffer().get(ids);
+		return ids;
+	}
+
+	/**
+	 * Closes and deletes the file
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+		Files.deleteIfExists(file);
+	}
+}
@@ -0,0 +1,149 @@
+package org.coffeebag.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.coffeebag.log.Log.Level;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks which messages a {@link Log} writes, and that they are written in order before flush and close return
+ */
+public class LogTest {
+
+	private static final String TAG = "LogTest";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Log log;
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = folder.newFile("log.txt").toPath();
+		log = new Log();
+		log.setOutput(file);
+	}
+
+	@After
+	public void tearDown() {
+		log.close();
+	}
+
+	@Test
+	public void disabledLogWritesNothing() throws IOException {
+		log.log(Level.INFO, TAG, "message");
+		log.log(Level.INFO, TAG, () -> {
+			fail("Supplier called while the log is disabled");
+			return null;
+		});
+		log.flush();
+		assertEquals(Arrays.asList(), readLines());
+	}
+
+	@Test
+	public void levelsBelowTheMinimumAreNotWritten() throws IOException {
+		log.setEnabled(true);
+		log.setLevel(Level.DEBUG);
+		assertFalse(log.isLoggable(Level.VERBOSE, TAG));
+		assertTrue(log.isLoggable(Level.DEBUG, TAG));
+		log.log(Level.VERBOSE, TAG, "verbose");
+		log.log(Level.VERBOSE, TAG, () -> {
+			fail("Supplier called for a level below the minimum");
+			return null;
+		});
+		log.log(Level.DEBUG, TAG, "debug");
+		log.log(Level.INFO, TAG, () -> "info");
+		log.flush();
+		assertEquals(Arrays.asList("[D/LogTest] debug", "[I/LogTest] info"), readLines());
+	}
+
+	@Test
+	public void tagFilterSelectsMessages() throws IOException {
+		log.setEnabled(true);
+		log.setTagFilter(tag -> tag.startsWith("Check"));
+		log.log(Level.INFO, "CheckVisibility", "kept");
+		log.log(Level.INFO, "ReferenceFinder", "dropped");
+		log.log(Level.INFO, "ReferenceFinder", () -> {
+			fail("Supplier called for a filtered tag");
+			return null;
+		});
+		log.flush();
+		assertEquals(Arrays.asList("[I/CheckVisibility] kept"), readLines());
+	}
+
+	@Test
+	public void flushAndCloseWriteEveryMessageInOrder() throws IOException {
+		log.setEnabled(true);
+		final List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			log.log(Level.INFO, TAG, "message " + i);
+			expected.add("[I/LogTest] message " + i);
+		}
+		log.flush();
+		assertEquals(expected, readLines());
+
+		log.log(Level.INFO, TAG, "last");
+		expected.add("[I/LogTest] last");
+		log.close();
+		assertEquals(expected, readLines());
+	}
+
+	@Test
+	public void messagesBeforeChangingTheOutputGoToThePreviousOutput() throws IOException {
+		log.setEnabled(true);
+		log.log(Level.INFO, TAG, "first");
+		final Path second = folder.newFile("second.txt").toPath();
+		log.setOutput(second);
+		log.log(Level.INFO, TAG, "second");
+		log.close();
+		assertEquals(Arrays.asList("[I/LogTest] first"), readLines());
+		assertEquals(Arrays.asList("[I/LogTest] second"), Files.readAllLines(second, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void failedWriterDropsLines() {
+		final AsyncLogWriter writer = new AsyncLogWriter(new Writer() {
+			@Override
+			public void write(char[] buffer, int offset, int length) throws IOException {
+				throw new IOException("Disk full");
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		}, true);
+		writer.write("fails");
+		// Returns once the writer thread has stopped
+		writer.flush();
+		for (int i = 0; i < 1000; i++) {
+			writer.write("dropped " + i);
+		}
+		assertEquals(0, writer.getQueuedCount());
+		writer.close();
+	}
+
+	private List<String> readLines() throws IOException {
+		return Files.readAllLines(file, StandardCharsets.UTF_8);
+	}
+}
@@ -1,9 +1,31 @@
 package org.coffeebag.processor;
 
+import static org.junit.Assert.assertTrue;
+
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
 
 import org.junit.runner.Description;
 
+import com.sun.source.util.JavacTask;
+
 /**
  * This represents a single compilation test to be run
  */
@@ -16,6 +38,14 @@ public abstract class AbstractCompilerTest {
 	 * The source file to read
 	 */
 	private final File source;
+	/**
+	 * The temporary directory that compilations write their output to, or null if it has not been created
+	 */
+	private Path outputDirectory;
+	/**
+	 * The file managers of the compilations, which are closed when the test is cleaned up
+	 */
+	private final List<StandardJavaFileManager> fileManagers;
 
 	/**
 	 * Creates a test
@@ -25,6 +55,7 @@ public abstract class AbstractCompilerTest {
 	 */
 	public AbstractCompilerTest(File sourceFile, File referenceFile, Class<?> testClass) {
 		this.source = sourceFile;
+		this.fileManagers = new ArrayList<>();
 
 		final String testName = sourceFile.getName().replaceFirst("\\.java$", "");
 		this.description = Description.createTestDescription(testClass, testName);
@@ -51,4 +82,119 @@ public abstract class AbstractCompilerTest {
 	public File getSource() {
 		return source;
 	}
+
+	/**
+	 * @return the source file, or the Java files in the source directory
+	 */
+	protected List<File> getSourceFiles() {
+		return source.isFile() ? Arrays.asList(source)
+				: Arrays.asList(source.listFiles((dir, name) -> name.endsWith(".java")));
+	}
+
+	/**
+	 * Returns the temporary directory that compilations write class files and generated sources to, creating it
+	 * the first time
+	 * @return the directory, which is deleted when the test is cleaned up
+	 * @throws IOException if the directory could not be created
+	 */
+	protected Path getOutputDirectory() throws IOException {
+		if (outputDirectory == null) {
+			outputDirectory = Files.createTempDirectory("coffeebag-test");
+		}
+		return outputDirectory;
+	}
+
+	/**
+	 * Creates a javac task that compiles the sources of this test into the output directory
+	 * @param options javac options, in addition to the output directories
+	 * @param diagnostics receives the diagnostics of the compilation
+	 * @return the task
+	 * @throws IOException if the output directory could not be created
+	 */
+	protected JavacTask createTask(List<String> options, DiagnosticCollector<JavaFileObject> diagnostics)
+			throws IOException {
+		return createTask(getSourceFiles(), options, diagnostics);
+	}
+
+	/**
+	 * Creates a javac task that compiles some sources into the output directory
+	 * @param sources the source files
+	 * @param options javac options, in addition to the output directories
+	 * @param diagnostics receives the diagnostics of the compilation
+	 * @return the task
+	 * @throws IOException if the output directory could not be created
+	 */
+	protected JavacTask createTask(List<File> sources, List<String> options,
+			DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+		return createTask(sources, null, options, diagnostics);
+	}
+
+	/**
+	 * Creates a javac task that compiles some sources into the output directory, and processes some classes from
+	 * class files, as build tools do for the classes that they do not recompile
+	 * @param sources the source files
+	 * @param classNames the names of classes to process from class files, or null
+	 * @param options javac options, in addition to the output directories and the UTF-8 encoding of the test data
+	 * @param diagnostics receives the diagnostics of the compilation
+	 * @return the task
+	 * @throws IOException if the output directory could not be created
+	 */
+	protected JavacTask createTask(List<File> sources, List<String> classNames, List<String> options,
+			DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		// A file manager keeps the output directories of its first task, so each task gets its own
+		final StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+		fileManagers.add(fileManager);
+		final String output = getOutputDirectory().toString();
+		final List<String> allOptions = new ArrayList<>(Arrays.asList("-d", output, "-s", output, "-encoding", "UTF-8"));
+		allOptions.addAll(options);
+		return (JavacTask) compiler.getTask(null, fileManager, diagnostics, allOptions, classNames,
+				fileManager.getJavaFileObjectsFromFiles(sources));
+	}
+
+	/**
+	 * Compiles the sources of this test with a processor
+	 * @param processor the processor
+	 * @param options javac options, in addition to the output directories
+	 * @param diagnostics receives the diagnostics of the compilation
+	 * @return true if the compilation succeeded
+	 * @throws IOException if the output directory could not be created
+	 */
+	protected boolean compile(CheckVisibility processor, List<String> options,
+			DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+		final JavacTask task = createTask(options, diagnostics);
+		task.setProcessors(Collections.singletonList(processor));
+		return task.call();
+	}
+
+	/**
+	 * Reads a count from the statistics that a compilation with {@link Options#STATS} wrote to the output directory
+	 * @param name the JSON name of the count
+	 * @return the count
+	 * @throws IOException if the statistics could not be read
+	 */
+	protected long readCount(String name) throws IOException {
+		final Path file = getOutputDirectory().resolve("coffeebag-stats.json");
+		final String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		final Matcher matcher = Pattern.compile("\"" + name + "\": (-?\\d+)").matcher(json);
+		assertTrue("No count " + name + " in " + file, matcher.find());
+		return Long.parseLong(matcher.group(1));
+	}
+
+	/**
+	 * Closes the file managers and deletes the output directory of this test
+	 * @throws IOException if a file could not be deleted
+	 */
+	public void cleanUp() throws IOException {
+		for (StandardJavaFileManager fileManager : fileManagers) {
+			fileManager.close();
+		}
+		fileManagers.clear();
+		if (outputDirectory != null) {
+			try (Stream<Path> files = Files.walk(outputDirectory)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+			outputDirectory = null;
+		}
+	}
 }
@@ -104,6 +104,12 @@ public abstract class AbstractCompilerTestRunner extends Runner {
 				test.run(processor);
 			} catch (Throwable e) {
 				notifier.fireTestFailure(new Failure(test.getDescription(), e));
+			} finally {
+				try {
+					test.cleanUp();
+				} catch (IOException e) {
+					notifier.fireTestFailure(new Failure(test.getDescription(), e));
+				}
 			}
 			notifier.fireTestFinished(test.getDescription());
 			System.out.println("[CompilerTestRunner] ---- Finished test " + test.getDescription().getDisplayName() + " ----");
@@ -0,0 +1,25 @@
+package org.coffeebag.processor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs the {@link BatchCheckerTest} tests
+ */
+public class BatchCheckerRunner extends AbstractCompilerTestRunner {
+
+	public BatchCheckerRunner(Class<?> testClass) throws IOException {
+		super(testClass);
+	}
+
+	@Override
+	public String getTestPath() {
+		return "test-data/BatchChecker";
+	}
+
+	@Override
+	public AbstractCompilerTest createTest(File sourceFile, File textFile, Class<?> testClass)
+			throws IOException {
+		return new BatchCheckerTest(sourceFile, textFile, testClass);
+	}
+}
@@ -0,0 +1,120 @@
+package org.coffeebag.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+
+import org.coffeebag.cli.BatchChecker;
+
+import com.sun.source.util.JavacTask;
+
+/**
+ * Runs the batch checker on a source tree, once with one partition and once with a partition for each source file,
+ * and checks its exit code and output
+ *
+ * The first line of the expectation file is "exit", the expected exit code, and the other arguments to pass to the
+ * checker. The other lines are the expected output, with file paths relative to the source tree. When the checker
+ * checks usages, the processor must find the same violations.
+ */
+public class BatchCheckerTest extends AbstractCompilerTest {
+
+	private static final String ERROR = ": error: ";
+
+	private final int expectedExitCode;
+	private final List<String> arguments;
+	private final List<String> expectedOutput;
+
+	public BatchCheckerTest(File sourceFile, File referenceFile, Class<?> testClass) throws IOException {
+		super(sourceFile, referenceFile, testClass);
+		final List<String> lines = Files.readAllLines(referenceFile.toPath(), StandardCharsets.UTF_8);
+		final List<String> words = new ArrayList<>(Arrays.asList(lines.get(0).split(" ")));
+		if (!words.remove(0).equals("exit") || words.isEmpty()) {
+			throw new RuntimeException("Syntax Error: line 1 of a BatchCheckerTest must be \"exit [code] [arguments]\"");
+		}
+		expectedExitCode = Integer.parseInt(words.remove(0));
+		arguments = words;
+		expectedOutput = lines.subList(1, lines.size()).stream()
+				.filter(line -> !line.isEmpty())
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	protected List<File> getSourceFiles() {
+		try (Stream<Path> files = Files.walk(getSource().toPath())) {
+			return files.filter(file -> file.toString().endsWith(".java"))
+					.map(Path::toFile)
+					.sorted()
+					.collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void run(CheckVisibility processor) throws Exception {
+		// With a partition for each file, every reference to another file crosses partitions
+		for (int partitions : new int[] { 1, getSourceFiles().size() }) {
+			final List<String> output = runChecker(partitions);
+			assertEquals("Output with " + partitions + " partitions", expectedOutput, output);
+		}
+
+		if (!arguments.isEmpty()) {
+			return;
+		}
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		final JavacTask task = createTask(Arrays.asList("-A" + Options.STATS), diagnostics);
+		task.setProcessors(Collections.singletonList(processor));
+		task.call();
+		final List<String> checkerErrors = expectedOutput.stream()
+				.filter(line -> line.contains(ERROR))
+				.map(line -> line.substring(line.indexOf(ERROR) + ERROR.length()))
+				.collect(Collectors.toList());
+		assertEquals("Violations found by the processor", checkerErrors.size(), readCount("violations"));
+		// The processor reports errors at the using class, and javac 8 only reports the first error at a position
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+				assertTrue("Error not found by the checker: " + diagnostic,
+						checkerErrors.contains(diagnostic.getMessage(Locale.ROOT)));
+			}
+		}
+	}
+
+	/**
+	 * Runs the checker
+	 * @param partitions the number of partitions
+	 * @return the lines of output, with file paths relative to the source tree
+	 */
+	private List<String> runChecker(int partitions) {
+		final List<String> args = new ArrayList<>(Arrays.asList("-partitions", Integer.toString(partitions)));
+		args.addAll(arguments);
+		args.add(getSource().getAbsolutePath());
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final PrintStream out = new PrintStream(bytes, true);
+		final int exitCode = BatchChecker.run(args.toArray(new String[0]), out, out);
+		final String root = getSource().getAbsolutePath() + File.separator;
+		final List<String> output = Arrays.stream(new String(bytes.toByteArray()).split("\\R"))
+				.filter(line -> !line.isEmpty())
+				.map(line -> line.replace(root, "").replace(File.separatorChar, '/'))
+				.collect(Collectors.toList());
+		assertEquals("Exit code with " + partitions + " partitions, output " + output, expectedExitCode, exitCode);
+		return output;
+	}
+}
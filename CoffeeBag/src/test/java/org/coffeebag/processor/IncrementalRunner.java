@@ -0,0 +1,25 @@
+package org.coffeebag.processor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs the {@link IncrementalTest} tests
+ */
+public class IncrementalRunner extends AbstractCompilerTestRunner {
+
+	public IncrementalRunner(Class<?> testClass) throws IOException {
+		super(testClass);
+	}
+
+	@Override
+	public String getTestPath() {
+		return "test-data/Incremental";
+	}
+
+	@Override
+	public AbstractCompilerTest createTest(File sourceFile, File textFile, Class<?> testClass)
+			throws IOException {
+		return new IncrementalTest(sourceFile, textFile, testClass);
+	}
+}
@@ -0,0 +1,172 @@
+package org.coffeebag.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+
+import com.sun.source.util.JavacTask;
+
+/**
+ * Compiles the steps of an incremental build with one state file, and checks the result of each step
+ *
+ * The test directory contains a directory for each step, named 1, 2 and so on, with the source files that the step
+ * adds or changes. A step directory may also contain a file named state, which replaces the state file before the
+ * step, or a file named state-from, which contains the number of an earlier step whose saved state replaces it.
+ *
+ * Each line of the expectation file describes a step: "pass" or "fail", then options, then text that must appear in
+ * an error of a failing step or in a warning of a passing step. The options are "partial", which compiles only the
+ * sources of the step and processes the other classes from class files as Gradle does, and "reused=[count]", the
+ * number of compilation units whose references must be reused from the state.
+ */
+public class IncrementalTest extends AbstractCompilerTest {
+
+	private static final Pattern REUSED = Pattern.compile("\"reusedCompilationUnits\": (\\d+)");
+	private static final Pattern PACKAGE = Pattern.compile("^package ([\\w.]+);", Pattern.MULTILINE);
+	/**
+	 * The modification time of the sources of the first step. Each later step is a minute later.
+	 */
+	private static final long FIRST_STEP_TIME = 1_000_000_000_000L;
+
+	/**
+	 * A step of the build
+	 */
+	private static class Step {
+		private boolean expectPass;
+		private boolean partial;
+		/**
+		 * The number of reused compilation units, or -1 to not check it
+		 */
+		private int reused = -1;
+		/**
+		 * The text that must appear in an error or warning, or null
+		 */
+		private String message;
+	}
+
+	private final List<Step> steps;
+
+	public IncrementalTest(File sourceFile, File referenceFile, Class<?> testClass) throws IOException {
+		super(sourceFile, referenceFile, testClass);
+		steps = new ArrayList<>();
+		for (String line : Files.readAllLines(referenceFile.toPath(), StandardCharsets.UTF_8)) {
+			if (line.isEmpty()) {
+				continue;
+			}
+			final Step step = new Step();
+			final List<String> words = new ArrayList<>(Arrays.asList(line.split(" ")));
+			switch (words.remove(0)) {
+				case "pass":
+					step.expectPass = true;
+					break;
+				case "fail":
+					step.expectPass = false;
+					break;
+				default:
+					throw new RuntimeException("Syntax Error: each line of an IncrementalTest must start with "
+							+ "\"pass\" or \"fail\"");
+			}
+			while (!words.isEmpty() && (words.get(0).equals("partial") || words.get(0).startsWith("reused="))) {
+				final String option = words.remove(0);
+				if (option.equals("partial")) {
+					step.partial = true;
+				} else {
+					step.reused = Integer.parseInt(option.substring("reused=".length()));
+				}
+			}
+			if (!words.isEmpty()) {
+				step.message = String.join(" ", words);
+			}
+			steps.add(step);
+		}
+	}
+
+	@Override
+	public void run(CheckVisibility processor) throws Exception {
+		final Path output = getOutputDirectory();
+		final Path sources = output.resolve("sources");
+		final Path stateFile = output.resolve("coffeebag.state");
+		Files.createDirectories(sources);
+		for (int i = 0; i < steps.size(); i++) {
+			final Step step = steps.get(i);
+			final int number = i + 1;
+			final List<File> changed = new ArrayList<>();
+			final File[] stepFiles = new File(getSource(), Integer.toString(number)).listFiles();
+			for (File file : stepFiles != null ? stepFiles : new File[0]) {
+				if (file.getName().equals("state")) {
+					Files.copy(file.toPath(), stateFile, StandardCopyOption.REPLACE_EXISTING);
+				} else if (file.getName().equals("state-from")) {
+					final String from = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+					Files.copy(output.resolve("state-" + from), stateFile, StandardCopyOption.REPLACE_EXISTING);
+				} else {
+					final Path source = sources.resolve(file.getName());
+					Files.copy(file.toPath(), source, StandardCopyOption.REPLACE_EXISTING);
+					// Each step has its own modification time, even on file systems with a coarse resolution
+					Files.setLastModifiedTime(source, FileTime.fromMillis(FIRST_STEP_TIME + i * 60_000L));
+					changed.add(source.toFile());
+				}
+			}
+
+			final List<File> compiled = new ArrayList<>();
+			final List<String> classNames = new ArrayList<>();
+			for (File source : sources.toFile().listFiles((dir, name) -> name.endsWith(".java"))) {
+				if (!step.partial || changed.contains(source)) {
+					compiled.add(source);
+				} else {
+					classNames.add(getClassName(source));
+				}
+			}
+			final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+			final JavacTask task = createTask(compiled, classNames, Arrays.asList("-classpath",
+					output + File.pathSeparator + System.getProperty("java.class.path"),
+					"-A" + Options.INCREMENTAL + "=" + stateFile, "-A" + Options.STATS), diagnostics);
+			task.setProcessors(Collections.singletonList(i == 0 ? processor : new CheckVisibility(true)));
+			final String description = "Step " + number + ": " + diagnostics.getDiagnostics();
+			assertEquals(description, step.expectPass, task.call());
+			if (step.message != null) {
+				final Diagnostic.Kind kind = step.expectPass ? Diagnostic.Kind.WARNING : Diagnostic.Kind.ERROR;
+				assertTrue("Step " + number + ": no " + kind + " containing \"" + step.message + "\" in "
+						+ diagnostics.getDiagnostics(), diagnostics.getDiagnostics().stream()
+								.anyMatch(diagnostic -> diagnostic.getKind() == kind
+										&& diagnostic.getMessage(Locale.ROOT).contains(step.message)));
+			}
+			if (step.reused != -1) {
+				final String statistics = new String(Files.readAllBytes(output.resolve("coffeebag-stats.json")),
+						StandardCharsets.UTF_8);
+				final Matcher matcher = REUSED.matcher(statistics);
+				assertTrue(statistics, matcher.find());
+				assertEquals(description, step.reused, Integer.parseInt(matcher.group(1)));
+			}
+			if (Files.exists(stateFile)) {
+				Files.copy(stateFile, output.resolve("state-" + number), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+	}
+
+	/**
+	 * @return the name of the top-level class that a source file declares
+	 */
+	private static String getClassName(File source) throws IOException {
+		final String simpleName = source.getName().replaceFirst("\\.java$", "");
+		final Matcher matcher = PACKAGE.matcher(new String(Files.readAllBytes(source.toPath()),
+				StandardCharsets.UTF_8));
+		return matcher.find() ? matcher.group(1) + "." + simpleName : simpleName;
+	}
+}
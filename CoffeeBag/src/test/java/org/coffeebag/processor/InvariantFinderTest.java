@@ -2,14 +2,14 @@ package org.coffeebag.processor;
 
 import com.google.testing.compile.JavaFileObjects;
 import com.google.testing.compile.JavaSourceSubjectFactory;
+import org.coffeebag.domain.UsingClass;
 import org.coffeebag.domain.invariant.VisibilityInvariant;
 
-import javax.lang.model.element.Name;
-import javax.lang.model.element.TypeElement;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Scanner;
@@ -18,7 +18,6 @@ import java.util.Set;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
-import static org.mockito.Mockito.*;
 import static org.truth0.Truth.ASSERT;
 
 /**
@@ -96,23 +95,20 @@ public class InvariantFinderTest extends AbstractCompilerTest {
 					fail("test line syntax: neither PASS nor FAIL as 3rd token");
 			}
 
-			TypeElement mockElement = getMockElement(packageName, simpleClassName, isSubclass);
+			UsingClass usingClass = getUsingClass(packageName, simpleClassName, isSubclass, testedClassName);
 			String errorMsg = getErrorMsg(testedClassName, packageName, simpleClassName,
 					isSubclass, isPassExpected);
 
-			assertThat(errorMsg, invariant.isUsageAllowedIn(mockElement), is(isPassExpected));
+			assertThat(errorMsg, invariant.isUsageAllowedIn(usingClass), is(isPassExpected));
 		}
 	}
 
-	private TypeElement getMockElement(String packageName,
-	                                   String simpleClassName,
-	                                   boolean isSubclass) {
-		TypeElement mockElement = mock(TypeElement.class);
-		Name mockName = mock(Name.class);
-		when(mockName.toString()).thenReturn(getQualifiedName(packageName, simpleClassName));
-		when(mockElement.getQualifiedName()).thenReturn(mockName);
-
-		return mockElement;
+	private UsingClass getUsingClass(String packageName,
+	                                 String simpleClassName,
+	                                 boolean isSubclass,
+	                                 String testedClassName) {
+		return new UsingClass(getQualifiedName(packageName, simpleClassName), packageName,
+				isSubclass ? Collections.singletonList(testedClassName) : Collections.<String>emptyList());
 	}
 
 	private String getErrorMsg(String testedClassName,
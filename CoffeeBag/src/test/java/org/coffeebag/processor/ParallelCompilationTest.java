@@ -0,0 +1,130 @@
+package org.coffeebag.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.source.util.JavacTask;
+
+/**
+ * Runs two compilations with different options in parallel in one virtual machine, as a compiler daemon does, and
+ * checks that each compilation only writes its own log and reports its own errors
+ */
+public class ParallelCompilationTest {
+
+	private static final File TEST_DATA = new File("test-data/VisibilityChecker");
+	private static final int RUNS = 5;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * The results of a compilation
+	 */
+	private static class Result {
+		private final List<String> errors;
+		private final List<String> log;
+
+		Result(List<String> errors, List<String> log) {
+			this.errors = errors;
+			this.log = log;
+		}
+	}
+
+	@Test
+	public void compilationsAreIsolated() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int run = 0; run < RUNS; run++) {
+				final CountDownLatch start = new CountDownLatch(2);
+				final Future<Result> verbose = executor.submit(compilation(start, "IllegalPrivateField", "VERBOSE"));
+				final Future<Result> debug = executor.submit(compilation(start, "PublicFieldOtherPackage", "DEBUG"));
+
+				final Result illegal = verbose.get();
+				assertEquals(Arrays.asList("Field ClassA.c is not visible to ClassB"), illegal.errors);
+				assertTrue("No verbose messages in " + illegal.log, contains(illegal.log, "[V/"));
+				assertTrue("No messages about ClassA in " + illegal.log, contains(illegal.log, "ClassA.c"));
+				assertFalse("Messages of the other compilation in " + illegal.log, contains(illegal.log, "org.swift"));
+
+				final Result legal = debug.get();
+				assertEquals(Arrays.asList(), legal.errors);
+				assertFalse("Verbose messages in " + legal.log, contains(legal.log, "[V/"));
+				assertTrue("No messages about persephone in " + legal.log, contains(legal.log, "persephone"));
+				assertFalse("Messages of the other compilation in " + legal.log, contains(legal.log, "ClassA"));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param start counted down by each compilation, which then waits until both compilations are ready
+	 * @param testCase the name of a directory of VisibilityChecker test data
+	 * @param level the log level of the compilation
+	 * @return a task that compiles the test case with its own log file, classpath index, and output directory
+	 */
+	private Callable<Result> compilation(CountDownLatch start, String testCase, String level) {
+		return () -> {
+			final Path output = folder.newFolder().toPath();
+			final Path logFile = output.resolve("coffeebag.log");
+			final List<File> sources = Arrays.asList(new File(TEST_DATA, testCase).listFiles(
+					(dir, name) -> name.endsWith(".java")));
+			final List<String> options = Arrays.asList("-d", output.toString(), "-s", output.toString(),
+					"-encoding", "UTF-8", "-proc:only",
+					"-A" + Options.LOG_LEVEL + "=" + level,
+					"-A" + Options.LOG_FILE + "=" + logFile,
+					"-A" + Options.CLASSPATH_INDEX + "=" + output.resolve("classpath.idx"));
+			final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+			final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+			try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+				final JavacTask task = (JavacTask) compiler.getTask(null, fileManager, diagnostics, options, null,
+						fileManager.getJavaFileObjectsFromFiles(sources));
+				task.setProcessors(Collections.singletonList(new CheckVisibility()));
+				start.countDown();
+				start.await();
+				task.call();
+			}
+			final List<String> errors = diagnostics.getDiagnostics().stream()
+					.filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+					.map(diagnostic -> diagnostic.getMessage(Locale.ROOT))
+					.collect(Collectors.toList());
+			return new Result(errors, readLog(logFile));
+		};
+	}
+
+	private static List<String> readLog(Path file) throws IOException {
+		return Files.exists(file) ? Files.readAllLines(file, StandardCharsets.UTF_8) : new ArrayList<>();
+	}
+
+	private static boolean contains(List<String> lines, String text) {
+		return lines.stream().anyMatch(line -> line.contains(text));
+	}
+}
@@ -0,0 +1,45 @@
+package org.coffeebag.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
+
+/**
+ * Runs the {@link ReferenceFinderTest} tests with glob imports resolved through the class path index
+ *
+ * All tests share one cache file, so the first test creates it and the others reuse it.
+ */
+public class ReferenceFinderClasspathIndexRunner extends ReferenceFinderRunner {
+
+	/**
+	 * The class path index cache shared by the tests
+	 */
+	private final Path cacheFile;
+
+	public ReferenceFinderClasspathIndexRunner(Class<?> testClass) throws IOException {
+		super(testClass);
+		cacheFile = Files.createTempFile("coffeebag-classpath", ".idx");
+		Files.delete(cacheFile);
+		cacheFile.toFile().deleteOnExit();
+	}
+
+	@Override
+	public AbstractCompilerTest createTest(File sourceFile, File textFile, Class<?> testClass)
+			throws IOException {
+		return new ReferenceFinderTest(sourceFile, textFile, testClass,
+				output -> Arrays.asList("-A" + Options.CLASSPATH_INDEX + "=" + cacheFile));
+	}
+
+	@Override
+	public void run(RunNotifier notifier) {
+		super.run(notifier);
+		if (!Files.isRegularFile(cacheFile)) {
+			notifier.fireTestFailure(new Failure(getDescription(), new AssertionError("No class path index written")));
+		}
+	}
+}
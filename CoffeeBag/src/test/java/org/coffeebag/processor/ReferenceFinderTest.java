@@ -1,16 +1,22 @@
 package org.coffeebag.processor;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.truth0.Truth.ASSERT;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Function;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
 
 import com.google.testing.compile.JavaFileObjects;
 import com.google.testing.compile.JavaSourceSubjectFactory;
@@ -23,10 +29,24 @@ public class ReferenceFinderTest extends AbstractCompilerTest {
 	 * The names of the classes referenced in the code
 	 */
 	public final Set<String> referencedTypes;
+	/**
+	 * The javac options to compile with, given the output directory, or null to compile with compile-testing
+	 */
+	private final Function<Path, List<String>> options;
 
 	public ReferenceFinderTest(File sourceFile, File referenceFile, Class<?> testClass)
 			throws IOException {
+		this(sourceFile, referenceFile, testClass, null);
+	}
+
+	/**
+	 * Creates a test that compiles with javac options
+	 * @param options the javac options, given the output directory of the test
+	 */
+	public ReferenceFinderTest(File sourceFile, File referenceFile, Class<?> testClass,
+			Function<Path, List<String>> options) throws IOException {
 		super(sourceFile, referenceFile, testClass);
+		this.options = options;
 
 		// Read type names from file
 		this.referencedTypes = new HashSet<>();
@@ -40,11 +60,25 @@ public class ReferenceFinderTest extends AbstractCompilerTest {
 
 	@Override
 	public void run(CheckVisibility processor) throws Exception {
+		if (options != null) {
+			final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+			assertTrue(diagnostics.getDiagnostics().toString(),
+					compile(processor, options.apply(getOutputDirectory()), diagnostics));
+			checkReferences(processor);
+			return;
+		}
 		ASSERT.about(JavaSourceSubjectFactory.javaSource())
 				.that(JavaFileObjects.forResource(getSource().toURI().toURL()))
 				.processedWith(processor)
 				.compilesWithoutError();
-		
+		checkReferences(processor);
+	}
+
+	/**
+	 * Checks the references that a processor found against the expected references
+	 * @param processor the processor that compiled the source
+	 */
+	protected void checkReferences(CheckVisibility processor) {
 		// Check detected references
 		// 1. Flatten into one set
 		final Set<String> actualReferences = new HashSet<>();
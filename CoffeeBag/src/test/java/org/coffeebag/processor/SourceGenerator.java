@@ -0,0 +1,68 @@
+package org.coffeebag.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedSourceVersion;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * A processor that generates source files in the first round, like processors that generate code from annotations
+ *
+ * This makes a test's classes use types that only exist from the second round on.
+ */
+@SupportedAnnotationTypes("*")
+@SupportedSourceVersion(SourceVersion.RELEASE_8)
+public class SourceGenerator extends AbstractProcessor {
+
+	/**
+	 * The extension of the files that contain the generated sources, [class name].java.generated
+	 */
+	public static final String EXTENSION = ".java.generated";
+
+	private static final Pattern PACKAGE = Pattern.compile("^package ([\\w.]+);", Pattern.MULTILINE);
+
+	/**
+	 * The files to generate sources from
+	 */
+	private final List<File> files;
+	private boolean generated;
+
+	public SourceGenerator(List<File> files) {
+		this.files = files;
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (generated) {
+			return false;
+		}
+		generated = true;
+		try {
+			for (File file : files) {
+				final String source = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+				final String simpleName = file.getName().substring(0, file.getName().length() - EXTENSION.length());
+				final Matcher matcher = PACKAGE.matcher(source);
+				final String className = matcher.find() ? matcher.group(1) + "." + simpleName : simpleName;
+				try (Writer writer = processingEnv.getFiler().createSourceFile(className).openWriter()) {
+					writer.write(source);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return false;
+	}
+}
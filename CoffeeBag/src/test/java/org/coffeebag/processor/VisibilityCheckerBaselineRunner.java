@@ -0,0 +1,20 @@
+package org.coffeebag.processor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs the {@link VisibilityCheckerTest} tests with a violation baseline
+ */
+public class VisibilityCheckerBaselineRunner extends VisibilityCheckerRunner {
+
+	public VisibilityCheckerBaselineRunner(Class<?> testClass) throws IOException {
+		super(testClass);
+	}
+
+	@Override
+	public AbstractCompilerTest createTest(File sourceFile, File textFile, Class<?> testClass)
+			throws IOException {
+		return new VisibilityCheckerBaselineTest(sourceFile, textFile, testClass);
+	}
+}
@@ -0,0 +1,205 @@
+package org.coffeebag.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+
+import org.coffeebag.processor.baseline.ViolationBaseline;
+
+import com.sun.source.util.JavacTask;
+
+/**
+ * Runs a {@link VisibilityCheckerTest} with a violation baseline
+ *
+ * The test records the violations of the default mode in a baseline, then checks that compiling with the baseline
+ * reports none of them. It then writes a baseline in which every violation collides with an earlier entry, so that
+ * it is only found by probing, and adds violations that do not occur, which must be counted as fixed if their class
+ * was compiled. Finally it compiles only the sources without violations against the classes of the first compilation,
+ * and checks that the violations of the other classes are not counted as fixed.
+ */
+public class VisibilityCheckerBaselineTest extends VisibilityCheckerTest {
+
+	private static final String VIOLATION = " is not visible to ";
+	private static final String BASELINE_FILE = "violations.baseline";
+
+	public VisibilityCheckerBaselineTest(File sourceFile, File referenceFile, Class<?> testClass) throws IOException {
+		super(sourceFile, referenceFile, testClass);
+	}
+
+	@Override
+	public void run(CheckVisibility processor) throws Exception {
+		final List<Diagnostic<? extends JavaFileObject>> defaultDiagnostics = compile(processor);
+		checkResult(getMessages(defaultDiagnostics, Diagnostic.Kind.ERROR).isEmpty(), defaultDiagnostics);
+		final List<String> violations = getViolations(defaultDiagnostics);
+		final List<String> otherErrors = getOtherErrors(defaultDiagnostics);
+
+		final Path baseline = getOutputDirectory().resolve(BASELINE_FILE);
+		final List<Diagnostic<? extends JavaFileObject>> updateDiagnostics = compile(new CheckVisibility(true),
+				"-A" + Options.BASELINE + "=" + baseline, "-A" + Options.BASELINE_UPDATE);
+		assertEquals("Violations were reported while recording the baseline", Arrays.asList(),
+				getViolations(updateDiagnostics));
+		assertEquals(otherErrors, getOtherErrors(updateDiagnostics));
+		assertNote(updateDiagnostics, "CoffeeBag recorded " + violations.size() + " violations");
+		final Map<Long, Long> hashes = readHashes(baseline);
+		assertEquals(violations.size(), hashes.size());
+
+		assertSuppressed(baseline, violations.size(), 0, otherErrors);
+
+		// Put an entry of the same class with the same slot before each violation
+		final Map<Long, Long> probed = new LinkedHashMap<>();
+		for (Map.Entry<Long, Long> entry : hashes.entrySet()) {
+			probed.put(entry.getKey() ^ (1L << 62) ^ (1L << 30), entry.getValue());
+			probed.put(entry.getKey(), entry.getValue());
+		}
+		// Add a violation that no longer occurs in a compiled class, and one in a class that is not compiled
+		int fixed = hashes.size();
+		if (!hashes.isEmpty()) {
+			probed.put(ViolationBaseline.hash("class", "com.example.Removed", "com.example.Secret"),
+					hashes.values().iterator().next());
+			fixed++;
+		}
+		probed.put(ViolationBaseline.hash("class", "com.example.Other", "com.example.Secret"),
+				ViolationBaseline.hash("com.example.Other"));
+		ViolationBaseline.write(probed, baseline);
+		assertSuppressed(baseline, violations.size(), fixed, otherErrors);
+
+		ViolationBaseline.write(hashes, baseline);
+		checkPartialCompilation(baseline, defaultDiagnostics, otherErrors);
+	}
+
+	/**
+	 * Compiles the sources that have no violations, with the classes of the earlier compilations on the class path,
+	 * and checks that the baseline violations of the classes that were not compiled are not counted as fixed
+	 * @param baseline the baseline, with the violations of all sources
+	 * @param defaultDiagnostics the diagnostics of compiling all sources without a baseline
+	 * @param otherErrors the errors that are not violations
+	 */
+	private void checkPartialCompilation(Path baseline, List<Diagnostic<? extends JavaFileObject>> defaultDiagnostics,
+			List<String> otherErrors) throws IOException {
+		if (!otherErrors.isEmpty()) {
+			return;
+		}
+		final Set<File> violatingSources = new HashSet<>();
+		for (Diagnostic<? extends JavaFileObject> diagnostic : defaultDiagnostics) {
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR && diagnostic.getSource() != null
+					&& diagnostic.getMessage(Locale.ROOT).contains(VIOLATION)) {
+				violatingSources.add(new File(diagnostic.getSource().toUri()).getAbsoluteFile());
+			}
+		}
+		final List<File> sources = getSourceFiles().stream()
+				.filter(file -> !violatingSources.contains(file.getAbsoluteFile()))
+				.collect(Collectors.toList());
+		if (violatingSources.isEmpty() || sources.isEmpty()) {
+			return;
+		}
+		final String classPath = getOutputDirectory() + File.pathSeparator + System.getProperty("java.class.path");
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		final JavacTask task = createTask(sources, Arrays.asList("-classpath", classPath,
+				"-A" + Options.BASELINE + "=" + baseline), diagnostics);
+		task.setProcessors(getProcessors(new CheckVisibility(true)));
+		task.call();
+		assertEquals("Violations in a partial compilation", Arrays.asList(),
+				getViolations(diagnostics.getDiagnostics()));
+		assertNote(diagnostics.getDiagnostics(), "CoffeeBag baseline suppressed 0 violations, 0 baseline violations "
+				+ "are fixed");
+	}
+
+	/**
+	 * Compiles with a baseline, and checks that it suppresses all violations
+	 * @param baseline the baseline file
+	 * @param suppressed the number of violations that the baseline should suppress
+	 * @param fixed the number of baseline violations that should be reported as fixed
+	 * @param otherErrors the errors that are not violations, which the baseline does not change
+	 */
+	private void assertSuppressed(Path baseline, int suppressed, int fixed, List<String> otherErrors)
+			throws IOException {
+		final List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(new CheckVisibility(true),
+				"-A" + Options.BASELINE + "=" + baseline);
+		assertEquals("Violations in the baseline were reported", Arrays.asList(), getViolations(diagnostics));
+		assertEquals(otherErrors, getOtherErrors(diagnostics));
+		assertNote(diagnostics, "CoffeeBag baseline suppressed " + suppressed + " violations, " + fixed
+				+ " baseline violations are fixed");
+	}
+
+	private List<Diagnostic<? extends JavaFileObject>> compile(CheckVisibility processor, String... options)
+			throws IOException {
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		final JavacTask task = createTask(Arrays.asList(options), diagnostics);
+		task.setProcessors(getProcessors(processor));
+		task.call();
+		return diagnostics.getDiagnostics();
+	}
+
+	private void assertNote(List<Diagnostic<? extends JavaFileObject>> diagnostics, String note) {
+		final List<String> notes = getMessages(diagnostics, Diagnostic.Kind.NOTE);
+		// Parsing errors stop javac before processing, so there is nothing to record
+		if (getOtherErrors(diagnostics).isEmpty()) {
+			assertTrue("No note starting with \"" + note + "\" in " + notes,
+					notes.stream().anyMatch(message -> message.startsWith(note)));
+		}
+	}
+
+	/**
+	 * Reads the hashes from a baseline file, which is a header of four ints followed by the slots
+	 * @return the hashes of the violations, mapped to the hashes of their classes, in slot order
+	 */
+	private static Map<Long, Long> readHashes(Path baseline) throws IOException {
+		final Map<Long, Long> hashes = new LinkedHashMap<>();
+		if (!Files.exists(baseline)) {
+			return hashes;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(baseline)))) {
+			in.readInt();
+			in.readInt();
+			final int slotCount = in.readInt();
+			in.readInt();
+			for (int i = 0; i < slotCount; i++) {
+				final long hash = in.readLong();
+				final long classHash = in.readLong();
+				if (hash != 0) {
+					hashes.put(hash, classHash);
+				}
+			}
+			return hashes;
+		}
+	}
+
+	private static List<String> getViolations(List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+		return getMessages(diagnostics, Diagnostic.Kind.ERROR).stream()
+				.filter(message -> message.contains(VIOLATION))
+				.collect(Collectors.toList());
+	}
+
+	private static List<String> getOtherErrors(List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+		return getMessages(diagnostics, Diagnostic.Kind.ERROR).stream()
+				.filter(message -> !message.contains(VIOLATION))
+				.collect(Collectors.toList());
+	}
+
+	private static List<String> getMessages(List<Diagnostic<? extends JavaFileObject>> diagnostics,
+			Diagnostic.Kind kind) {
+		return diagnostics.stream()
+				.filter(diagnostic -> diagnostic.getKind() == kind)
+				.map(diagnostic -> diagnostic.getMessage(Locale.ROOT))
+				.sorted()
+				.collect(Collectors.toList());
+	}
+}
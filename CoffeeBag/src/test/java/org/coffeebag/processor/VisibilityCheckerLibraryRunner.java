@@ -0,0 +1,25 @@
+package org.coffeebag.processor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs the {@link VisibilityCheckerLibraryTest} tests, which check clients against the invariant indexes of libraries
+ */
+public class VisibilityCheckerLibraryRunner extends AbstractCompilerTestRunner {
+
+	public VisibilityCheckerLibraryRunner(Class<?> testClass) throws IOException {
+		super(testClass);
+	}
+
+	@Override
+	public String getTestPath() {
+		return "test-data/VisibilityCheckerLibrary";
+	}
+
+	@Override
+	public AbstractCompilerTest createTest(File sourceFile, File textFile, Class<?> testClass)
+			throws IOException {
+		return new VisibilityCheckerLibraryTest(sourceFile, textFile, testClass);
+	}
+}
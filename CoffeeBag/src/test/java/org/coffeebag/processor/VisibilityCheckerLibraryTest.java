@@ -0,0 +1,85 @@
+package org.coffeebag.processor;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+
+import org.coffeebag.plugin.CoffeeBagPlugin;
+import org.coffeebag.processor.invariants.InvariantIndex;
+
+import com.sun.source.util.JavacTask;
+
+/**
+ * Compiles a library, and then checks a client of it against the invariant index that the library compilation wrote
+ *
+ * The test directory contains the library sources in library/ and the client sources in client/. The client is
+ * compiled against the library classes in a directory and in a jar, with the processor and with the plugin.
+ */
+public class VisibilityCheckerLibraryTest extends VisibilityCheckerTest {
+
+	public VisibilityCheckerLibraryTest(File sourceFile, File referenceFile, Class<?> testClass) throws IOException {
+		super(sourceFile, referenceFile, testClass);
+	}
+
+	@Override
+	public void run(CheckVisibility processor) throws Exception {
+		final Path output = getOutputDirectory();
+		final Path classes = output.resolve("library");
+		final Path jar = output.resolve("library.jar");
+		Files.createDirectories(classes);
+
+		final DiagnosticCollector<JavaFileObject> libraryDiagnostics = new DiagnosticCollector<>();
+		final JavacTask library = createTask(listSources("library"),
+				Arrays.asList("-d", classes.toString(), "-s", classes.toString()), libraryDiagnostics);
+		library.setProcessors(Collections.singletonList(new CheckVisibility(true)));
+		assertTrue(libraryDiagnostics.getDiagnostics().toString(), library.call());
+		assertTrue("No invariant index written", Files.isRegularFile(classes.resolve(InvariantIndex.RESOURCE)));
+		writeJar(classes, jar);
+
+		for (Path classpath : Arrays.asList(classes, jar)) {
+			final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+			final JavacTask client = createTask(listSources("client"),
+					Arrays.asList("-classpath", classpath.toString()), diagnostics);
+			client.setProcessors(Collections.singletonList(new CheckVisibility(true)));
+			checkResult(client.call(), diagnostics.getDiagnostics());
+		}
+
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		final JavacTask client = createTask(listSources("client"),
+				Arrays.asList("-proc:none", "-classpath", jar.toString()), diagnostics);
+		new CoffeeBagPlugin().init(client);
+		checkResult(client.call(), diagnostics.getDiagnostics());
+	}
+
+	private List<File> listSources(String directory) {
+		return Arrays.asList(new File(getSource(), directory).listFiles((dir, name) -> name.endsWith(".java")));
+	}
+
+	private static void writeJar(Path classes, Path jar) throws IOException {
+		final List<Path> files;
+		try (Stream<Path> walk = Files.walk(classes)) {
+			files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+		try (OutputStream stream = Files.newOutputStream(jar); JarOutputStream out = new JarOutputStream(stream)) {
+			for (Path file : files) {
+				out.putNextEntry(new JarEntry(classes.relativize(file).toString().replace(File.separatorChar, '/')));
+				Files.copy(file, out);
+				out.closeEntry();
+			}
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package org.coffeebag.processor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs the {@link VisibilityCheckerTest} tests with the javac plugin
+ */
+public class VisibilityCheckerPluginRunner extends VisibilityCheckerRunner {
+
+	public VisibilityCheckerPluginRunner(Class<?> testClass) throws IOException {
+		super(testClass);
+	}
+
+	@Override
+	public AbstractCompilerTest createTest(File sourceFile, File textFile, Class<?> testClass)
+			throws IOException {
+		return new VisibilityCheckerPluginTest(sourceFile, textFile, testClass);
+	}
+}
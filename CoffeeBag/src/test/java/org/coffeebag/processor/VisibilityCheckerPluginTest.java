@@ -0,0 +1,36 @@
+package org.coffeebag.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.processing.Processor;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+
+import org.coffeebag.plugin.CoffeeBagPlugin;
+
+import com.sun.source.util.JavacTask;
+
+/**
+ * Runs a {@link VisibilityCheckerTest} with the javac plugin instead of the processor
+ */
+public class VisibilityCheckerPluginTest extends VisibilityCheckerTest {
+
+	public VisibilityCheckerPluginTest(File sourceFile, File referenceFile, Class<?> testClass) throws IOException {
+		super(sourceFile, referenceFile, testClass);
+	}
+
+	@Override
+	public void run(CheckVisibility processor) throws Exception {
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		final List<Processor> processors = getProcessors(null);
+		final JavacTask task = createTask(processors.isEmpty() ? Arrays.asList("-proc:none")
+				: Collections.emptyList(), diagnostics);
+		task.setProcessors(processors);
+		new CoffeeBagPlugin().init(task);
+		checkResult(task.call(), diagnostics.getDiagnostics());
+	}
+}
@@ -0,0 +1,22 @@
+package org.coffeebag.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Runs the {@link VisibilityCheckerTest} tests with the prefilter enabled, which must not hide any violation
+ */
+public class VisibilityCheckerPrefilterRunner extends VisibilityCheckerRunner {
+
+	public VisibilityCheckerPrefilterRunner(Class<?> testClass) throws IOException {
+		super(testClass);
+	}
+
+	@Override
+	public AbstractCompilerTest createTest(File sourceFile, File textFile, Class<?> testClass)
+			throws IOException {
+		return new VisibilityCheckerTest(sourceFile, textFile, testClass,
+				output -> Arrays.asList("-A" + Options.PREFILTER));
+	}
+}
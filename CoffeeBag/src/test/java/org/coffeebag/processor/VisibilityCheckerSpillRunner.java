@@ -0,0 +1,39 @@
+package org.coffeebag.processor;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Runs the {@link VisibilityCheckerTest} tests with the references spilled to a file, which must report the same
+ * errors as the default mode and delete the file when processing ends
+ */
+public class VisibilityCheckerSpillRunner extends VisibilityCheckerRunner {
+
+	private static final String SPILL_FILE = "references.spill";
+
+	public VisibilityCheckerSpillRunner(Class<?> testClass) throws IOException {
+		super(testClass);
+	}
+
+	@Override
+	public AbstractCompilerTest createTest(File sourceFile, File textFile, Class<?> testClass)
+			throws IOException {
+		return new VisibilityCheckerTest(sourceFile, textFile, testClass,
+				output -> Arrays.asList("-A" + Options.SPILL + "=" + output.resolve(SPILL_FILE), "-A" + Options.STATS)) {
+			@Override
+			protected void checkOutput(List<Diagnostic<? extends JavaFileObject>> diagnostics) throws Exception {
+				assertTrue("No classes were spilled", readCount("spilledClasses") > 0);
+				assertFalse("The spill file was not deleted", Files.exists(getOutputDirectory().resolve(SPILL_FILE)));
+			}
+		};
+	}
+}
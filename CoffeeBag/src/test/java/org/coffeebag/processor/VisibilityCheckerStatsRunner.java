@@ -0,0 +1,41 @@
+package org.coffeebag.processor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Runs the {@link VisibilityCheckerTest} tests with statistics, which must count the compilation units and the
+ * violations that were reported
+ */
+public class VisibilityCheckerStatsRunner extends VisibilityCheckerRunner {
+
+	public VisibilityCheckerStatsRunner(Class<?> testClass) throws IOException {
+		super(testClass);
+	}
+
+	@Override
+	public AbstractCompilerTest createTest(File sourceFile, File textFile, Class<?> testClass)
+			throws IOException {
+		return new VisibilityCheckerTest(sourceFile, textFile, testClass,
+				output -> Arrays.asList("-A" + Options.STATS)) {
+			@Override
+			protected void checkOutput(List<Diagnostic<? extends JavaFileObject>> diagnostics) throws Exception {
+				final long violations = diagnostics.stream()
+						.filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR
+								&& diagnostic.getMessage(Locale.ROOT).contains(" is not visible to "))
+						.count();
+				assertEquals("Violations", violations, readCount("violations"));
+				final long units = getSourceFiles().size() + getGeneratedFiles().size();
+				assertEquals("Compilation units", units, readCount("compilationUnits"));
+			}
+		};
+	}
+}
@@ -0,0 +1,22 @@
+package org.coffeebag.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Runs the {@link VisibilityCheckerTest} tests in streaming mode, which must report the same errors as the default mode
+ */
+public class VisibilityCheckerStreamingRunner extends VisibilityCheckerRunner {
+
+	public VisibilityCheckerStreamingRunner(Class<?> testClass) throws IOException {
+		super(testClass);
+	}
+
+	@Override
+	public AbstractCompilerTest createTest(File sourceFile, File textFile, Class<?> testClass)
+			throws IOException {
+		return new VisibilityCheckerTest(sourceFile, textFile, testClass,
+				output -> Arrays.asList("-A" + Options.STREAMING));
+	}
+}
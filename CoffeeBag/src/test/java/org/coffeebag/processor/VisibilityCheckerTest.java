@@ -1,5 +1,7 @@
 package org.coffeebag.processor;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.truth0.Truth.ASSERT;
 
 import java.io.BufferedReader;
@@ -7,34 +9,71 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
 import javax.tools.JavaFileObject;
 
+import com.google.testing.compile.CompileTester.UnsuccessfulCompilationClause;
 import com.google.testing.compile.JavaFileObjects;
 import com.google.testing.compile.JavaSourceSubjectFactory;
 import com.google.testing.compile.JavaSourcesSubjectFactory;
+import com.sun.source.util.JavacTask;
 
 public class VisibilityCheckerTest extends AbstractCompilerTest {
 
 	private static final String syntaxErrorCompileExpectation =
 			"Syntax Error: line 1 of a VisibilityCheckerTest must contain only \"pass\" or \"fail\"";
-	private static final String syntaxErrorTooManyLines = "Syntax Error: line 1 of a VisibilityCheckerTest must " +
-			"contain only \"pass\" or \"fail\"";
+	private static final String syntaxErrorTooManyLines = "Syntax Error: only a VisibilityCheckerTest that fails " +
+			"can list expected errors after line 1";
 
 	private boolean expectPass = true; //pass by default
+	/**
+	 * Text that must be contained in error messages, one per line after the expectation
+	 */
+	private final List<String> expectedErrors = new ArrayList<>();
+	/**
+	 * The javac options to compile with, given the output directory, or null to compile with compile-testing
+	 */
+	private final Function<Path, List<String>> options;
 
 	public VisibilityCheckerTest(File sourceFile, File referenceFile, Class<?> testClass)
 			throws IOException {
+		this(sourceFile, referenceFile, testClass, null);
+	}
+
+	/**
+	 * Creates a test that compiles with javac options
+	 * @param options the javac options, given the output directory of the test
+	 */
+	public VisibilityCheckerTest(File sourceFile, File referenceFile, Class<?> testClass,
+			Function<Path, List<String>> options) throws IOException {
 		super(sourceFile, referenceFile, testClass);
+		this.options = options;
 
 		// Read expectation from file
 		try (final BufferedReader reader = new BufferedReader(new FileReader(referenceFile))) {
 			String line;
 			int lines = 0;
 			while ((line = reader.readLine()) != null) {
-				if (lines == 1) {
-					throw new RuntimeException(syntaxErrorTooManyLines);
+				if (lines >= 1) {
+					if (expectPass) {
+						throw new RuntimeException(syntaxErrorTooManyLines);
+					}
+					if (!line.isEmpty()) {
+						expectedErrors.add(line);
+					}
+					lines++;
+					continue;
 				}
 				switch (line) {
 					case "pass":
@@ -53,18 +92,37 @@ public class VisibilityCheckerTest extends AbstractCompilerTest {
 
 	@Override
 	public void run(CheckVisibility processor) throws Exception {
+		if (options != null) {
+			final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+			final JavacTask task = createTask(options.apply(getOutputDirectory()), diagnostics);
+			task.setProcessors(getProcessors(processor));
+			checkResult(task.call(), diagnostics.getDiagnostics());
+			checkOutput(diagnostics.getDiagnostics());
+
+			// The options may change how the processor works, but not what it reports
+			final DiagnosticCollector<JavaFileObject> defaultDiagnostics = new DiagnosticCollector<>();
+			final JavacTask defaultTask = createTask(Collections.emptyList(), defaultDiagnostics);
+			defaultTask.setProcessors(getProcessors(new CheckVisibility(true)));
+			defaultTask.call();
+			assertEquals("Errors differ from the default mode", getErrors(defaultDiagnostics.getDiagnostics()),
+					getErrors(diagnostics.getDiagnostics()));
+			return;
+		}
 		File sourceFile = getSource();
 		if (sourceFile.isFile()) {
 			if (expectPass) {
 				ASSERT.about(JavaSourceSubjectFactory.javaSource())
 						.that(JavaFileObjects.forResource(getSource().toURI().toURL()))
-						.processedWith(processor)
+						.processedWith(getProcessors(processor))
 						.compilesWithoutError();
 			} else {
-				ASSERT.about(JavaSourceSubjectFactory.javaSource())
+				UnsuccessfulCompilationClause clause = ASSERT.about(JavaSourceSubjectFactory.javaSource())
 						.that(JavaFileObjects.forResource(getSource().toURI().toURL()))
-						.processedWith(processor)
+						.processedWith(getProcessors(processor))
 						.failsToCompile();
+				for (String error : expectedErrors) {
+					clause = clause.withErrorContaining(error).and();
+				}
 			}
 		} else {
 			// Find all Java files in sourceFile
@@ -78,17 +136,87 @@ public class VisibilityCheckerTest extends AbstractCompilerTest {
 			if (expectPass) {
 				ASSERT.about(JavaSourcesSubjectFactory.javaSources())
 						.that(javaFiles)
-						.processedWith(processor)
+						.processedWith(getProcessors(processor))
 						.compilesWithoutError();
 			} else {
-				ASSERT.about(JavaSourcesSubjectFactory.javaSources())
+				UnsuccessfulCompilationClause clause = ASSERT.about(JavaSourcesSubjectFactory.javaSources())
 						.that(javaFiles)
-						.processedWith(processor)
+						.processedWith(getProcessors(processor))
 						.failsToCompile();
+				for (String error : expectedErrors) {
+					clause = clause.withErrorContaining(error).and();
+				}
 			}
 		}
 	}
 
+	/**
+	 * Checks the output of a compilation with the options of this test, in addition to its errors
+	 * @param diagnostics the diagnostics of the compilation
+	 * @throws Exception if the check fails
+	 */
+	protected void checkOutput(List<Diagnostic<? extends JavaFileObject>> diagnostics) throws Exception {
+	}
+
+	/**
+	 * Returns the processors to compile with: the processor being tested, and a {@link SourceGenerator} if the test
+	 * directory contains generated sources
+	 * @param processor the processor being tested, or null
+	 * @return the processors
+	 */
+	protected List<Processor> getProcessors(CheckVisibility processor) {
+		final List<Processor> processors = new ArrayList<>();
+		if (processor != null) {
+			processors.add(processor);
+		}
+		if (!getGeneratedFiles().isEmpty()) {
+			processors.add(new SourceGenerator(getGeneratedFiles()));
+		}
+		return processors;
+	}
+
+	/**
+	 * @return the files in the test directory that a {@link SourceGenerator} generates sources from
+	 */
+	protected List<File> getGeneratedFiles() {
+		return getSource().isDirectory()
+				? Arrays.asList(getSource().listFiles((dir, name) -> name.endsWith(SourceGenerator.EXTENSION)))
+				: Collections.emptyList();
+	}
+
+	/**
+	 * @return true if the sources should compile
+	 */
+	protected boolean isPassExpected() {
+		return expectPass;
+	}
+
+	/**
+	 * Checks the result of a compilation against the expectations
+	 * @param success if the compilation succeeded
+	 * @param diagnostics the diagnostics that the compiler reported
+	 */
+	protected void checkResult(boolean success, List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+		assertEquals(diagnostics.toString(), expectPass, success);
+		for (String error : expectedErrors) {
+			assertTrue("No error containing \"" + error + "\" in " + diagnostics, diagnostics.stream()
+					.anyMatch(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR
+							&& diagnostic.getMessage(Locale.ROOT).contains(error)));
+		}
+	}
+
+	/**
+	 * @return the location and message of each error, sorted
+	 */
+	private static List<String> getErrors(List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+		return diagnostics.stream()
+				.filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+				.map(diagnostic -> (diagnostic.getSource() != null ? diagnostic.getSource().getName() : "") + ":"
+						+ diagnostic.getLineNumber() + ": " + diagnostic.getMessage(Locale.ROOT))
+				.sorted()
+				.collect(Collectors.toList());
+	}
+
 	private JavaFileObject getJavaFileObject(File javaFile) throws MalformedURLException {
 		return JavaFileObjects.forResource(javaFile.toURI().toURL());
 	}
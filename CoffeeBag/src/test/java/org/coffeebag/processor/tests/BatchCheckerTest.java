@@ -0,0 +1,9 @@
+package org.coffeebag.processor.tests;
+
+import org.coffeebag.processor.BatchCheckerRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(BatchCheckerRunner.class)
+public class BatchCheckerTest {
+
+}
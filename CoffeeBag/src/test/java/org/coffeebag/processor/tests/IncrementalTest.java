@@ -0,0 +1,9 @@
+package org.coffeebag.processor.tests;
+
+import org.coffeebag.processor.IncrementalRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(IncrementalRunner.class)
+public class IncrementalTest {
+
+}
@@ -0,0 +1,9 @@
+package org.coffeebag.processor.tests;
+
+import org.coffeebag.processor.ReferenceFinderClasspathIndexRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(ReferenceFinderClasspathIndexRunner.class)
+public class ReferenceFinderClasspathIndexTest {
+
+}
@@ -0,0 +1,9 @@
+package org.coffeebag.processor.tests;
+
+import org.coffeebag.processor.VisibilityCheckerBaselineRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(VisibilityCheckerBaselineRunner.class)
+public class VisibilityCheckerBaselineTest {
+
+}
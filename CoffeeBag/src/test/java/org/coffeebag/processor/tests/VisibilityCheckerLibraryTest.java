@@ -0,0 +1,9 @@
+package org.coffeebag.processor.tests;
+
+import org.coffeebag.processor.VisibilityCheckerLibraryRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(VisibilityCheckerLibraryRunner.class)
+public class VisibilityCheckerLibraryTest {
+
+}
@@ -0,0 +1,9 @@
+package org.coffeebag.processor.tests;
+
+import org.coffeebag.processor.VisibilityCheckerPluginRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(VisibilityCheckerPluginRunner.class)
+public class VisibilityCheckerPluginTest {
+
+}
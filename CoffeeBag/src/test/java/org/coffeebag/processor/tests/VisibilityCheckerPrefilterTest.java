@@ -0,0 +1,9 @@
+package org.coffeebag.processor.tests;
+
+import org.coffeebag.processor.VisibilityCheckerPrefilterRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(VisibilityCheckerPrefilterRunner.class)
+public class VisibilityCheckerPrefilterTest {
+
+}
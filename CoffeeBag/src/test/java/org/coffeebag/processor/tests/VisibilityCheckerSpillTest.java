@@ -0,0 +1,9 @@
+package org.coffeebag.processor.tests;
+
+import org.coffeebag.processor.VisibilityCheckerSpillRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(VisibilityCheckerSpillRunner.class)
+public class VisibilityCheckerSpillTest {
+
+}
@@ -0,0 +1,9 @@
+package org.coffeebag.processor.tests;
+
+import org.coffeebag.processor.VisibilityCheckerStatsRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(VisibilityCheckerStatsRunner.class)
+public class VisibilityCheckerStatsTest {
+
+}
@@ -0,0 +1,9 @@
+package org.coffeebag.processor.tests;
+
+import org.coffeebag.processor.VisibilityCheckerStreamingRunner;
+import org.junit.runner.RunWith;
+
+@RunWith(VisibilityCheckerStreamingRunner.class)
+public class VisibilityCheckerStreamingTest {
+
+}
@@ -0,0 +1,15 @@
+package com.app;
+
+import com.lib.Hidden;
+import com.lib.Secrets;
+
+public class Client {
+	private Hidden hidden;
+
+	public void write() {
+		final Secrets secrets = new Secrets();
+		secrets.secret = 1;
+		secrets.inherited = 2;
+		secrets.open = 3;
+	}
+}
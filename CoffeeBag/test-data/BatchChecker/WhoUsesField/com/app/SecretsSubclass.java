@@ -0,0 +1,11 @@
+package com.app;
+
+import com.lib.Secrets;
+
+public class SecretsSubclass extends Secrets {
+	public void write() {
+		final SecretsSubclass secrets = new SecretsSubclass();
+		secrets.inherited = 2;
+		secrets.open = 3;
+	}
+}
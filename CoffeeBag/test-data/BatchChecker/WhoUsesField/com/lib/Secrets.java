@@ -0,0 +1,14 @@
+package com.lib;
+
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+public class Secrets {
+	@Access(level = Visibility.PRIVATE)
+	public int secret;
+
+	@Access(level = Visibility.SUBCLASS)
+	public int inherited;
+
+	public int open;
+}
@@ -0,0 +1,12 @@
+package com.app;
+
+import com.lib.Shared;
+
+public class First {
+	private Shared shared;
+
+	public void write() {
+		final Shared other = new Shared();
+		other.value = 1;
+	}
+}
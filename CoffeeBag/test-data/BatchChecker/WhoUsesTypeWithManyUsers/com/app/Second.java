@@ -0,0 +1,8 @@
+package com.app;
+
+public class Second {
+	public void write() {
+		final com.lib.Shared shared = new com.lib.Shared();
+		shared.value = 2;
+	}
+}
@@ -0,0 +1,4 @@
+package com.app;
+
+public class Unrelated {
+}
@@ -0,0 +1,5 @@
+package com.lib;
+
+public class Shared {
+	public int value;
+}
@@ -0,0 +1,6 @@
+package com.other;
+
+import com.lib.Shared;
+
+public class Third extends Shared {
+}
@@ -0,0 +1,29 @@
+package org.something.chained;
+
+class ChainedAccess {
+	Inner inner;
+
+	public int sum() {
+		final Outer outer = new Outer();
+		int total = outer.middle.inner.value + inner.value + this.later.inner.value;
+		{
+			final Middle inner = later;
+			total += inner.inner.value;
+		}
+		return total;
+	}
+
+	Middle later;
+}
+
+class Outer {
+	Middle middle;
+}
+
+class Middle {
+	Inner inner;
+}
+
+class Inner {
+	int value;
+}
@@ -0,0 +1,4 @@
+package com.c;
+
+public class C {
+}
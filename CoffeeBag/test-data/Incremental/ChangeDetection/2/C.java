@@ -0,0 +1,7 @@
+package com.c;
+
+public class C {
+	public int get() {
+		return 1;
+	}
+}
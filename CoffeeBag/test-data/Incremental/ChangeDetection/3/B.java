@@ -0,0 +1,10 @@
+package com.b;
+
+import com.a.A;
+
+public class B {
+	public int get() {
+		final A a = new A();
+		return a.secret;
+	}
+}
@@ -0,0 +1,9 @@
+package com.a;
+
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+public class A {
+	@Access(level = Visibility.PRIVATE)
+	public int secret;
+}
@@ -0,0 +1,7 @@
+package com.c;
+
+import com.a.Other;
+
+public class Holder {
+	public Other value;
+}
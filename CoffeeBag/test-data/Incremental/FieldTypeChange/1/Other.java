@@ -0,0 +1,5 @@
+package com.a;
+
+public class Other {
+	public int secret;
+}
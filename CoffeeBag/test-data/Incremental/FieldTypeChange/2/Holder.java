@@ -0,0 +1,7 @@
+package com.c;
+
+import com.a.A;
+
+public class Holder {
+	public A value;
+}
@@ -0,0 +1,9 @@
+package com.b;
+
+import com.c.Holder;
+
+public class B {
+	public int get(Holder holder) {
+		return holder.value.secret;
+	}
+}
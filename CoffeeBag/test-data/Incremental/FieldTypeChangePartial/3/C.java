@@ -0,0 +1,4 @@
+package com.d;
+
+public class C {
+}
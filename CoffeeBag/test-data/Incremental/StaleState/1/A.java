@@ -0,0 +1,11 @@
+package com.a;
+
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+public class A {
+	@Access(level = Visibility.SCOPED, scope = "com.b")
+	public int shared;
+	@Access(level = Visibility.PRIVATE)
+	public int secret;
+}
@@ -0,0 +1,10 @@
+import java.util.*;
+
+/**
+ * Imports a package and creates a local variable using one of the imported generic classes
+ */
+class GlobGenericLocal {
+	public GlobGenericLocal() {
+		List<Date> dates;
+	}
+}
@@ -0,0 +1,14 @@
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Uses a name that two glob-imported packages contain, which a single-type import makes unambiguous, and a class
+ * nested in a glob-imported class
+ */
+class ImportPrecedence {
+	public ImportPrecedence() {
+		List<Date> dates;
+		Map.Entry<?, ?> entry;
+	}
+}
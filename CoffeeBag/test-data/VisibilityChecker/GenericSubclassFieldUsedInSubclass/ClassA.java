@@ -0,0 +1,11 @@
+package org.local.util;
+
+import org.coffeebag.annotations.Visibility;
+import org.coffeebag.annotations.Access;
+
+public class ClassA<T> {
+
+	@Access(level = Visibility.SUBCLASS)
+	public int x;
+
+}
@@ -0,0 +1,13 @@
+package com.example.company;
+
+import java.util.List;
+
+import org.local.util.ClassA;
+
+public class ClassB extends ClassA<List<String>> {
+
+	public ClassB() {
+		ClassA<List<String>> someA = new ClassA<>();
+		someA.x = 2;
+	}
+}
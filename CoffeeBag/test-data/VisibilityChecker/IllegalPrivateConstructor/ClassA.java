@@ -0,0 +1,12 @@
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+public class ClassA {
+	@Access(level = Visibility.PRIVATE)
+	public ClassA(int value) {
+	}
+
+	public static ClassA create() {
+		return new ClassA(1);
+	}
+}
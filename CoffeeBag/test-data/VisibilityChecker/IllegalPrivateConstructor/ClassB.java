@@ -0,0 +1,6 @@
+
+public class ClassB {
+	public void a() {
+		final ClassA a = new ClassA(2);
+	}
+}
@@ -0,0 +1,7 @@
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+public class ClassA {
+	@Access(level = Visibility.PRIVATE)
+	public char c;
+}
@@ -0,0 +1,22 @@
+
+public class ClassB {
+	private final ClassA a = new ClassA();
+
+	public int twice(int x) {
+		return x * 2;
+	}
+
+	public Runnable writer() {
+		final int unused = twice(1);
+		return new Runnable() {
+			@Override
+			public void run() {
+				a.c = '¥';
+			}
+		};
+	}
+
+	public String name() {
+		return "b";
+	}
+}
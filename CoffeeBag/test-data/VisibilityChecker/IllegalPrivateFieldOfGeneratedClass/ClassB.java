@@ -0,0 +1,10 @@
+package com.app;
+
+import com.generated.ClassA;
+
+public class ClassB {
+	public void a() {
+		final ClassA a = new ClassA();
+		a.c = 'x';
+	}
+}
@@ -0,0 +1,7 @@
+
+public class ClassB {
+	public int a() {
+		final ClassA a = new ClassA();
+		return a.secret();
+	}
+}
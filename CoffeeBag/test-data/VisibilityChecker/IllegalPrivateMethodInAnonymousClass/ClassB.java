@@ -0,0 +1,11 @@
+
+public class ClassB extends ClassA {
+	public Runnable a() {
+		return new Runnable() {
+			@Override
+			public void run() {
+				secret();
+			}
+		};
+	}
+}
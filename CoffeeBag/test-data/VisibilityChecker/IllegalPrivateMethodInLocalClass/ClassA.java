@@ -0,0 +1,9 @@
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+public class ClassA {
+	@Access(level = Visibility.PRIVATE)
+	public static int secret() {
+		return 42;
+	}
+}
@@ -0,0 +1,11 @@
+
+public class ClassB extends ClassA {
+	public int a() {
+		class Local {
+			int b() {
+				return secret();
+			}
+		}
+		return new Local().b();
+	}
+}
@@ -0,0 +1,8 @@
+
+public class ClassB extends ClassA {
+	static class Nested {
+		public int a() {
+			return secret();
+		}
+	}
+}
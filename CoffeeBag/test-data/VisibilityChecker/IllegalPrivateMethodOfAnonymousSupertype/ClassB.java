@@ -0,0 +1,11 @@
+
+public class ClassB {
+	public Object a() {
+		return new ClassA() {
+			@Override
+			public String toString() {
+				return String.valueOf(secret());
+			}
+		};
+	}
+}
@@ -0,0 +1,9 @@
+package org.swift.p2;
+
+import static org.swift.p1.WithSecret.*;
+
+public class GlobImportUser {
+	public int a() {
+		return hidden();
+	}
+}
@@ -0,0 +1,9 @@
+package org.swift.p2;
+
+import static org.swift.p1.WithSecret.secret;
+
+public class SingleImportUser {
+	public int a() {
+		return secret();
+	}
+}
@@ -0,0 +1,16 @@
+package org.swift.p1;
+
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+public class WithSecret {
+	@Access(level = Visibility.PRIVATE)
+	public static int secret() {
+		return 42;
+	}
+
+	@Access(level = Visibility.PRIVATE)
+	public static int hidden() {
+		return 7;
+	}
+}
@@ -0,0 +1,6 @@
+
+public class ClassB extends ClassA {
+	public ClassB() {
+		super(1);
+	}
+}
@@ -0,0 +1,22 @@
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+public class ClassA {
+	@Access(level = Visibility.PRIVATE)
+	public Object get(Object key) {
+		return key;
+	}
+
+	public String get(String key) {
+		return key;
+	}
+
+	@Access(level = Visibility.PRIVATE)
+	public long add(long value) {
+		return value;
+	}
+
+	public int add(int value) {
+		return value;
+	}
+}
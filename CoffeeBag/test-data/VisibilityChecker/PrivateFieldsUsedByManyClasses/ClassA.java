@@ -0,0 +1,14 @@
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+public class ClassA {
+	@Access(level = Visibility.PRIVATE)
+	public int x;
+	@Access(level = Visibility.PRIVATE)
+	public int y;
+	public int z;
+
+	public void a() {
+		x = y + z;
+	}
+}
@@ -0,0 +1,8 @@
+
+public class ClassB {
+	public void a() {
+		final ClassA a = new ClassA();
+		a.x = 1;
+		a.z = 2;
+	}
+}
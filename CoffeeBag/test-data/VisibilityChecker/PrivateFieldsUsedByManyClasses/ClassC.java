@@ -0,0 +1,7 @@
+
+public class ClassC {
+	public void a() {
+		final ClassA a = new ClassA();
+		a.x = a.z;
+	}
+}
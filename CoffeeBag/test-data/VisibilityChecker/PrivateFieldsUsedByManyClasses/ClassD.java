@@ -0,0 +1,7 @@
+
+public class ClassD {
+	public void a() {
+		final ClassA a = new ClassA();
+		a.y = 1;
+	}
+}
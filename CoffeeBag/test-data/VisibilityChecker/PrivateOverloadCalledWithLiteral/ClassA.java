@@ -0,0 +1,18 @@
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+public class ClassA {
+	@Access(level = Visibility.PRIVATE)
+	public int get(int index) {
+		return index;
+	}
+
+	public String get(String key) {
+		return key;
+	}
+
+	@Access(level = Visibility.PRIVATE)
+	public long get(long index) {
+		return index;
+	}
+}
@@ -0,0 +1,7 @@
+
+public class ClassB {
+	public String a(String key) {
+		final ClassA a = new ClassA();
+		return a.get(key) + a.get(key.length());
+	}
+}
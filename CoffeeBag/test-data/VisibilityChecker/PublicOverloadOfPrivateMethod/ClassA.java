@@ -0,0 +1,22 @@
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+public class ClassA {
+	@Access(level = Visibility.PRIVATE)
+	public int get(int index) {
+		return index;
+	}
+
+	public String get(String key) {
+		return key;
+	}
+
+	@Access(level = Visibility.PRIVATE)
+	public int size() {
+		return 0;
+	}
+
+	public int size(int minimum) {
+		return minimum;
+	}
+}
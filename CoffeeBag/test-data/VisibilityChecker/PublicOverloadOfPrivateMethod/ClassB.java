@@ -0,0 +1,7 @@
+
+public class ClassB {
+	public String a() {
+		final ClassA a = new ClassA();
+		return a.get("key") + a.size(1);
+	}
+}
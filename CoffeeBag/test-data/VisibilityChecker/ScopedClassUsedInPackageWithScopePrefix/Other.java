@@ -0,0 +1,7 @@
+package com.foobar;
+
+import com.foo.Scoped;
+
+public class Other {
+	private Scoped scoped;
+}
@@ -0,0 +1,9 @@
+package com.foo;
+
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+@Access(level = Visibility.SCOPED, scope = "com.foo")
+public class Scoped {
+
+}
@@ -0,0 +1,21 @@
+package com.example.company;
+
+import org.local.util.ClassA;
+
+public class ClassB extends ClassA {
+
+	public ClassB() {
+		ClassA someA = new ClassA();
+		someA.x = 2;
+	}
+}
+
+/**
+ * Declared in the same file as a subclass, but does not use the field itself
+ */
+class Neighbor {
+
+	public Neighbor() {
+		ClassB someB = new ClassB();
+	}
+}
@@ -0,0 +1,10 @@
+package com.app;
+
+import com.lib.Secrets;
+
+public class Client {
+	public int a() {
+		final Secrets secrets = new Secrets();
+		return secrets.secret();
+	}
+}
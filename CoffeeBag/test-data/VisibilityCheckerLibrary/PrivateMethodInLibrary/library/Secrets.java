@@ -0,0 +1,11 @@
+package com.lib;
+
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+public class Secrets {
+	@Access(level = Visibility.PRIVATE)
+	public int secret() {
+		return 42;
+	}
+}
@@ -0,0 +1,7 @@
+package com.app;
+
+import com.lib.Scoped;
+
+public class Client {
+	private Scoped scoped;
+}
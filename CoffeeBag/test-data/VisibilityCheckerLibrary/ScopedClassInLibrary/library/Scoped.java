@@ -0,0 +1,9 @@
+package com.lib;
+
+import org.coffeebag.annotations.Access;
+import org.coffeebag.annotations.Visibility;
+
+@Access(level = Visibility.SCOPED, scope = "com.lib")
+public class Scoped {
+
+}
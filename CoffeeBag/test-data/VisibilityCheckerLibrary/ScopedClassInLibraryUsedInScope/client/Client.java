@@ -0,0 +1,7 @@
+package com.lib.internal;
+
+import com.lib.Scoped;
+
+public class Client {
+	private Scoped scoped;
+}